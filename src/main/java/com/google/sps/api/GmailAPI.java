@@ -57,51 +57,70 @@ public class GmailAPI {
   private static final String PROJECTID = "step186-2020";
   private static final String VERSIONID = "latest";
 
-  private static String CLIENT_ID = "";
-  private static String CLIENT_SECRET = "";
-  private static String REFRESH_TOKEN = "";
-  
-  private static Gmail service = null;
+  // Built once per instance and shared by all requests. The credential refreshes its
+  // access token by itself when it expires.
+  private static volatile Gmail service = null;
 
   /**
-    * Create a Gmail service using credentials.
+    * Get the Gmail service, creating it with credentials on first use.
     *
     * @throws IOException
     * @throws GeneralSecurityException
     */
   public static Gmail getGmailService() throws IOException, GeneralSecurityException {
+    Gmail gmail = service;
+    if (gmail == null) {
+      synchronized (GmailAPI.class) {
+        gmail = service;
+        if (gmail == null) {
+          gmail = createGmailService();
+          service = gmail;
+        }
+      }
+    }
+    return gmail;
+  }
+
+  /**
+    * Create a Gmail service using credentials.
+    *
+    * @throws IOException
+    * @throws GeneralSecurityException
+    */
+  private static Gmail createGmailService() throws IOException, GeneralSecurityException {
     // Gather client info from OAuth 2.0 credentials through Secrets Manager.
-    CLIENT_ID = getSecret("client-id");
-    CLIENT_SECRET = getSecret("client-secret");
-    REFRESH_TOKEN = getSecret("refresh-token");
+    String clientId = getSecret("client-id");
+    String clientSecret = getSecret("client-secret");
+    String refreshToken = getSecret("refresh-token");
 
     // Set up credentials to use the Gmail API.
-    Credential authorize = new GoogleCredential.Builder().setTransport(GoogleNetHttpTransport.newTrustedTransport())
+    final NetHttpTransport HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
+    Credential authorize = new GoogleCredential.Builder().setTransport(HTTP_TRANSPORT)
       .setJsonFactory(JSON_FACTORY)
-      .setClientSecrets(CLIENT_ID, CLIENT_SECRET)
+      .setClientSecrets(clientId, clientSecret)
       .build()
-      .setRefreshToken(REFRESH_TOKEN)
-      .setAccessToken(getAccessToken());
+      .setRefreshToken(refreshToken)
+      .setAccessToken(getAccessToken(clientId, clientSecret, refreshToken));
 
     // Build service.
-    final NetHttpTransport HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
-    service = new Gmail.Builder(HTTP_TRANSPORT, JSON_FACTORY, authorize)
+    return new Gmail.Builder(HTTP_TRANSPORT, JSON_FACTORY, authorize)
       .setApplicationName(APPLICATION_NAME).build();
-
-    return service;
   }
 
   /**
     * Retrieve new access token due to the fact that it has a lifetime of 1 hour
     * through refresh token.
     *
+    * @param clientId OAuth 2.0 client id
+    * @param clientSecret OAuth 2.0 client secret
+    * @param refreshToken refresh token of the sending account
     * @throws IOException 
     * @throws MalformedURLException
     * @throws ProtocolException
     */
-  private static String getAccessToken()
+  private static String getAccessToken(String clientId, String clientSecret, String refreshToken)
       throws IOException, MalformedURLException, ProtocolException {
-    byte[] postDataBytes = buildPOSTRequest();
+    byte[] postDataBytes = buildPOSTRequest(clientId, clientSecret, refreshToken);
 
     // Send POST request for new access token.
     URL url = new URL("https://accounts.google.com/o/oauth2/token");
@@ -127,15 +146,19 @@ public class GmailAPI {
   /**
     * Build POST request from credential information.
     *
+    * @param clientId OAuth 2.0 client id
+    * @param clientSecret OAuth 2.0 client secret
+    * @param refreshToken refresh token of the sending account
     * @throws UnsupportedEncodingException
     */
-  private static byte[] buildPOSTRequest() throws UnsupportedEncodingException {
+  private static byte[] buildPOSTRequest(String clientId, String clientSecret, String refreshToken)
+      throws UnsupportedEncodingException {
     // Gather POST parameters.
     Map<String, Object> params = new LinkedHashMap<>();
     params.put("grant_type", "refresh_token");
-    params.put("client_id", CLIENT_ID);
-    params.put("client_secret", CLIENT_SECRET); 
-    params.put("refresh_token", REFRESH_TOKEN);
+    params.put("client_id", clientId);
+    params.put("client_secret", clientSecret);
+    params.put("refresh_token", refreshToken);
 
     // Build POST request.
     StringBuilder postData = new StringBuilder();
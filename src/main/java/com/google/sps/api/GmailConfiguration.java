@@ -29,7 +29,11 @@ import com.google.api.client.util.Base64;
 import com.google.api.services.gmail.Gmail;
 import com.google.api.services.gmail.model.Message;
 import com.google.sps.data.Email;
+import com.google.sps.data.NotificationWindows;
+import com.google.sps.data.Outbox;
 import com.google.sps.data.Post;
+import com.google.sps.data.Repositories;
+import com.google.sps.metrics.MeteredDatastoreService;
 import com.google.sps.servlets.PostDataServlet;
 
 import java.io.ByteArrayOutputStream;
@@ -37,7 +41,14 @@ import java.io.File;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TimeZone;
+import java.util.TreeMap;
 import java.lang.Iterable;
 import javax.activation.DataHandler;
 import javax.activation.DataSource;
@@ -60,7 +71,9 @@ public class GmailConfiguration {
 
   private static final String FROM = "me";
   private static final Logger LOGGER = LoggerFactory.getLogger(GmailConfiguration.class);
-  private static final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  private static final DatastoreService datastore =
+    new MeteredDatastoreService(DatastoreServiceFactory.getDatastoreService());
+  private static final int SUBSCRIBER_BATCH_SIZE = 500;
   
   /**
     * Create a MimeMessage using the parameters provided.
@@ -129,8 +142,9 @@ public class GmailConfiguration {
     * @param to email address of the receiver
     * @param subject subject of the email
     * @param bodyText body text of the email
+    * @return true if the email was sent
     */
-  public static void sendEmail(String to, String subject, String content) {
+  public static boolean sendEmail(String to, String subject, String content) {
 
     try {
       Gmail service = GmailAPI.getGmailService();	
@@ -138,25 +152,77 @@ public class GmailConfiguration {
       Message message = createMessageWithEmail(Mimemessage);	
       message = service.users().messages().send(FROM, message).execute();	
       LOGGER.info("Successfully sent an email to: " + to);
+      return true;
     } catch (Exception e) {
       LOGGER.error("Unable to send messsage due to: " + e.toString());
+      return false;
     }
   }	
 
   /**
-    * Send emails to all users associated with the specific college about a new post.
+    * Send emails about a new post to the users of its college whose interests it matches.
     *
     * @param collegeId unique id of a college
     * @throws IOException
     */
   public static void notifyUsers(String collegeId, Post newPost) throws IOException {
-    // Email the users to notify them that a new post has been added.
-    for (Entity user : getAllUsersForACollege(collegeId)) {
-      String email = user.getKey().getName().toString();
-      sendEmail(email, Email.NEW_POST_SUBJECT, Email.addNewPost(newPost));	
+    // Email the users to notify them that a new post has been added. Posts that were
+    // never stored have no id, so their notifications can't be deduplicated.
+    String deliveryId = newPost.getPostId().isEmpty() ? null : Outbox.postDeliveryId(newPost.getPostId());
+    String content = Email.addNewPost(newPost);
+    List<String> emails = Repositories.users().getMatchingSubscribers(collegeId, newPost);
+    for (int start = 0; start < emails.size(); start += SUBSCRIBER_BATCH_SIZE) {
+      List<String> batch = emails.subList(start, Math.min(start + SUBSCRIBER_BATCH_SIZE, emails.size()));
+      sendToBatch(batch, Email.NEW_POST_SUBJECT, content, deliveryId);
     }
   }
 
+  /**
+    * Send each user of a college one email about the posts of a notification window that
+    * match their interests. Users matching a single post get the usual new post email.
+    *
+    * @param window an ended window of a college
+    * @return whether every user was emailed, so the window can be dropped
+    * @throws IOException
+    */
+  public static boolean notifyUsers(NotificationWindows.Window window) throws IOException {
+    Map<String, List<Post>> postsByEmail = new TreeMap<String, List<Post>>();
+    List<String> postIds = new ArrayList<String>();
+    for (Post post : window.getPosts()) {
+      postIds.add(post.getPostId());
+      for (String email : Repositories.users().getMatchingSubscribers(window.getCollegeId(), post)) {
+        postsByEmail.computeIfAbsent(email, k -> new ArrayList<Post>()).add(post);
+      }
+    }
+
+    // Users with the same interests get the same posts, so each email is rendered once.
+    Map<List<Post>, String> contents = new HashMap<List<Post>, String>();
+    String deliveryId =
+      Outbox.windowDeliveryId(window.getCollegeId(), window.getStart(), postIds);
+    List<String> emails = new ArrayList<String>(postsByEmail.keySet());
+    boolean allSent = true;
+    for (int start = 0; start < emails.size(); start += SUBSCRIBER_BATCH_SIZE) {
+      List<String> batch = emails.subList(start, Math.min(start + SUBSCRIBER_BATCH_SIZE, emails.size()));
+      Map<String, Entity> pending = Outbox.claimAll(datastore, deliveryId, batch);
+      for (Map.Entry<String, Entity> delivery : pending.entrySet()) {
+        List<Post> posts = postsByEmail.get(delivery.getKey());
+        String content = contents.get(posts);
+        if (content == null) {
+          content = posts.size() == 1 ? Email.addNewPost(posts.get(0)) : Email.addNewPosts(posts);
+          contents.put(posts, content);
+        }
+        String subject = posts.size() == 1
+          ? Email.NEW_POST_SUBJECT : Email.getNewPostsSubject(posts.size());
+        if (sendEmail(delivery.getKey(), subject, content)) {
+          Outbox.markSent(datastore, delivery.getValue());
+        } else {
+          allSent = false;
+        }
+      }
+    }
+    return allSent;
+  }
+
   /**
     * Send emails to all users associated with the specific college with ranked posts.
     *
@@ -165,22 +231,54 @@ public class GmailConfiguration {
     */
   public static void notifyUsers(String collegeId, ArrayList<Post> rankedPosts) throws IOException {
     // Email the users to notify them with ranked posts for the day.
-    for (Entity user : getAllUsersForACollege(collegeId)) {
-      String email = user.getKey().getName().toString();
-      sendEmail(email, Email.DAILY_DIGEST_SUBJECT, Email.addRankedPosts(rankedPosts));	
-    }
+    Calendar today = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+    notifyUsers(collegeId, Email.DAILY_DIGEST_SUBJECT, Email.addRankedPosts(rankedPosts), 
+      Outbox.digestDeliveryId(today));
   }
 
   /**
-    * Find all users for a specific college through querying datastore.
+    * Send an email to every user of a college that hasn't received this delivery yet.
+    * Each delivery is recorded in the outbox before sending and marked once it succeeds,
+    * so rerunning a failed or interrupted notification resumes where it stopped.
     *
     * @param collegeId unique id of a college
-    * @return iterable of user entities
+    * @param subject subject of the email
+    * @param content body text of the email
+    * @param deliveryId outbox delivery id, or null to send without recording
     */
-  private static Iterable<Entity> getAllUsersForACollege(String collegeId) {
-    Filter collegeFilter = new FilterPredicate("college", FilterOperator.EQUAL, collegeId);
-    Query q = new Query("User").setFilter(collegeFilter);
-    PreparedQuery pq = datastore.prepare(q);
-    return pq.asIterable();
+  private static void notifyUsers(String collegeId, String subject, String content, String deliveryId) {
+    // Batches are fetched one after another, each while the previous one is emailed.
+    Iterator<List<String>> batches =
+      Repositories.users().getSubscriberBatches(collegeId, SUBSCRIBER_BATCH_SIZE);
+    while (batches.hasNext()) {
+      sendToBatch(batches.next(), subject, content, deliveryId);
+    }
+  }
+
+  /**
+    * Send an email to a batch of users, skipping the ones the outbox already delivered to.
+    *
+    * @param emails email addresses of the receivers
+    * @param subject subject of the email
+    * @param content body text of the email
+    * @param deliveryId outbox delivery id, or null to send without recording
+    */
+  private static void sendToBatch(List<String> emails, String subject, String content, String deliveryId) {
+    if (emails.isEmpty()) {
+      return;
+    }
+    if (deliveryId == null) {
+      for (String email : emails) {
+        sendEmail(email, subject, content);
+      }
+      return;
+    }
+
+    Map<String, Entity> pending = Outbox.claimAll(datastore, deliveryId, emails);
+    for (Map.Entry<String, Entity> delivery : pending.entrySet()) {
+      if (sendEmail(delivery.getKey(), subject, content)) {
+        Outbox.markSent(datastore, delivery.getValue());
+      }
+    }
   }
 }
@@ -0,0 +1,219 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.blobstore.BlobInfoFactory;
+import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.blobstore.BlobstoreService;
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.QueryResultList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+  * Tracks uploaded blobs from the form submission until they are deleted.
+  *
+  * Images are uploaded to Blobstore before the post is validated, so a rejected post leaves
+  * its image behind. Every upload is recorded as a BlobUpload entity keyed by its blob key,
+  * claimed by the post that uses it, and unclaimed uploads older than a grace period are
+  * deleted by sweep(). Uploads are recorded unclaimed as soon as the request arrives and the
+  * post's image is claimed once the post is stored, so a request that fails halfway leaves
+  * its uploads to the sweep.
+  */
+public final class BlobLifecycle {
+
+  public static final String ENTITY_KIND = "BlobUpload";
+
+  /** Outcome of a sweep. */
+  public static final class SweepResult {
+    private final long deletedBlobs;
+    private final long reclaimedBytes;
+
+    SweepResult(long deletedBlobs, long reclaimedBytes) {
+      this.deletedBlobs = deletedBlobs;
+      this.reclaimedBytes = reclaimedBytes;
+    }
+
+    public long getDeletedBlobs() {
+      return deletedBlobs;
+    }
+
+    public long getReclaimedBytes() {
+      return reclaimedBytes;
+    }
+  }
+
+  // Make the constructor private to emulate a static class.
+  private BlobLifecycle() {}
+
+  public static Key getKey(String blobKey) {
+    return KeyFactory.createKey(ENTITY_KIND, blobKey);
+  }
+
+  /**
+    * Get every blob uploaded with a request.
+    *
+    * @param blobstoreService service that received the uploads
+    * @param request form submission forwarded by Blobstore
+    * @return uploaded blobs, empty if the request didn't come through an upload URL
+    */
+  public static List<BlobKey> getUploads(BlobstoreService blobstoreService,
+      HttpServletRequest request) {
+    List<BlobKey> uploads = new ArrayList<BlobKey>();
+    try {
+      for (List<BlobKey> blobKeys : blobstoreService.getUploads(request).values()) {
+        uploads.addAll(blobKeys);
+      }
+    } catch (IllegalStateException e) {
+      // The request wasn't forwarded by Blobstore, so nothing was uploaded.
+    }
+    return uploads;
+  }
+
+  /**
+    * Record the blobs uploaded with a form submission in a single batch put.
+    *
+    * @param datastore datastore holding the upload records
+    * @param uploads blobs uploaded with the request
+    * @param claimedBlobKey blob used by the stored post, or null if the post was rejected
+    * @param postId id of the stored post, or null if the post was rejected
+    */
+  public static void recordUploads(DatastoreService datastore, List<BlobKey> uploads,
+      String claimedBlobKey, String postId) {
+    if (!uploads.isEmpty()) {
+      datastore.put(getUploadRecords(uploads, claimedBlobKey, postId));
+    }
+  }
+
+  /**
+    * Start claiming the image of a stored post, so the request can go on while the put runs.
+    *
+    * @param datastore datastore holding the upload records
+    * @param blobKey blob used by the stored post, or null if the post has no image
+    * @param postId id of the stored post
+    * @return key of the record once it is stored, or null if there was nothing to claim
+    */
+  public static Future<Key> claimUploadAsync(AsyncDatastoreService datastore, String blobKey,
+      String postId) {
+    if (blobKey == null) {
+      return CompletableFuture.completedFuture(null);
+    }
+    List<BlobKey> upload = Collections.singletonList(new BlobKey(blobKey));
+    return datastore.put(getUploadRecords(upload, blobKey, postId).get(0));
+  }
+
+  private static List<Entity> getUploadRecords(List<BlobKey> uploads, String claimedBlobKey,
+      String postId) {
+    Date now = new Date();
+    List<Entity> records = new ArrayList<Entity>();
+    for (BlobKey upload : uploads) {
+      Entity record = new Entity(getKey(upload.getKeyString()));
+      boolean claimed = upload.getKeyString().equals(claimedBlobKey);
+      record.setProperty("uploadedAt", now);
+      record.setProperty("claimed", claimed);
+      record.setUnindexedProperty("postId", claimed ? postId : null);
+      records.add(record);
+    }
+    return records;
+  }
+
+  /**
+    * Delete a blob that is no longer used, along with its resized variants and its record.
+    *
+    * @param datastore datastore holding the upload records and variants
+    * @param blobstoreService service holding the blob
+    * @param blobKey key of the blob to delete
+    */
+  public static void release(DatastoreService datastore, BlobstoreService blobstoreService,
+      String blobKey) {
+    blobstoreService.delete(new BlobKey(blobKey));
+    ImageVariants.deleteVariants(datastore, blobKey);
+    datastore.delete(getKey(blobKey));
+  }
+
+  /**
+    * Delete unclaimed uploads older than the grace period, in batches.
+    *
+    * @param datastore datastore holding the upload records
+    * @param blobstoreService service holding the blobs
+    * @param gracePeriodMillis age an upload must reach before it is deleted
+    * @param batchSize number of uploads deleted per batch
+    * @return number of blobs deleted and bytes reclaimed
+    */
+  public static SweepResult sweep(DatastoreService datastore, BlobstoreService blobstoreService,
+      long gracePeriodMillis, int batchSize) {
+    Date cutoff = new Date(System.currentTimeMillis() - gracePeriodMillis);
+    Query query = new Query(ENTITY_KIND)
+      .setFilter(CompositeFilterOperator.and(
+        new FilterPredicate("claimed", FilterOperator.EQUAL, false),
+        new FilterPredicate("uploadedAt", FilterOperator.LESS_THAN, cutoff)))
+      .setKeysOnly();
+
+    BlobInfoFactory blobInfoFactory = new BlobInfoFactory(datastore);
+    long deletedBlobs = 0;
+    long reclaimedBytes = 0;
+    FetchOptions options = FetchOptions.Builder.withLimit(batchSize);
+    QueryResultList<Entity> batch;
+    do {
+      // The query is eventually consistent, so it pages on with a cursor rather than starting
+      // over, and its records are read again by key before anything is deleted.
+      batch = datastore.prepare(query).asQueryResultList(options);
+      options.startCursor(batch.getCursor());
+      List<Key> candidates = new ArrayList<Key>();
+      for (Entity record : batch) {
+        candidates.add(record.getKey());
+      }
+
+      List<Key> recordKeys = new ArrayList<Key>();
+      List<Key> blobInfoKeys = new ArrayList<Key>();
+      List<BlobKey> blobKeys = new ArrayList<BlobKey>();
+      for (Entity record : datastore.get(candidates).values()) {
+        if (Boolean.TRUE.equals(record.getProperty("claimed"))
+            || !((Date) record.getProperty("uploadedAt")).before(cutoff)) {
+          continue;
+        }
+        recordKeys.add(record.getKey());
+        blobInfoKeys.add(KeyFactory.createKey(BlobInfoFactory.KIND, record.getKey().getName()));
+        blobKeys.add(new BlobKey(record.getKey().getName()));
+      }
+      if (recordKeys.isEmpty()) {
+        continue;
+      }
+
+      for (Entity blobInfo : datastore.get(blobInfoKeys).values()) {
+        reclaimedBytes += blobInfoFactory.createBlobInfo(blobInfo).getSize();
+      }
+      blobstoreService.delete(blobKeys.toArray(new BlobKey[0]));
+      datastore.delete(recordKeys);
+      deletedBlobs += recordKeys.size();
+    } while (batch.size() == batchSize);
+
+    return new SweepResult(deletedBlobs, reclaimedBytes);
+  }
+}
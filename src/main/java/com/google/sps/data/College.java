@@ -0,0 +1,198 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Transaction;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+  * Registry of the colleges that have posts or subscribers, keyed by college id.
+  *
+  * Each College entity keeps a count of the users subscribed to it, which lets the daily
+  * digest skip colleges nobody would receive an email for. Colleges registered before the
+  * count existed, or by their first subscriber, have no subscriberCount property; their count
+  * is computed on first use.
+  * The entity also holds the count of its post changes, which PostChanges keeps, and a
+  * version of its subscriptions, raised whenever a subscriber joins, leaves or changes their
+  * interests, which tells instances to rebuild their SubscriptionMatcher. The emails of the
+  * last subscribers to change are kept with the version, so a rebuild can read them by key
+  * rather than trust a query that may not have caught up with them yet.
+  */
+public final class College {
+
+  public static final String ENTITY_KIND = "College";
+  public static final String SUBSCRIBER_COUNT = "subscriberCount";
+  public static final String SUBSCRIPTION_VERSION = "subscriptionVersion";
+  public static final String RECENT_SUBSCRIBERS = "recentSubscribers";
+  public static final int MAX_RECENT_SUBSCRIBERS = 100;
+
+  // Make the constructor private to emulate a static class.
+  private College() {}
+
+  public static Key getKey(String collegeId) {
+    return KeyFactory.createKey(ENTITY_KIND, collegeId);
+  }
+
+  /**
+    * Add to the number of users subscribed to a college, registering the college if needed,
+    * and raise the version of its subscriptions. A college whose count was never computed
+    * keeps an unknown count. The change is part of the caller's transaction, which also
+    * changes the user, so a user is never counted twice.
+    *
+    * @param datastore datastore holding the colleges
+    * @param txn cross-group transaction the user is changed in
+    * @param collegeId unique id of a college
+    * @param email email of the user who joined, left or changed their interests
+    * @param delta change in the number of subscribers, or 0 if only interests changed
+    */
+  public static void addSubscribers(DatastoreService datastore, Transaction txn, String collegeId,
+      String email, long delta) {
+    Entity college;
+    try {
+      college = datastore.get(txn, getKey(collegeId));
+      Long count = (Long) college.getProperty(SUBSCRIBER_COUNT);
+      if (count != null) {
+        college.setProperty(SUBSCRIBER_COUNT, Math.max(0, count + delta));
+      }
+    } catch (EntityNotFoundException e) {
+      // Users may already be subscribed to a college that isn't stored yet, so its count is
+      // computed rather than started from this change.
+      college = new Entity(getKey(collegeId));
+    }
+    college.setUnindexedProperty(SUBSCRIPTION_VERSION, getSubscriptionVersion(college) + 1);
+    List<String> recent = getRecentSubscribers(college);
+    recent.add(email);
+    college.setUnindexedProperty(RECENT_SUBSCRIBERS,
+      new ArrayList<String>(recent.subList(Math.max(0, recent.size() - MAX_RECENT_SUBSCRIBERS),
+        recent.size())));
+    datastore.put(txn, college);
+  }
+
+  /** Get the emails of the last subscribers to change, oldest first, possibly repeated. */
+  @SuppressWarnings("unchecked")
+  public static List<String> getRecentSubscribers(Entity college) {
+    // Datastore stores empty lists as null.
+    List<String> recent = (List<String>) college.getProperty(RECENT_SUBSCRIBERS);
+    return recent == null ? new ArrayList<String>() : new ArrayList<String>(recent);
+  }
+
+  /** Get the version of a college's subscriptions, which is 0 until one changes. */
+  public static long getSubscriptionVersion(Entity college) {
+    Long version = (Long) college.getProperty(SUBSCRIPTION_VERSION);
+    return version == null ? 0 : version;
+  }
+
+  /**
+    * Get the number of users subscribed to a college. Counts the users with a keys-only
+    * query and stores the result if the college doesn't have a count yet and its
+    * subscriptions didn't change while they were counted.
+    *
+    * @param datastore datastore holding the colleges and users
+    * @param college College entity
+    * @return number of subscribers
+    */
+  public static long getSubscriberCount(DatastoreService datastore, Entity college) {
+    Long count = (Long) college.getProperty(SUBSCRIBER_COUNT);
+    if (count != null) {
+      return count;
+    }
+
+    // The college may come from a query that hasn't caught up with it, so the version the
+    // count is computed at is read by key.
+    Entity storedCollege;
+    try {
+      storedCollege = datastore.get(college.getKey());
+    } catch (EntityNotFoundException e) {
+      return 0;
+    }
+    count = (Long) storedCollege.getProperty(SUBSCRIBER_COUNT);
+    if (count == null) {
+      count = countSubscribers(datastore, storedCollege);
+      storeSubscriberCount(datastore, college.getKey(), getSubscriptionVersion(storedCollege),
+        count);
+    }
+    college.setProperty(SUBSCRIBER_COUNT, count);
+    return count;
+  }
+
+  /*
+   * Count the users subscribed to a college. The query's index can lag behind the latest
+   * subscriptions, so the users who changed last are read by key and counted by where they
+   * are subscribed now.
+   */
+  private static long countSubscribers(DatastoreService datastore, Entity college) {
+    String collegeId = college.getKey().getName();
+    Query query = new Query("User")
+      .setFilter(new FilterPredicate("college", FilterOperator.EQUAL, collegeId))
+      .setKeysOnly();
+    Set<Key> subscribers = new HashSet<Key>();
+    for (Entity user : datastore.prepare(query).asIterable()) {
+      subscribers.add(user.getKey());
+    }
+
+    List<Key> recentKeys = new ArrayList<Key>();
+    for (String email : getRecentSubscribers(college)) {
+      recentKeys.add(KeyFactory.createKey("User", email));
+    }
+    Map<Key, Entity> recentUsers = datastore.get(recentKeys);
+    for (Key userKey : recentKeys) {
+      Entity user = recentUsers.get(userKey);
+      if (user != null && collegeId.equals(user.getProperty("college"))) {
+        subscribers.add(userKey);
+      } else {
+        subscribers.remove(userKey);
+      }
+    }
+    return subscribers.size();
+  }
+
+  /*
+   * Store a college's count, on the latest copy of the college so that the changes logged to
+   * it since it was read are kept. If its subscriptions changed since the count was computed
+   * at the given version, the count is left unknown and computed again next time.
+   */
+  private static void storeSubscriberCount(DatastoreService datastore, Key collegeKey,
+      long version, long count) {
+    Transaction txn = datastore.beginTransaction();
+    try {
+      Entity storedCollege = datastore.get(txn, collegeKey);
+      if (!storedCollege.hasProperty(SUBSCRIBER_COUNT)
+          && getSubscriptionVersion(storedCollege) == version) {
+        storedCollege.setProperty(SUBSCRIBER_COUNT, count);
+        datastore.put(txn, storedCollege);
+      }
+      txn.commit();
+    } catch (EntityNotFoundException | ConcurrentModificationException e) {
+      // Leave the count unknown.
+    } finally {
+      if (txn.isActive()) {
+        txn.rollback();
+      }
+    }
+  }
+}
@@ -0,0 +1,90 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Calendar;
+
+/**
+  * The search index and facets a repository keeps of a college's posts of today on this
+  * instance. They are caught up from the college's log of changes before each use, so they
+  * follow the posts created and expired on any instance. The posts of another day are only
+  * in new indexes.
+  */
+final class CollegeIndexes {
+
+  private volatile PostSearchIndex searchIndex = new PostSearchIndex();
+  private volatile PostFacets facets = new PostFacets();
+  private long version = 0;
+  private int day = -1;
+
+  /**
+    * Apply the changes to the college's feed since the indexes were last caught up. The
+    * changes are read outside the lock, so readers of the college don't wait on each other's
+    * Datastore calls; if another reader caught the indexes up meanwhile, its changes are kept
+    * when they are at least as recent, and read again otherwise.
+    *
+    * @param posts repository whose changes are applied
+    * @param collegeId unique id of the college
+    * @param nowTime current time in the time zone of the posts
+    * @return this, caught up
+    */
+  CollegeIndexes catchUp(PostRepository posts, String collegeId, Calendar nowTime) {
+    int today = nowTime.get(Calendar.YEAR) * 1000 + nowTime.get(Calendar.DAY_OF_YEAR);
+    while (true) {
+      long since = getVersion(today);
+      PostDelta delta = posts.getChangesSince(collegeId, since);
+      synchronized (this) {
+        if (day == today && version >= delta.getVersion()) {
+          return this;
+        }
+        if (getVersion(today) == since) {
+          apply(delta);
+          day = today;
+          return this;
+        }
+      }
+    }
+  }
+
+  /* Get the version the indexes are caught up to, or 0 if they hold another day's posts. */
+  private synchronized long getVersion(int today) {
+    return day == today ? version : 0;
+  }
+
+  private synchronized void apply(PostDelta delta) {
+    // New indexes are filled before they replace the old ones, which readers keep using.
+    PostSearchIndex newSearchIndex = delta.isReset() ? new PostSearchIndex() : searchIndex;
+    PostFacets newFacets = delta.isReset() ? new PostFacets() : facets;
+    for (String postId : delta.getDeleted()) {
+      newSearchIndex.remove(postId);
+      newFacets.remove(postId);
+    }
+    for (Post post : delta.getPosts()) {
+      newSearchIndex.add(post);
+      newFacets.add(post);
+    }
+    searchIndex = newSearchIndex;
+    facets = newFacets;
+    version = delta.getVersion();
+  }
+
+  PostSearchIndex getSearchIndex() {
+    return searchIndex;
+  }
+
+  PostFacets getFacets() {
+    return facets;
+  }
+}
@@ -0,0 +1,191 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilter;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.Filter;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Stores posts as "Post" entities in App Engine Datastore. */
+public final class DatastorePostRepository implements PostRepository {
+
+  public static final String ENTITY_KIND = "Post";
+
+  private final DatastoreService datastore;
+  private final AsyncDatastoreService asyncDatastore;
+  private final Map<String, CollegeIndexes> indexes = new ConcurrentHashMap<String, CollegeIndexes>();
+
+  public DatastorePostRepository(DatastoreService datastore, AsyncDatastoreService asyncDatastore) {
+    this.datastore = datastore;
+    this.asyncDatastore = asyncDatastore;
+  }
+
+  @Override
+  public String save(String collegeId, Post post) {
+    Key key = PostChanges.putCreated(datastore, collegeId, post.postToEntity(ENTITY_KIND));
+    post.setPostId(key.toString());
+    return post.getPostId();
+  }
+
+  @Override
+  public ArrayList<Post> getFeed(String collegeId, String sort, int minutesNow, int limit) {
+    Query query = getFeedQuery(collegeId, sort, minutesNow);
+    if (query == null) {
+      throw new IllegalArgumentException("Unknown feed order: " + sort);
+    }
+    return Post.queryToPosts(datastore.prepare(query), datastore, limit);
+  }
+
+  @Override
+  public Map<String, ArrayList<Post>> getTodaysPosts(List<String> collegeIds) {
+    // Start every college's query before reading any, so their first batches are fetched
+    // at the same time.
+    Map<String, Iterator<Entity>> results = new LinkedHashMap<String, Iterator<Entity>>();
+    for (String collegeId : collegeIds) {
+      Query query = new Query(ENTITY_KIND).setFilter(getTodayFilter(collegeId));
+      results.put(collegeId, asyncDatastore.prepare(query).asIterator());
+    }
+
+    Map<String, ArrayList<Post>> posts = new LinkedHashMap<String, ArrayList<Post>>();
+    for (Map.Entry<String, Iterator<Entity>> result : results.entrySet()) {
+      ArrayList<Post> collegePosts = new ArrayList<Post>();
+      while (result.getValue().hasNext()) {
+        Post post = new Post();
+        post.entityToPost(result.getValue().next());
+        collegePosts.add(post);
+      }
+      posts.put(result.getKey(), collegePosts);
+    }
+    return posts;
+  }
+
+  @Override
+  public PostDelta getChangesSince(String collegeId, long since) {
+    long version = PostChanges.getVersion(datastore, collegeId);
+    boolean reset = since <= 0 || since > version || version - since > MAX_CHANGES;
+
+    // A reset replays every change kept over the feed query, since the query's index can lag
+    // behind the log and miss the posts created or expired last.
+    List<Key> createdKeys = new ArrayList<Key>();
+    List<String> expiredIds = new ArrayList<String>();
+    for (Entity change : PostChanges.getChangesSince(datastore, collegeId, reset ? 0 : since)) {
+      version = Math.max(version, change.getKey().getId());
+      Key postKey = (Key) change.getProperty("postKey");
+      if ((Boolean) change.getProperty("expired")) {
+        expiredIds.add(postKey.toString());
+      } else {
+        createdKeys.add(postKey);
+      }
+    }
+
+    // A created post missing here was deleted, and its expiry is logged by now or soon will be.
+    Map<Key, Entity> entities = datastore.get(createdKeys);
+    List<Post> created = new ArrayList<Post>();
+    for (Key key : createdKeys) {
+      Entity entity = entities.get(key);
+      if (entity != null) {
+        Post post = new Post();
+        post.entityToPost(entity);
+        created.add(post);
+      }
+    }
+    if (reset) {
+      ArrayList<Post> feed = getFeed(collegeId, SORT_TIME, 0, Integer.MAX_VALUE);
+      return PostDelta.reset(version, feed, created, expiredIds);
+    }
+    return PostDelta.of(version, created, expiredIds);
+  }
+
+  /**
+    * Search a college's posts through the index this instance keeps of them. Before each
+    * search, the index catches up with the posts created and expired since it was last used,
+    * on any instance, from the college's log of changes; that takes a lookup and an ancestor
+    * query, plus a get when posts were created.
+    */
+  @Override
+  public ArrayList<Post> search(String collegeId, String query, int limit) {
+    Calendar nowTime = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+    return getIndexes(collegeId, nowTime).getSearchIndex().search(query, nowTime, limit);
+  }
+
+  /** Count through the facets this instance keeps, caught up like the search index. */
+  @Override
+  public Map<String, Map<String, Integer>> getFacetCounts(String collegeId) {
+    Calendar nowTime = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+    return getIndexes(collegeId, nowTime).getFacets().getCounts(nowTime);
+  }
+
+  @Override
+  public ArrayList<Post> getFilteredFeed(String collegeId, Map<String, String> selected, int limit) {
+    Calendar nowTime = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+    return getIndexes(collegeId, nowTime).getFacets().filter(selected, nowTime, limit);
+  }
+
+  private CollegeIndexes getIndexes(String collegeId, Calendar nowTime) {
+    return indexes.computeIfAbsent(collegeId, college -> new CollegeIndexes())
+      .catchUp(this, collegeId, nowTime);
+  }
+
+  /**
+    * Get the query for a college's feed in the given order, or null if the order is unknown.
+    * Each order is served by a composite index on collegeId and the sorted property.
+    */
+  public static Query getFeedQuery(String collegeId, String sort, int minutesNow) {
+    Filter collegeIdFilter = new FilterPredicate("collegeId", FilterOperator.EQUAL, collegeId);
+    Query query = new Query(ENTITY_KIND);
+    switch (sort) {
+      case SORT_TIME:
+        return query.setFilter(collegeIdFilter).addSort("timeSort", SortDirection.ASCENDING);
+      case SORT_RANK:
+        return query.setFilter(collegeIdFilter).addSort("rank", SortDirection.DESCENDING);
+      case SORT_ENDING_SOON:
+        Filter notEndedFilter =
+          new FilterPredicate("endTimeSort", FilterOperator.GREATER_THAN_OR_EQUAL, minutesNow);
+        return query.setFilter(CompositeFilterOperator.and(collegeIdFilter, notEndedFilter))
+          .addSort("endTimeSort", SortDirection.ASCENDING);
+      default:
+        return null;
+    }
+  }
+
+  /** Create a filter that limits results to a college's posts happening today. */
+  public static CompositeFilter getTodayFilter(String collegeId) {
+    // Get today's date (no need to index because Post automatically index to start from month 0).
+    Calendar today = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+    int month = today.get(Calendar.MONTH);
+    int day = today.get(Calendar.DATE);
+
+    return CompositeFilterOperator.and(
+      new FilterPredicate("month", FilterOperator.EQUAL, month),
+      new FilterPredicate("day", FilterOperator.EQUAL, day),
+      new FilterPredicate("collegeId", FilterOperator.EQUAL, collegeId));
+  }
+}
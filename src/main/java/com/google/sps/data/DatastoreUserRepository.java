@@ -0,0 +1,286 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+  * Stores users as "User" entities in App Engine Datastore, keyed by their email, and keeps
+  * the subscriber counts of the colleges in step.
+  *
+  * Each instance keeps a SubscriptionMatcher per college, built from the college's users.
+  * Before a post is matched, the college's subscription version is looked up, and the matcher
+  * is rebuilt if any subscription changed since, on any instance.
+  */
+public final class DatastoreUserRepository implements UserRepository {
+
+  public static final String ENTITY_KIND = "User";
+
+  private static final int TRANSACTION_ATTEMPTS = 3;
+
+  private final DatastoreService datastore;
+  private final AsyncDatastoreService asyncDatastore;
+  private final Map<String, CollegeMatcher> matchers = new ConcurrentHashMap<String, CollegeMatcher>();
+
+  /** A college's matcher along with the version of the subscriptions it was built from. */
+  private static final class CollegeMatcher {
+    private final SubscriptionMatcher matcher;
+    private final long version;
+
+    CollegeMatcher(SubscriptionMatcher matcher, long version) {
+      this.matcher = matcher;
+      this.version = version;
+    }
+  }
+
+  public DatastoreUserRepository(DatastoreService datastore, AsyncDatastoreService asyncDatastore) {
+    this.datastore = datastore;
+    this.asyncDatastore = asyncDatastore;
+  }
+
+  @Override
+  public void subscribe(String email, String name, String collegeId, Interests interests) {
+    Entity userEntity = new Entity(ENTITY_KIND, email);
+    userEntity.setProperty("name", name);
+    userEntity.setProperty("college", collegeId);
+    userEntity.setUnindexedProperty("foodTypes", interests.getFoodTypes());
+    userEntity.setUnindexedProperty("keywords", interests.getKeywords());
+    userEntity.setUnindexedProperty("lat", interests.getLat());
+    userEntity.setUnindexedProperty("lng", interests.getLng());
+    userEntity.setUnindexedProperty("maxDistance", interests.getMaxDistance());
+
+    // The user is read and written in the same transaction as the counts of their colleges,
+    // so concurrent subscribes of one email count it once.
+    for (int attempt = 1; ; attempt++) {
+      Transaction txn = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+      try {
+        Entity existingUser = getUser(txn, email);
+        // Datastores updates the entity if it existed before based on email key.
+        datastore.put(txn, userEntity);
+        String previousCollege =
+          existingUser == null ? null : (String) existingUser.getProperty("college");
+        if (!collegeId.equals(previousCollege)) {
+          College.addSubscribers(datastore, txn, collegeId, email, 1);
+          if (previousCollege != null) {
+            College.addSubscribers(datastore, txn, previousCollege, email, -1);
+          }
+        } else {
+          College.addSubscribers(datastore, txn, collegeId, email, 0);
+        }
+        txn.commit();
+        return;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == TRANSACTION_ATTEMPTS) {
+          throw e;
+        }
+      } finally {
+        if (txn.isActive()) {
+          txn.rollback();
+        }
+      }
+    }
+  }
+
+  @Override
+  public boolean unsubscribe(String email) {
+    for (int attempt = 1; ; attempt++) {
+      Transaction txn = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+      try {
+        Entity existingUser = getUser(txn, email);
+        if (existingUser == null) {
+          return false;
+        }
+        datastore.delete(txn, existingUser.getKey());
+        College.addSubscribers(datastore, txn, (String) existingUser.getProperty("college"), email,
+          -1);
+        txn.commit();
+        return true;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == TRANSACTION_ATTEMPTS) {
+          throw e;
+        }
+      } finally {
+        if (txn.isActive()) {
+          txn.rollback();
+        }
+      }
+    }
+  }
+
+  @Override
+  public Iterator<List<String>> getSubscriberBatches(String collegeId, int batchSize) {
+    return new SubscriberBatches(collegeId, batchSize);
+  }
+
+  @Override
+  public List<String> getMatchingSubscribers(String collegeId, Post post) {
+    Entity college;
+    try {
+      college = datastore.get(College.getKey(collegeId));
+    } catch (EntityNotFoundException e) {
+      // Users stored before colleges were registered have no version to cache against.
+      return buildMatcher(collegeId, new ArrayList<String>()).match(post);
+    }
+    long version = College.getSubscriptionVersion(college);
+    CollegeMatcher cached = matchers.get(collegeId);
+    if (cached == null || cached.version != version) {
+      cached = new CollegeMatcher(
+        buildMatcher(collegeId, College.getRecentSubscribers(college)), version);
+      matchers.put(collegeId, cached);
+    }
+    return cached.matcher.match(post);
+  }
+
+  /*
+   * Read every subscription to a college into a new matcher. The query's index can lag behind
+   * the latest subscriptions, so the users who changed last are added to the keys it finds,
+   * and every user is then read by key and kept only if they are still subscribed to the
+   * college. A rebuild therefore loads every subscriber's whole entity.
+   */
+  private SubscriptionMatcher buildMatcher(String collegeId, List<String> recentEmails) {
+    Set<Key> userKeys = new LinkedHashSet<Key>();
+    Query query = new Query(ENTITY_KIND)
+      .setFilter(new FilterPredicate("college", FilterOperator.EQUAL, collegeId))
+      .setKeysOnly();
+    for (Entity user : datastore.prepare(query).asIterable()) {
+      userKeys.add(user.getKey());
+    }
+    for (String email : recentEmails) {
+      userKeys.add(KeyFactory.createKey(ENTITY_KIND, email));
+    }
+
+    SubscriptionMatcher matcher = new SubscriptionMatcher();
+    for (Entity user : datastore.get(userKeys).values()) {
+      if (collegeId.equals(user.getProperty("college"))) {
+        matcher.add(user.getKey().getName(), getInterests(user));
+      }
+    }
+    return matcher;
+  }
+
+  /* Read a user's interests. Users who subscribed before interests existed match every post. */
+  @SuppressWarnings("unchecked")
+  private static Interests getInterests(Entity user) {
+    if (!user.hasProperty("maxDistance")) {
+      return Interests.ANYTHING;
+    }
+    // Datastore stores empty lists as null.
+    List<String> foodTypes = (List<String>) user.getProperty("foodTypes");
+    List<String> keywords = (List<String>) user.getProperty("keywords");
+    return new Interests(
+      foodTypes == null ? new ArrayList<String>() : foodTypes,
+      keywords == null ? new ArrayList<String>() : keywords,
+      (Double) user.getProperty("lat"), (Double) user.getProperty("lng"),
+      (Double) user.getProperty("maxDistance"));
+  }
+
+  @Override
+  public List<String> getSubscribedColleges() {
+    List<String> collegeIds = new ArrayList<String>();
+    for (Entity college : datastore.prepare(new Query(College.ENTITY_KIND)).asIterable()) {
+      if (College.getSubscriberCount(datastore, college) > 0) {
+        collegeIds.add(college.getKey().getName());
+      }
+    }
+    return collegeIds;
+  }
+
+  /* Look up a user within a transaction, or return null if they never subscribed. */
+  private Entity getUser(Transaction txn, String email) {
+    Key userKey = KeyFactory.createKey(ENTITY_KIND, email);
+    try {
+      return datastore.get(txn, userKey);
+    } catch (EntityNotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+    * Walks a college's subscribers in batches resumed from a cursor, rather than keeping a
+    * single query iterator open across many slow Gmail calls. Each batch is handed out with
+    * the query for the next one already sent, so it arrives while the batch is emailed.
+    */
+  private final class SubscriberBatches implements Iterator<List<String>> {
+    private final String collegeId;
+    private final int batchSize;
+    private QueryResultList<Entity> nextUsers;
+
+    SubscriberBatches(String collegeId, int batchSize) {
+      this.collegeId = collegeId;
+      this.batchSize = batchSize;
+      this.nextUsers = getUsersForACollege(null);
+    }
+
+    @Override
+    public boolean hasNext() {
+      return nextUsers != null && !nextUsers.isEmpty();
+    }
+
+    @Override
+    public List<String> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      QueryResultList<Entity> users = nextUsers;
+      List<String> emails = new ArrayList<String>();
+      for (Entity user : users) {
+        emails.add(user.getKey().getName());
+      }
+      nextUsers = users.size() < batchSize ? null : getUsersForACollege(users.getCursor());
+      return emails;
+    }
+
+    /**
+      * Find a batch of users through a keys-only query, since a user's key is their email
+      * and no other property is needed to notify them. The async service returns as soon as
+      * the query is sent; the list waits for its results when it is first read.
+      *
+      * @param cursor where the previous batch ended, or null for the first batch
+      * @return list of user entities holding only their keys, fetched in the background
+      */
+    private QueryResultList<Entity> getUsersForACollege(Cursor cursor) {
+      Query q = new Query(ENTITY_KIND)
+        .setFilter(new FilterPredicate("college", FilterOperator.EQUAL, collegeId))
+        .setKeysOnly();
+      FetchOptions options = FetchOptions.Builder.withLimit(batchSize);
+      if (cursor != null) {
+        options.startCursor(cursor);
+      }
+      return asyncDatastore.prepare(q).asQueryResultList(options);
+    }
+  }
+}
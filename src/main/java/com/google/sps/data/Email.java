@@ -19,6 +19,9 @@ import java.io.File;
 import java.io.IOException;
 import org.apache.commons.io.FileUtils;
 import java.util.ArrayList; 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** Creates and converts HTML templates for email sending. */
 public class Email {
@@ -30,9 +33,13 @@ public class Email {
   private static final String WELCOME_PATH = "WelcomeEmail.html";
   private static final String NEW_POST_PATH = "NewPost.html";
   private static final String DAILY_DIGEST_PATH = "DailyDigest.html";
+  private static final String NEW_POSTS_PATH = "NewPosts.html";
 
   private static final int PARAGRAPH_ELEMENT_LENGTH = 4;
 
+  // Templates ship with the app and never change, so each one is read from disk once.
+  private static final Map<String, String> templates = new ConcurrentHashMap<String, String>();
+
   /**
     * Convert HTML to String for MimeMessage to configure it into emails.
     *
@@ -41,12 +48,30 @@ public class Email {
     * @throws IOException
     */
   public static String getStringFromHTML(String path) throws IOException {
+    String cached = templates.get(path);
+    if (cached != null) {
+      return cached;
+    }
+
     ClassLoader classLoader = Email.class.getClassLoader();
     File HTMLfile = new File(classLoader.getResource(path).getFile());
     String str = FileUtils.readFileToString(HTMLfile, "utf-8");
+    templates.put(path, str);
     return str;
   }
 
+  /**
+    * Read every email template into memory ahead of the first email.
+    *
+    * @throws IOException
+    */
+  public static void loadTemplates() throws IOException {
+    getStringFromHTML(WELCOME_PATH);
+    getStringFromHTML(NEW_POST_PATH);
+    getStringFromHTML(DAILY_DIGEST_PATH);
+    getStringFromHTML(NEW_POSTS_PATH);
+  }
+
   /**
     * Convert welcome content to HTML.
     *
@@ -84,7 +109,33 @@ public class Email {
     * @throws IOException
     */
   public static String addRankedPosts(ArrayList<Post> rankedPosts) throws IOException {
-    String emailContent = getStringFromHTML(DAILY_DIGEST_PATH);
+    return addPosts(DAILY_DIGEST_PATH, rankedPosts);
+  }
+
+  /**
+    * Get the subject of an email about the new posts of a notification window.
+    *
+    * @param count number of posts in the email
+    * @return subject such as "🍱 noms: 3 new free food posts near you!"
+    */
+  public static String getNewPostsSubject(int count) {
+    return "🍱 noms: " + count + " new free food posts near you!";
+  }
+
+  /**
+    * Add the new posts of a notification window into one email, the same way as the digest.
+    *
+    * @param posts new posts of a college
+    * @return string of HTML file with the posts
+    * @throws IOException
+    */
+  public static String addNewPosts(List<Post> posts) throws IOException {
+    return addPosts(NEW_POSTS_PATH, posts);
+  }
+
+  /* Inject posts after the first paragraph of a template. */
+  private static String addPosts(String path, List<Post> posts) throws IOException {
+    String emailContent = getStringFromHTML(path);
 
     // Split up email content to inject multiple posts in between.
     int split = emailContent.indexOf("</p>") + PARAGRAPH_ELEMENT_LENGTH;
@@ -94,7 +145,7 @@ public class Email {
     // Add all ranked posts information to email content.
     // Example: Blueprint at UCI @ UCI Classroom Technology Support | 5:00PM - 6:00PM
     //          description: Come get free breakfast items, Coffee and Bagels! We overbought!
-    for (Post post : rankedPosts) {
+    for (Post post : posts) {
       firstPartOfEmail += "\n<p>" + post.getOrganizationName() +
         " @ " + post.getLocation() + 
         " | " + getFormattedTime(post.getStartHour(), post.getStartMinute()) + 
@@ -0,0 +1,125 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+  * Validates and parses the parameters of a form request, one field at a time.
+  *
+  * Each value is scanned once with the character classes of InputPattern and parsed in
+  * the same pass. The first field that fails is remembered, and every field read after
+  * it is skipped, so callers can read all fields and check isValid() once at the end.
+  */
+public final class FormValidator {
+
+  private final HttpServletRequest request;
+  private String invalidField = null;
+
+  public FormValidator(HttpServletRequest request) {
+    this.request = request;
+  }
+
+  /**
+    * Read a field matching InputPattern.POSITIVE_INTEGER that fits in an int.
+    *
+    * @param name name of the request parameter
+    * @return the parsed value, or 0 if the field is invalid
+    */
+  public int positiveInteger(String name) {
+    String input = read(name);
+    if (input == null || input.isEmpty()) {
+      return fail(name, 0);
+    }
+
+    int value = 0;
+    for (int i = 0; i < input.length(); i++) {
+      char c = input.charAt(i);
+      if (!InputPattern.isDigit(c)) {
+        return fail(name, 0);
+      }
+      int digit = c - '0';
+      if (value > (Integer.MAX_VALUE - digit) / 10) {
+        return fail(name, 0);
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  /**
+    * Read a field matching InputPattern.DOUBLE. The scan guarantees that parsing
+    * can't throw, and parsing is left to Double.parseDouble for correct rounding.
+    *
+    * @param name name of the request parameter
+    * @return the parsed value, or 0 if the field is invalid
+    */
+  public double decimal(String name) {
+    String input = read(name);
+    if (!InputPattern.isDouble(input)) {
+      return fail(name, 0.0);
+    }
+    return Double.parseDouble(input);
+  }
+
+  /**
+    * Read a field matching InputPattern.TEXT within the given length bounds.
+    *
+    * @param name name of the request parameter
+    * @param minLength smallest allowed length
+    * @param maxLength largest allowed length
+    * @return the value, or an empty string if the field is invalid
+    */
+  public String text(String name, int minLength, int maxLength) {
+    String input = read(name);
+    if (input == null || input.length() < minLength || input.length() > maxLength ||
+        !InputPattern.isText(input)) {
+      return fail(name, "");
+    }
+    return input;
+  }
+
+  /**
+    * Mark a field as invalid if a condition on its parsed value doesn't hold.
+    *
+    * @param condition whether the field is valid
+    * @param name name of the field to report
+    */
+  public void require(boolean condition, String name) {
+    if (!condition) {
+      fail(name, null);
+    }
+  }
+
+  public boolean isValid() {
+    return invalidField == null;
+  }
+
+  /** @return the name of the first field that failed, or null if all fields are valid */
+  public String getInvalidField() {
+    return invalidField;
+  }
+
+  private String read(String name) {
+    return isValid() ? request.getParameter(name) : null;
+  }
+
+  private <T> T fail(String name, T defaultValue) {
+    if (isValid()) {
+      invalidField = name;
+    }
+    return defaultValue;
+  }
+}
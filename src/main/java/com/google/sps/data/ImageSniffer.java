@@ -0,0 +1,109 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.blobstore.BlobstoreService;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+  * Recognizes uploaded images by their first bytes instead of the content type the browser
+  * sent, which the uploader controls.
+  */
+public final class ImageSniffer {
+
+  // Bytes needed to recognize every supported format; WEBP needs the most.
+  static final int HEADER_LENGTH = 12;
+
+  // Make the constructor private to emulate a static class.
+  private ImageSniffer() {}
+
+  /**
+    * Get the content type of an image from its first bytes.
+    *
+    * @param header first bytes of the file
+    * @return image/jpeg, image/png, image/gif or image/webp, or null if it isn't one of them
+    */
+  public static String getImageType(byte[] header) {
+    if (startsWith(header, 0, 0xFF, 0xD8, 0xFF)) {
+      return "image/jpeg";
+    }
+    if (startsWith(header, 0, 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n')) {
+      return "image/png";
+    }
+    if (startsWith(header, 0, 'G', 'I', 'F', '8', '7', 'a')
+        || startsWith(header, 0, 'G', 'I', 'F', '8', '9', 'a')) {
+      return "image/gif";
+    }
+    if (startsWith(header, 0, 'R', 'I', 'F', 'F') && startsWith(header, 8, 'W', 'E', 'B', 'P')) {
+      return "image/webp";
+    }
+    return null;
+  }
+
+  /**
+    * Check if a stored blob is an image, reading only its first bytes.
+    *
+    * @param blobstoreService service holding the blob
+    * @param blobKey key of the uploaded blob
+    * @return true if the blob is a JPEG, PNG, GIF or WEBP image
+    */
+  public static boolean isImage(BlobstoreService blobstoreService, BlobKey blobKey) {
+    try {
+      // Both ends of the range are included.
+      return getImageType(blobstoreService.fetchData(blobKey, 0, HEADER_LENGTH - 1)) != null;
+    } catch (RuntimeException e) {
+      // The blob is empty or can't be read, so it can't be served as an image either.
+      return false;
+    }
+  }
+
+  /**
+    * Delete the uploads that aren't images before anything refers to them.
+    *
+    * @param blobstoreService service holding the uploads
+    * @param uploads uploaded blobs, from which the deleted ones are removed
+    * @return blobs that were deleted
+    */
+  public static List<BlobKey> deleteNonImages(BlobstoreService blobstoreService,
+      List<BlobKey> uploads) {
+    List<BlobKey> deleted = new ArrayList<BlobKey>();
+    for (Iterator<BlobKey> it = uploads.iterator(); it.hasNext(); ) {
+      BlobKey upload = it.next();
+      if (!isImage(blobstoreService, upload)) {
+        deleted.add(upload);
+        it.remove();
+      }
+    }
+    if (!deleted.isEmpty()) {
+      blobstoreService.delete(deleted.toArray(new BlobKey[deleted.size()]));
+    }
+    return deleted;
+  }
+
+  private static boolean startsWith(byte[] data, int offset, int... expected) {
+    if (data == null || data.length < offset + expected.length) {
+      return false;
+    }
+    for (int i = 0; i < expected.length; i++) {
+      if ((data[offset + i] & 0xFF) != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,152 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.blobstore.BlobInfo;
+import com.google.appengine.api.blobstore.BlobInfoFactory;
+import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesService;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import com.google.appengine.api.images.OutputSettings;
+import com.google.appengine.api.images.Transform;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+  * Resized copies of uploaded food images, so the feed doesn't download camera photos.
+  *
+  * Each variant is a JPEG no wider or taller than its size, generated once when the post is
+  * created and stored as an ImageVariant entity keyed by the original blob key and the size
+  * name. A variant that would not be smaller than the original is not stored, and /serve
+  * falls back to the original blob.
+  */
+public final class ImageVariants {
+
+  public static final String ENTITY_KIND = "ImageVariant";
+  public static final String CONTENT_TYPE = "image/jpeg";
+
+  // Longest side of each variant in pixels, by the name used in /serve?size=.
+  public static final Map<String, Integer> SIZES;
+  static {
+    Map<String, Integer> sizes = new LinkedHashMap<String, Integer>();
+    sizes.put("thumbnail", 160);
+    sizes.put("card", 480);
+    sizes.put("full", 1280);
+    SIZES = Collections.unmodifiableMap(sizes);
+  }
+
+  private static final int JPEG_QUALITY = 80;
+  // Leaves room for the other properties under the 1MB Datastore entity limit.
+  private static final int MAX_VARIANT_BYTES = 900 * 1024;
+
+  private static final Logger log = Logger.getLogger(ImageVariants.class.getName());
+
+  // Make the constructor private to emulate a static class.
+  private ImageVariants() {}
+
+  public static Key getKey(String blobKey, String size) {
+    return KeyFactory.createKey(ENTITY_KIND, blobKey + ":" + size);
+  }
+
+  /**
+    * Generate and store every variant of an uploaded image. Images that can't be
+    * transformed are logged and left without variants.
+    *
+    * @param datastore datastore to store the variants in
+    * @param imagesService service resizing the image
+    * @param blobKey key of the original image in Blobstore
+    * @return number of variants stored
+    */
+  public static int createVariants(DatastoreService datastore, ImagesService imagesService,
+      String blobKey) {
+    BlobInfo original = new BlobInfoFactory(datastore).loadBlobInfo(new BlobKey(blobKey));
+    OutputSettings settings = new OutputSettings(ImagesService.OutputEncoding.JPEG);
+    settings.setQuality(JPEG_QUALITY);
+
+    List<Entity> variants = new ArrayList<Entity>();
+    for (Map.Entry<String, Integer> size : SIZES.entrySet()) {
+      byte[] data;
+      try {
+        Image image = ImagesServiceFactory.makeImageFromBlob(new BlobKey(blobKey));
+        Transform resize = ImagesServiceFactory.makeResize(size.getValue(), size.getValue());
+        data = imagesService.applyTransform(resize, image, settings).getImageData();
+      } catch (RuntimeException e) {
+        // The upload isn't an image the Images service can read.
+        log.warning("Could not resize " + blobKey + ": " + e);
+        break;
+      }
+
+      if (data.length > MAX_VARIANT_BYTES || (original != null && data.length >= original.getSize())) {
+        continue;
+      }
+      Entity variant = new Entity(getKey(blobKey, size.getKey()));
+      variant.setProperty("blobKey", blobKey);
+      variant.setProperty("size", size.getKey());
+      variant.setProperty("contentType", CONTENT_TYPE);
+      variant.setProperty("data", new Blob(data));
+      variants.add(variant);
+    }
+
+    if (!variants.isEmpty()) {
+      datastore.put(variants);
+    }
+    return variants.size();
+  }
+
+  /**
+    * Get a stored variant of an image.
+    *
+    * @param datastore datastore holding the variants
+    * @param blobKey key of the original image in Blobstore
+    * @param size name of the variant size
+    * @return the variant's JPEG bytes, or null if the size is unknown or wasn't stored
+    */
+  public static byte[] getVariant(DatastoreService datastore, String blobKey, String size) {
+    if (!SIZES.containsKey(size)) {
+      return null;
+    }
+    try {
+      Entity variant = datastore.get(getKey(blobKey, size));
+      return ((Blob) variant.getProperty("data")).getBytes();
+    } catch (EntityNotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+    * Delete every variant of an image.
+    *
+    * @param datastore datastore holding the variants
+    * @param blobKey key of the original image in Blobstore
+    */
+  public static void deleteVariants(DatastoreService datastore, String blobKey) {
+    List<Key> keys = new ArrayList<Key>();
+    for (String size : SIZES.keySet()) {
+      keys.add(getKey(blobKey, size));
+    }
+    datastore.delete(keys);
+  }
+}
@@ -0,0 +1,228 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+  * Keeps posts in memory, for load tests and benchmarks that run without Datastore.
+  *
+  * Each college's posts are kept in one concurrent sorted set per feed order, so a feed is
+  * read by walking its set without sorting or locking. Only the writes to a college are
+  * serialized, so that its changes are logged in order. Blobs of expired posts aren't
+  * released, since there is no Blobstore to release them from.
+  */
+public final class InMemoryPostRepository implements PostRepository {
+
+  private final Map<String, CollegePosts> colleges = new ConcurrentHashMap<String, CollegePosts>();
+  private final AtomicLong lastId = new AtomicLong();
+  private final Map<String, CollegeIndexes> indexes = new ConcurrentHashMap<String, CollegeIndexes>();
+
+  /** A stored post with the values it is sorted on, which ties are broken on by id. */
+  private static final class StoredPost {
+    private final long id;
+    private final int timeSort;
+    private final int endTimeSort;
+    private final double rank;
+    private final Post post;
+
+    StoredPost(long id, int timeSort, int endTimeSort, double rank, Post post) {
+      this.id = id;
+      this.timeSort = timeSort;
+      this.endTimeSort = endTimeSort;
+      this.rank = rank;
+      this.post = post;
+    }
+  }
+
+  private static final Comparator<StoredPost> BY_TIME =
+    Comparator.<StoredPost>comparingInt(stored -> stored.timeSort).thenComparingLong(stored -> stored.id);
+  private static final Comparator<StoredPost> BY_RANK =
+    Comparator.<StoredPost>comparingDouble(stored -> -stored.rank).thenComparingLong(stored -> stored.id);
+  private static final Comparator<StoredPost> BY_END_TIME =
+    Comparator.<StoredPost>comparingInt(stored -> stored.endTimeSort).thenComparingLong(stored -> stored.id);
+
+  /** A post created or expired, logged under its number in the college's changes. */
+  private static final class StoredChange {
+    private final StoredPost stored;
+    private final boolean expired;
+
+    StoredChange(StoredPost stored, boolean expired) {
+      this.stored = stored;
+      this.expired = expired;
+    }
+  }
+
+  /**
+    * The posts of one college, in every feed order, and the log of their latest changes.
+    * Changes are numbered under the lock, and the count is raised only once a change is
+    * logged, so readers of the log never see a gap.
+    */
+  private static final class CollegePosts {
+    private final NavigableSet<StoredPost> byTime = new ConcurrentSkipListSet<StoredPost>(BY_TIME);
+    private final NavigableSet<StoredPost> byRank = new ConcurrentSkipListSet<StoredPost>(BY_RANK);
+    private final NavigableSet<StoredPost> byEndTime =
+      new ConcurrentSkipListSet<StoredPost>(BY_END_TIME);
+    private final ConcurrentNavigableMap<Long, StoredChange> changes =
+      new ConcurrentSkipListMap<Long, StoredChange>();
+    private volatile long changeSeq = 0;
+
+    synchronized void add(StoredPost stored) {
+      byTime.add(stored);
+      byRank.add(stored);
+      byEndTime.add(stored);
+      log(new StoredChange(stored, false));
+    }
+
+    // A post removed by several readers at once is only logged as expired once.
+    synchronized void remove(StoredPost stored) {
+      if (!byTime.remove(stored)) {
+        return;
+      }
+      byRank.remove(stored);
+      byEndTime.remove(stored);
+      log(new StoredChange(stored, true));
+    }
+
+    private void log(StoredChange change) {
+      changes.put(changeSeq + 1, change);
+      changes.remove(changeSeq + 1 - MAX_CHANGES);
+      changeSeq++;
+    }
+  }
+
+  @Override
+  public String save(String collegeId, Post post) {
+    long id = lastId.incrementAndGet();
+    post.setPostId(Long.toString(id));
+    StoredPost stored =
+      new StoredPost(id, post.getTimeSort(), post.getEndTimeSort(), post.getRank(), post);
+    colleges.computeIfAbsent(collegeId, college -> new CollegePosts()).add(stored);
+    return post.getPostId();
+  }
+
+  @Override
+  public ArrayList<Post> getFeed(String collegeId, String sort, int minutesNow, int limit) {
+    if (!SORTS.contains(sort)) {
+      throw new IllegalArgumentException("Unknown feed order: " + sort);
+    }
+    ArrayList<Post> posts = new ArrayList<Post>();
+    CollegePosts college = colleges.get(collegeId);
+    if (college == null) {
+      return posts;
+    }
+
+    Iterable<StoredPost> index;
+    if (sort.equals(SORT_RANK)) {
+      index = college.byRank;
+    } else if (sort.equals(SORT_ENDING_SOON)) {
+      index = college.byEndTime.tailSet(
+        new StoredPost(Long.MIN_VALUE, 0, minutesNow, 0, null), true);
+    } else {
+      index = college.byTime;
+    }
+
+    // Same as Post.queryToPosts: ended posts are deleted, and only today's posts are returned.
+    Calendar nowTime = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+    for (StoredPost stored : index) {
+      if (posts.size() >= limit) {
+        break;
+      }
+      if (stored.post.hasEnded(nowTime)) {
+        college.remove(stored);
+      } else if (stored.post.isOnDayOf(nowTime)) {
+        posts.add(stored.post);
+      }
+    }
+    return posts;
+  }
+
+  @Override
+  public PostDelta getChangesSince(String collegeId, long since) {
+    CollegePosts college = colleges.get(collegeId);
+    long version = college == null ? 0 : college.changeSeq;
+    if (since <= 0 || since > version || version - since > MAX_CHANGES) {
+      return PostDelta.reset(version, getFeed(collegeId, SORT_TIME, 0, Integer.MAX_VALUE));
+    }
+
+    List<Post> created = new ArrayList<Post>();
+    List<String> expiredIds = new ArrayList<String>();
+    for (Map.Entry<Long, StoredChange> change : college.changes.tailMap(since, false).entrySet()) {
+      version = Math.max(version, change.getKey());
+      if (change.getValue().expired) {
+        expiredIds.add(change.getValue().stored.post.getPostId());
+      } else {
+        created.add(change.getValue().stored.post);
+      }
+    }
+    return PostDelta.of(version, created, expiredIds);
+  }
+
+  // The search index and facets catch up from the log of changes, as in Datastore.
+  @Override
+  public ArrayList<Post> search(String collegeId, String query, int limit) {
+    Calendar nowTime = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+    return getIndexes(collegeId, nowTime).getSearchIndex().search(query, nowTime, limit);
+  }
+
+  @Override
+  public Map<String, Map<String, Integer>> getFacetCounts(String collegeId) {
+    Calendar nowTime = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+    return getIndexes(collegeId, nowTime).getFacets().getCounts(nowTime);
+  }
+
+  @Override
+  public ArrayList<Post> getFilteredFeed(String collegeId, Map<String, String> selected, int limit) {
+    Calendar nowTime = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+    return getIndexes(collegeId, nowTime).getFacets().filter(selected, nowTime, limit);
+  }
+
+  private CollegeIndexes getIndexes(String collegeId, Calendar nowTime) {
+    return indexes.computeIfAbsent(collegeId, college -> new CollegeIndexes())
+      .catchUp(this, collegeId, nowTime);
+  }
+
+  @Override
+  public Map<String, ArrayList<Post>> getTodaysPosts(List<String> collegeIds) {
+    Calendar today = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+    Map<String, ArrayList<Post>> posts = new LinkedHashMap<String, ArrayList<Post>>();
+    for (String collegeId : collegeIds) {
+      ArrayList<Post> collegePosts = new ArrayList<Post>();
+      CollegePosts college = colleges.get(collegeId);
+      if (college != null) {
+        for (StoredPost stored : college.byTime) {
+          if (stored.post.getMonth() == today.get(Calendar.MONTH)
+              && stored.post.getDay() == today.get(Calendar.DATE)) {
+            collegePosts.add(stored.post);
+          }
+        }
+      }
+      posts.put(collegeId, collegePosts);
+    }
+    return posts;
+  }
+}
@@ -0,0 +1,104 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+  * Keeps users in memory, for load tests and benchmarks that run without Datastore.
+  * Subscribers are indexed by college in sorted sets, so batches come out in email order
+  * like the Datastore query's. Names aren't kept, since nothing reads them back.
+  */
+public final class InMemoryUserRepository implements UserRepository {
+
+  // College of each user, by email.
+  private final Map<String, String> colleges = new ConcurrentHashMap<String, String>();
+  private final Map<String, NavigableSet<String>> subscribers =
+    new ConcurrentHashMap<String, NavigableSet<String>>();
+  private final Map<String, SubscriptionMatcher> matchers =
+    new ConcurrentHashMap<String, SubscriptionMatcher>();
+
+  @Override
+  public void subscribe(String email, String name, String collegeId, Interests interests) {
+    // Updates to one user are serialized by the map, so the indexes can't miss a move.
+    colleges.compute(email, (user, previousCollege) -> {
+      if (previousCollege != null) {
+        subscribers.get(previousCollege).remove(email);
+        matchers.get(previousCollege).remove(email);
+      }
+      subscribers.computeIfAbsent(collegeId, college -> new ConcurrentSkipListSet<String>())
+        .add(email);
+      matchers.computeIfAbsent(collegeId, college -> new SubscriptionMatcher())
+        .add(email, interests);
+      return collegeId;
+    });
+  }
+
+  @Override
+  public boolean unsubscribe(String email) {
+    boolean[] removed = new boolean[1];
+    colleges.computeIfPresent(email, (user, previousCollege) -> {
+      subscribers.get(previousCollege).remove(email);
+      matchers.get(previousCollege).remove(email);
+      removed[0] = true;
+      return null;
+    });
+    return removed[0];
+  }
+
+  @Override
+  public Iterator<List<String>> getSubscriberBatches(String collegeId, int batchSize) {
+    List<List<String>> batches = new ArrayList<List<String>>();
+    Set<String> emails = subscribers.get(collegeId);
+    if (emails != null) {
+      List<String> batch = new ArrayList<String>();
+      for (String email : emails) {
+        batch.add(email);
+        if (batch.size() == batchSize) {
+          batches.add(batch);
+          batch = new ArrayList<String>();
+        }
+      }
+      if (!batch.isEmpty()) {
+        batches.add(batch);
+      }
+    }
+    return batches.iterator();
+  }
+
+  @Override
+  public List<String> getMatchingSubscribers(String collegeId, Post post) {
+    SubscriptionMatcher matcher = matchers.get(collegeId);
+    return matcher == null ? new ArrayList<String>() : matcher.match(post);
+  }
+
+  @Override
+  public List<String> getSubscribedColleges() {
+    List<String> collegeIds = new ArrayList<String>();
+    for (Map.Entry<String, NavigableSet<String>> college : subscribers.entrySet()) {
+      if (!college.getValue().isEmpty()) {
+        collegeIds.add(college.getKey());
+      }
+    }
+    return collegeIds;
+  }
+}
@@ -27,6 +27,61 @@ public final class InputPattern {
   public static final Pattern POSITIVE_INTEGER = Pattern.compile("^[0-9]+$");
   public static final Pattern TEXT = Pattern.compile("^[a-zA-Z0-9 .,\\n!]+$");
 
+  /** Checks the same strings as POSITIVE_INTEGER, without compiling a matcher. */
+  public static boolean isPositiveInteger(String input) {
+    if (input == null || input.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < input.length(); i++) {
+      if (!isDigit(input.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Checks the same strings as DOUBLE, without compiling a matcher. */
+  public static boolean isDouble(String input) {
+    if (input == null) {
+      return false;
+    }
+    int i = input.startsWith("-") ? 1 : 0;
+    int integerStart = i;
+    while (i < input.length() && isDigit(input.charAt(i))) {
+      i++;
+    }
+    if (i == integerStart || i == input.length() || input.charAt(i) != '.') {
+      return false;
+    }
+    int fractionStart = ++i;
+    while (i < input.length() && isDigit(input.charAt(i))) {
+      i++;
+    }
+    return i > fractionStart && i == input.length();
+  }
+
+  /** Checks the same strings as TEXT, without compiling a matcher. */
+  public static boolean isText(String input) {
+    if (input == null || input.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < input.length(); i++) {
+      if (!isTextCharacter(input.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  static boolean isTextCharacter(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) ||
+      c == ' ' || c == '.' || c == ',' || c == '\n' || c == '!';
+  }
+
   // Make the constructor private to emulate a static class.
   // Since this is a utility class, instantiating an instance isn't meaningful.
   private InputPattern() {} 
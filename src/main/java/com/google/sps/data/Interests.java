@@ -0,0 +1,169 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+  * What posts a subscriber wants to be emailed about: posts of some food types, posts
+  * mentioning some keywords, and posts within a distance of a place. A post matches if it has
+  * any of the food types or keywords, when there are any, and is close enough, when a distance
+  * is given. Food types and keywords are kept as terms of PostTokenizer, so "Ice Cream!"
+  * matches posts whose food type holds both "ice" and "cream".
+  */
+public final class Interests {
+
+  // Distances are capped, so a subscriber covers a bounded number of SubscriptionMatcher cells.
+  public static final double MAX_DISTANCE_MILES = 10;
+  // Miles per degree of latitude, as on the feed page.
+  public static final double MILES_PER_DEGREE_LAT = 69.172;
+
+  public static final Interests ANYTHING = new Interests(Collections.<String>emptyList(),
+    Collections.<String>emptyList(), 0, 0, 0);
+
+  private final List<List<String>> foodTypes;
+  private final List<List<String>> keywords;
+  private final double lat;
+  private final double lng;
+  private final double maxDistance;
+
+  /**
+    * @param foodTypes food types to be emailed about, in any case
+    * @param keywords words or phrases to be emailed about, in any case
+    * @param lat latitude of the place posts are measured from
+    * @param lng longitude of the place posts are measured from
+    * @param maxDistance farthest a post may be from the place in miles, or 0 for any distance
+    * @throws IllegalArgumentException if the distance is negative or above MAX_DISTANCE_MILES
+    */
+  public Interests(List<String> foodTypes, List<String> keywords, double lat, double lng,
+      double maxDistance) {
+    if (maxDistance < 0 || maxDistance > MAX_DISTANCE_MILES) {
+      throw new IllegalArgumentException("Distance out of range: " + maxDistance);
+    }
+    this.foodTypes = tokenizeAll(foodTypes);
+    this.keywords = tokenizeAll(keywords);
+    this.lat = lat;
+    this.lng = lng;
+    this.maxDistance = maxDistance;
+  }
+
+  // Phrases without any term, such as "the", are dropped.
+  private static List<List<String>> tokenizeAll(List<String> phrases) {
+    List<List<String>> tokenized = new ArrayList<List<String>>();
+    for (String phrase : phrases) {
+      List<String> terms = PostTokenizer.tokenize(phrase);
+      if (!terms.isEmpty()) {
+        tokenized.add(Collections.unmodifiableList(terms));
+      }
+    }
+    return Collections.unmodifiableList(tokenized);
+  }
+
+  /** Get the food types as their terms, each separated by a space. */
+  public List<String> getFoodTypes() {
+    return join(foodTypes);
+  }
+
+  /** Get the keywords as their terms, each separated by a space. */
+  public List<String> getKeywords() {
+    return join(keywords);
+  }
+
+  private static List<String> join(List<List<String>> phrases) {
+    List<String> joined = new ArrayList<String>();
+    for (List<String> phrase : phrases) {
+      joined.add(String.join(" ", phrase));
+    }
+    return joined;
+  }
+
+  List<List<String>> getFoodTypeTerms() {
+    return foodTypes;
+  }
+
+  List<List<String>> getKeywordTerms() {
+    return keywords;
+  }
+
+  public double getLat() {
+    return lat;
+  }
+
+  public double getLng() {
+    return lng;
+  }
+
+  public double getMaxDistance() {
+    return maxDistance;
+  }
+
+  /** Whether any post matches, whatever it is about and wherever it is. */
+  public boolean isAnything() {
+    return !hasTopics() && !hasPlace();
+  }
+
+  boolean hasTopics() {
+    return !foodTypes.isEmpty() || !keywords.isEmpty();
+  }
+
+  boolean hasPlace() {
+    return maxDistance > 0;
+  }
+
+  /** Whether a post is one the subscriber wants to be emailed about. */
+  public boolean matches(Post post) {
+    return matches(PostTokenizer.tokenize(post.getTypeOfFood()), PostTokenizer.getTerms(post),
+      post.getLat(), post.getLng());
+  }
+
+  /**
+    * Whether a post is one the subscriber wants to be emailed about, from its terms.
+    *
+    * @param foodTerms terms of the post's food type
+    * @param terms terms of every field of the post, as returned by PostTokenizer.getTerms
+    * @param postLat latitude of the post
+    * @param postLng longitude of the post
+    */
+  boolean matches(List<String> foodTerms, Set<String> terms, double postLat, double postLng) {
+    if (hasTopics() && !containsAny(foodTerms, foodTypes) && !containsAny(terms, keywords)) {
+      return false;
+    }
+    return !hasPlace() || milesBetween(lat, lng, postLat, postLng) <= maxDistance;
+  }
+
+  private static boolean containsAny(Collection<String> terms, List<List<String>> phrases) {
+    for (List<String> phrase : phrases) {
+      if (terms.containsAll(phrase)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+    * Get the distance between two places in miles, treating the ground between them as flat,
+    * which is close enough within MAX_DISTANCE_MILES.
+    */
+  public static double milesBetween(double latA, double lngA, double latB, double lngB) {
+    double milesPerDegreeLng = Math.cos(Math.toRadians((latA + latB) / 2)) * MILES_PER_DEGREE_LAT;
+    double latMiles = (latA - latB) * MILES_PER_DEGREE_LAT;
+    double lngMiles = (lngA - lngB) * milesPerDegreeLng;
+    return Math.sqrt(latMiles * latMiles + lngMiles * lngMiles);
+  }
+}
@@ -0,0 +1,158 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+  * Holds new posts back so their subscribers get one email per window of time instead of one
+  * per post. Windows are on unless the "sps.notificationWindowMinutes" system property is
+  * missing or 0, in which case every post is emailed as soon as it is stored.
+  *
+  * Pending posts are kept as "PendingPost" entities, keyed by the post's id, so every
+  * instance adds to the same windows. Windows start at multiples of their length, and the
+  * ones that have ended are sent and removed by the flush, which is meant to run at least
+  * once per window.
+  */
+public final class NotificationWindows {
+
+  public static final String ENTITY_KIND = "PendingPost";
+  public static final String WINDOW_PROPERTY = "sps.notificationWindowMinutes";
+
+  private static final String WINDOW_START = "windowStart";
+
+  /** The posts of one college held back during one window. */
+  public static final class Window {
+    private final String collegeId;
+    private final long start;
+    private final List<Post> posts = new ArrayList<Post>();
+    private final List<Key> keys = new ArrayList<Key>();
+
+    Window(String collegeId, long start) {
+      this.collegeId = collegeId;
+      this.start = start;
+    }
+
+    public String getCollegeId() {
+      return collegeId;
+    }
+
+    /** Get when the window started, in milliseconds since the epoch. */
+    public long getStart() {
+      return start;
+    }
+
+    /** Get the posts held back during the window. */
+    public List<Post> getPosts() {
+      return posts;
+    }
+  }
+
+  // Make the constructor private to emulate a static class.
+  private NotificationWindows() {}
+
+  /** Get the length of a window in milliseconds, or 0 if posts are emailed right away. */
+  public static long getWindowMillis() {
+    return TimeUnit.MINUTES.toMillis(Long.getLong(WINDOW_PROPERTY, 0));
+  }
+
+  public static boolean isEnabled() {
+    return getWindowMillis() > 0;
+  }
+
+  /**
+    * Get the start of the window a moment falls in.
+    *
+    * @param timeMillis milliseconds since the epoch
+    * @param windowMillis length of a window
+    * @return start of the window in milliseconds since the epoch
+    */
+  public static long getWindowStart(long timeMillis, long windowMillis) {
+    return timeMillis - Math.floorMod(timeMillis, windowMillis);
+  }
+
+  /**
+    * Hold a stored post back until its window ends.
+    *
+    * @param datastore datastore holding the pending posts
+    * @param collegeId unique id of the post's college
+    * @param post a post with an id
+    * @param nowMillis current time in milliseconds since the epoch
+    * @param windowMillis length of a window
+    */
+  public static void add(DatastoreService datastore, String collegeId, Post post, long nowMillis,
+      long windowMillis) {
+    Entity pending = new Entity(ENTITY_KIND, post.getPostId());
+    Map<String, Object> properties = post.postToEntity(ENTITY_KIND).getProperties();
+    for (Map.Entry<String, Object> property : properties.entrySet()) {
+      pending.setUnindexedProperty(property.getKey(), property.getValue());
+    }
+    pending.setUnindexedProperty("collegeId", collegeId);
+    pending.setProperty(WINDOW_START, getWindowStart(nowMillis, windowMillis));
+    datastore.put(pending);
+  }
+
+  /**
+    * Get the windows that have ended and still hold posts, oldest first.
+    *
+    * @param datastore datastore holding the pending posts
+    * @param nowMillis current time in milliseconds since the epoch
+    * @param windowMillis length of a window
+    * @return windows by college and start
+    */
+  public static List<Window> getEndedWindows(DatastoreService datastore, long nowMillis,
+      long windowMillis) {
+    Query query = new Query(ENTITY_KIND)
+      .setFilter(new FilterPredicate(WINDOW_START, FilterOperator.LESS_THAN,
+        getWindowStart(nowMillis, windowMillis)))
+      .addSort(WINDOW_START, SortDirection.ASCENDING);
+
+    Map<String, Window> windows = new LinkedHashMap<String, Window>();
+    for (Entity pending : datastore.prepare(query).asIterable()) {
+      String collegeId = (String) pending.getProperty("collegeId");
+      long start = (Long) pending.getProperty(WINDOW_START);
+      Window window = windows.computeIfAbsent(collegeId + "/" + start,
+        k -> new Window(collegeId, start));
+
+      Post post = new Post();
+      post.entityToPost(pending);
+      post.setPostId(pending.getKey().getName());
+      window.posts.add(post);
+      window.keys.add(pending.getKey());
+    }
+    return new ArrayList<Window>(windows.values());
+  }
+
+  /**
+    * Drop the posts of a window once its emails were sent.
+    *
+    * @param datastore datastore holding the pending posts
+    * @param window a window returned by getEndedWindows
+    */
+  public static void remove(DatastoreService datastore, Window window) {
+    datastore.delete(window.keys);
+  }
+}
@@ -0,0 +1,186 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+  * Records every email delivery in Datastore so that notifications are idempotent.
+  *
+  * A delivery is identified by the recipient's email and a delivery id (a digest date, a post
+  * id, or a notification window and its posts). The record is written as pending before the
+  * email is sent and marked as sent afterwards, so a run that crashes halfway can be repeated
+  * and only the recipients that were never reached get emailed.
+  */
+public final class Outbox {
+
+  public static final String ENTITY_KIND = "Outbox";
+
+  private static final String PENDING = "pending";
+  private static final String SENT = "sent";
+
+  // Make the constructor private to emulate a static class.
+  private Outbox() {}
+
+  /**
+    * Create the delivery id of a daily digest.
+    *
+    * @param day date the digest is sent for
+    * @return delivery id such as digest-2020-08-24
+    */
+  public static String digestDeliveryId(Calendar day) {
+    return String.format("digest-%d-%02d-%02d", day.get(Calendar.YEAR),
+      day.get(Calendar.MONTH) + 1, day.get(Calendar.DATE));
+  }
+
+  /**
+    * Create the delivery id of a new post notification.
+    *
+    * @param postId unique id of the post
+    * @return delivery id of the post
+    */
+  public static String postDeliveryId(String postId) {
+    return "post-" + postId;
+  }
+
+  /**
+    * Create the delivery id of the emails about the posts of a notification window. Posts
+    * found in the window only after it was emailed make a new delivery rather than being
+    * taken for sent.
+    *
+    * @param collegeId unique id of the window's college
+    * @param windowStart start of the window in milliseconds since the epoch
+    * @param postIds ids of the window's posts, in any order
+    * @return delivery id such as window-123-1597000000000-<digest of the post ids>
+    */
+  public static String windowDeliveryId(String collegeId, long windowStart,
+      Collection<String> postIds) {
+    List<String> sortedIds = new ArrayList<String>(postIds);
+    Collections.sort(sortedIds);
+    UUID digest =
+      UUID.nameUUIDFromBytes(String.join("\n", sortedIds).getBytes(StandardCharsets.UTF_8));
+    return "window-" + collegeId + "-" + windowStart + "-" + digest;
+  }
+
+  /**
+    * Create the Datastore key of a delivery.
+    *
+    * @param deliveryId digest, post or window delivery id
+    * @param email email address of the receiver
+    * @return key of the outbox entity
+    */
+  public static Key getKey(String deliveryId, String email) {
+    return KeyFactory.createKey(ENTITY_KIND, deliveryId + "/" + email);
+  }
+
+  /**
+    * Record that an email is about to be sent, unless it was already delivered.
+    * Repeated attempts of an undelivered email increase its attempt count.
+    *
+    * @param datastore datastore holding the outbox
+    * @param deliveryId digest, post or window delivery id
+    * @param email email address of the receiver
+    * @return the pending delivery, or null if the email was already sent
+    */
+  public static Entity claim(DatastoreService datastore, String deliveryId, String email) {
+    return claimAll(datastore, deliveryId, Collections.singletonList(email)).get(email);
+  }
+
+  /**
+    * Record that emails are about to be sent to a batch of receivers, skipping the
+    * receivers that already got this delivery. Uses one batch get and one batch put.
+    *
+    * @param datastore datastore holding the outbox
+    * @param deliveryId digest, post or window delivery id
+    * @param emails email addresses of the receivers
+    * @return pending deliveries by email address, in the order of the given emails
+    */
+  public static Map<String, Entity> claimAll(DatastoreService datastore, String deliveryId, 
+      List<String> emails) {
+    List<Key> keys = new ArrayList<Key>();
+    for (String email : emails) {
+      keys.add(getKey(deliveryId, email));
+    }
+    Map<Key, Entity> existing = datastore.get(keys);
+
+    Map<String, Entity> pending = new LinkedHashMap<String, Entity>();
+    for (int i = 0; i < emails.size(); i++) {
+      String email = emails.get(i);
+      Entity delivery = existing.get(keys.get(i));
+      long attempts = 0;
+      if (delivery == null) {
+        delivery = new Entity(keys.get(i));
+        delivery.setProperty("email", email);
+        delivery.setProperty("deliveryId", deliveryId);
+        delivery.setProperty("createdAt", new Date());
+      } else if (SENT.equals(delivery.getProperty("status"))) {
+        continue;
+      } else {
+        attempts = (Long) delivery.getProperty("attempts");
+      }
+      delivery.setProperty("status", PENDING);
+      delivery.setProperty("attempts", attempts + 1);
+      pending.put(email, delivery);
+    }
+
+    if (!pending.isEmpty()) {
+      datastore.put(pending.values());
+    }
+    return pending;
+  }
+
+  /**
+    * Record that a pending email was sent successfully.
+    *
+    * @param datastore datastore holding the outbox
+    * @param delivery pending delivery returned by claim
+    */
+  public static void markSent(DatastoreService datastore, Entity delivery) {
+    delivery.setProperty("status", SENT);
+    delivery.setProperty("sentAt", new Date());
+    datastore.put(delivery);
+  }
+
+  /**
+    * Check if an email was already delivered.
+    *
+    * @param datastore datastore holding the outbox
+    * @param deliveryId digest, post or window delivery id
+    * @param email email address of the receiver
+    * @return true if the email was sent successfully before
+    */
+  public static boolean isSent(DatastoreService datastore, String deliveryId, String email) {
+    try {
+      Entity delivery = datastore.get(getKey(deliveryId, email));
+      return SENT.equals(delivery.getProperty("status"));
+    } catch (EntityNotFoundException e) {
+      return false;
+    }
+  }
+}
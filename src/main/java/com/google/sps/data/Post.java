@@ -35,6 +35,7 @@ import com.google.appengine.api.blobstore.BlobstoreService;
 import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
@@ -43,18 +44,28 @@ import java.lang.Math;
 import java.time.LocalTime;
 import java.time.temporal.ChronoUnit;  
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;   
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.logging.Logger;
 import java.util.Map;
 import java.util.regex.Matcher;
+import java.util.Set;
 import java.util.TimeZone;
 import javax.servlet.http.HttpServletRequest;
 
 public class Post implements Comparable<Post> {
 
   private static final Logger log = Logger.getLogger(Post.class.getName());
+
+  // The only properties posts are filtered or sorted on: the feed filters on collegeId and
+  // sorts on timeSort, rank or endTimeSort, and the daily digest filters on collegeId, month
+  // and day. Every other property is stored unindexed, so writes don't pay for its index rows.
+  public static final Set<String> INDEXED_PROPERTIES = Collections.unmodifiableSet(new HashSet<String>(
+    Arrays.asList("collegeId", "month", "day", "timeSort", "rank", "endTimeSort")));
   private String postId = "";
   private String organizationName = "";
   private int month = 0;
@@ -72,65 +83,38 @@ public class Post implements Comparable<Post> {
   private String description = "";
   private String collegeId = "";
   private int timeSort = 0;
+  private int endTimeSort = 0;
   private double rank = 0;
   private String blobKey;
 
   public boolean valid = true; // If false, the post shouldn't be saved - it might have malicious data.
+  private transient String invalidField = null; // The first field that made the post invalid.
 
   /* Fill in the important Post details from the POST request. */
   public void requestToPost(HttpServletRequest request) {
-    String orgNameUnparsed = request.getParameter("organizationName");
-    String monthUnparsed = request.getParameter("month");
-    String dayUnparsed = request.getParameter("day");
-    String startHourUnparsed = request.getParameter("startHour");
-    String startMinuteUnparsed = request.getParameter("startMinute");
-    String endHourUnparsed = request.getParameter("endHour");
-    String endMinuteUnparsed = request.getParameter("endMinute");
-    String locationUnparsed = request.getParameter("location");
-    String latUnparsed = request.getParameter("lat");
-    String lngUnparsed = request.getParameter("lng");
-    String numberOfPeopleItFeedsUnparsed = request.getParameter("numberOfPeopleItFeeds");
-    String typeOfFoodUnparsed = request.getParameter("typeOfFood");
-    String descriptionUnparsed = request.getParameter("description");
-    String collegeIdUnparsed = request.getParameter("collegeId");
-
-    // Perform input validation before we attempt to parse the inputs, as things like integers
-    // might be invalid and would cause parseInt() to throw an exception.
-    if (!InputPattern.TEXT.matcher(orgNameUnparsed).matches() || orgNameUnparsed.length() > 75 ||
-        !InputPattern.POSITIVE_INTEGER.matcher(monthUnparsed).matches() ||
-        !InputPattern.POSITIVE_INTEGER.matcher(dayUnparsed).matches() ||
-        !InputPattern.POSITIVE_INTEGER.matcher(startHourUnparsed).matches() ||
-        !InputPattern.POSITIVE_INTEGER.matcher(startMinuteUnparsed).matches() ||
-        !InputPattern.POSITIVE_INTEGER.matcher(endHourUnparsed).matches() ||
-        !InputPattern.POSITIVE_INTEGER.matcher(endMinuteUnparsed).matches() ||
-        !InputPattern.TEXT.matcher(locationUnparsed).matches() || locationUnparsed.length() > 100 ||
-        !InputPattern.DOUBLE.matcher(latUnparsed).matches() ||
-        !InputPattern.DOUBLE.matcher(lngUnparsed).matches() ||
-        !InputPattern.POSITIVE_INTEGER.matcher(numberOfPeopleItFeedsUnparsed).matches() ||
-        !InputPattern.TEXT.matcher(typeOfFoodUnparsed).matches() || typeOfFoodUnparsed.length() > 25 ||
-        !InputPattern.TEXT.matcher(descriptionUnparsed).matches() || descriptionUnparsed.length() > 500 ||
-        descriptionUnparsed.length() < 15 ||
-        !InputPattern.TEXT.matcher(collegeIdUnparsed).matches() || collegeIdUnparsed.length() > 6) {
-      valid = false;
+    // Validate each input while parsing it, so that things like integers are only
+    // parsed once they are known to be numbers that fit.
+    FormValidator form = new FormValidator(request);
+    organizationName = form.text("organizationName", 1, 75);
+    month = form.positiveInteger("month") - 1; // Months are indexed at 0.
+    day = form.positiveInteger("day");
+    startHour = form.positiveInteger("startHour");
+    startMinute = form.positiveInteger("startMinute");
+    endHour = form.positiveInteger("endHour");
+    endMinute = form.positiveInteger("endMinute");
+    location = form.text("location", 1, 100);
+    lat = form.decimal("lat");
+    lng = form.decimal("lng");
+    numberOfPeopleItFeeds = form.positiveInteger("numberOfPeopleItFeeds");
+    typeOfFood = form.text("typeOfFood", 1, 25);
+    description = form.text("description", 15, 500);
+    collegeId = form.text("collegeId", 1, 6);
+
+    if (!form.isValid()) {
+      reject(form.getInvalidField());
       return;
     }
 
-    // After validating that what we have are indeed numbers/valid strings, parse and assign.
-    organizationName = orgNameUnparsed;
-    month = Integer.parseInt(monthUnparsed) - 1; // Months are indexed at 0.
-    day = Integer.parseInt(dayUnparsed);
-    startHour = Integer.parseInt(startHourUnparsed);
-    startMinute = Integer.parseInt(startMinuteUnparsed);
-    endHour = Integer.parseInt(endHourUnparsed);
-    endMinute = Integer.parseInt(endMinuteUnparsed);
-    location = locationUnparsed;
-    lat = Double.parseDouble(latUnparsed);
-    lng = Double.parseDouble(lngUnparsed);
-    numberOfPeopleItFeeds = Integer.parseInt(numberOfPeopleItFeedsUnparsed);
-    typeOfFood = typeOfFoodUnparsed;
-    description = descriptionUnparsed;
-    collegeId = collegeIdUnparsed;
-
     // Adjust the start and end hour based on whether the hour is AM or PM.
     startHour = startHour % 12;
     String startAMorPM = request.getParameter("startAMorPM");
@@ -146,22 +130,23 @@ public class Post implements Comparable<Post> {
     rank = calculateRank();
 
     // Check that values are within expected ranges.
-    if (month < 0 || month > 11 ||
-      day < 0 || day > 31 ||
-      startHour < 0 || startHour > 23 ||
-      startMinute < 0 || startMinute > 59 ||
-      endHour < 0 || endHour > 23 ||
-      endMinute < 0 || endMinute > 59 ||
-      numberOfPeopleItFeeds <= 0 ||
-      numberOfPeopleItFeeds > 10000 ||
-      startHour > endHour ||
-      (startHour == endHour && startMinute > endMinute)) {
-      valid = false;
+    form.require(month >= 0 && month <= 11, "month");
+    form.require(day >= 0 && day <= 31, "day");
+    form.require(startHour >= 0 && startHour <= 23, "startHour");
+    form.require(startMinute >= 0 && startMinute <= 59, "startMinute");
+    form.require(endHour >= 0 && endHour <= 23, "endHour");
+    form.require(endMinute >= 0 && endMinute <= 59, "endMinute");
+    form.require(numberOfPeopleItFeeds > 0 && numberOfPeopleItFeeds <= 10000, "numberOfPeopleItFeeds");
+    form.require(startHour < endHour || (startHour == endHour && startMinute <= endMinute), "endHour");
+
+    if (!form.isValid()) {
+      reject(form.getInvalidField());
       return;
     }
 
-    // Translate the start time into minutes to allow for sorting.
+    // Translate the start and end times into minutes to allow for sorting.
     timeSort = startHour * 60 + startMinute;
+    endTimeSort = endHour * 60 + endMinute;
 
     // Set the year. Right now time zone is set to "America/Los_Angeles".
     Calendar nowTime = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
@@ -174,6 +159,19 @@ public class Post implements Comparable<Post> {
     }
   }
 
+  /* Mark the post as invalid because its uploaded file isn't an image. */
+  public void rejectImage() {
+    blobKey = null;
+    reject("foodImage");
+  }
+
+  /* Mark the post as invalid because of the given field. */
+  private void reject(String field) {
+    valid = false;
+    invalidField = field;
+    log.info("Rejected post with invalid field: " + field);
+  }
+
   /* Create a new entity with the college ID and the Post information. Sets all the properties. */
   public Entity postToEntity(String entityKind) {
     Entity newPost = new Entity(entityKind);
@@ -198,44 +196,85 @@ public class Post implements Comparable<Post> {
     newPost.setProperty("description", description);
 
     newPost.setProperty("timeSort", timeSort);
+    newPost.setProperty("endTimeSort", endTimeSort);
     newPost.setProperty("collegeId", collegeId);
     newPost.setProperty("blobKey", blobKey);
 
     newPost.setProperty("rank", rank);
 
+    applyIndexingPolicy(newPost);
     return newPost;
   }
 
+  /**
+    * Index only the properties in INDEXED_PROPERTIES.
+    *
+    * @return whether any property changed between indexed and unindexed
+    */
+  public static boolean applyIndexingPolicy(Entity entity) {
+    boolean changed = false;
+    for (Map.Entry<String, Object> property : entity.getProperties().entrySet()) {
+      String name = property.getKey();
+      boolean indexed = INDEXED_PROPERTIES.contains(name);
+      if (indexed == entity.isUnindexedProperty(name)) {
+        changed = true;
+        if (indexed) {
+          entity.setIndexedProperty(name, property.getValue());
+        } else {
+          entity.setUnindexedProperty(name, property.getValue());
+        }
+      }
+    }
+    return changed;
+  }
+
   /* Translate the entities from the Datastore query to Post objects and return in an array. */
   public static ArrayList<Post> queryToPosts(PreparedQuery queryResult, DatastoreService datastore) {
+    return queryToPosts(queryResult, datastore, Integer.MAX_VALUE);
+  }
+
+  /*
+   * Translate the entities from the Datastore query to at most limit Post objects, in the order
+   * of the query, and return them in an array. Entities are only read until the limit is reached.
+   */
+  public static ArrayList<Post> queryToPosts(PreparedQuery queryResult, DatastoreService datastore,
+      int limit) {
     ArrayList<Post> currentPosts = new ArrayList<Post>();
+    if (limit <= 0) {
+      return currentPosts;
+    }
+    // Read the entities in batches of about the limit, since the posts of other days and the
+    // expired posts being deleted are usually few.
+    Iterable<Entity> entities = limit == Integer.MAX_VALUE
+      ? queryResult.asIterable()
+      : queryResult.asIterable(FetchOptions.Builder.withChunkSize(Math.min(limit, 100)));
 
     // Create a calendar based off the current time zone.
     // TODO: Update Time Zone based off student and university location, instead of "America/Los_Angeles".
 
     Calendar nowTime = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+    Map<Key, String> expiredBlobs = new HashMap<Key, String>();
+    Map<String, List<Key>> expiredKeys = new HashMap<String, List<Key>>();
 
-    for (Entity entity: queryResult.asIterable()) {
+    for (Entity entity: entities) {
+      if (currentPosts.size() >= limit) {
+        break;
+      }
 
-      // Create a calendar based off the post timing.
-      Calendar postTime = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
       int postMonth = Integer.parseInt(entity.getProperty("month").toString());
       int postDay = Integer.parseInt(entity.getProperty("day").toString());
       int postYear = Integer.parseInt(entity.getProperty("year").toString());
       int postHour = Integer.parseInt(entity.getProperty("endHour").toString());
       int postMinute = Integer.parseInt(entity.getProperty("endMinute").toString());
-      postTime.set(postYear, postMonth, postDay, postHour, postMinute);
  
       // If the post time is before the current time, delete the post from storage.
-      if (postTime.before(nowTime)) {
-        // Delete the blob and entity from Blobstore.
-        BlobstoreService blobstoreService = BlobstoreServiceFactory.getBlobstoreService();
+      if (endsBefore(nowTime, postYear, postMonth, postDay, postHour, postMinute)) {
+        expiredKeys.computeIfAbsent((String) entity.getProperty("collegeId"),
+          college -> new ArrayList<Key>()).add(entity.getKey());
         String blobKey = (String) (entity.getProperty("blobKey"));
         if (blobKey != null) {
-          BlobKey blobKeyToDelete = new BlobKey(blobKey);
-          blobstoreService.delete(blobKeyToDelete);
+          expiredBlobs.put(entity.getKey(), blobKey);
         }
-        datastore.delete(entity.getKey());
       } else if (postYear == nowTime.get(Calendar.YEAR) && postMonth == nowTime.get(Calendar.MONTH) && postDay == nowTime.get(Calendar.DATE)) {
         // Only add the post to result if it is on the same day.
         Post newPost = new Post();
@@ -243,9 +282,43 @@ public class Post implements Comparable<Post> {
         currentPosts.add(newPost);
       } 
     }
+
+    // Delete the expired posts and log their expiry, then release the images of the posts this
+    // reader deleted. Posts another reader deleted first have their images released by it.
+    if (!expiredKeys.isEmpty()) {
+      BlobstoreService blobstoreService = BlobstoreServiceFactory.getBlobstoreService();
+      for (Map.Entry<String, List<Key>> college : expiredKeys.entrySet()) {
+        List<Key> deletedPosts =
+          PostChanges.deleteExpired(datastore, college.getKey(), college.getValue());
+        for (Key deleted : deletedPosts) {
+          if (expiredBlobs.containsKey(deleted)) {
+            BlobLifecycle.release(datastore, blobstoreService, expiredBlobs.get(deleted));
+          }
+        }
+      }
+    }
     return currentPosts;
   }
 
+  /* Check whether the post's event has ended by the given time. */
+  public boolean hasEnded(Calendar nowTime) {
+    return endsBefore(nowTime, year, month, day, endHour, endMinute);
+  }
+
+  /* Check whether the post's event happens on the same day as the given time. */
+  public boolean isOnDayOf(Calendar nowTime) {
+    return year == nowTime.get(Calendar.YEAR) && month == nowTime.get(Calendar.MONTH)
+      && day == nowTime.get(Calendar.DATE);
+  }
+
+  private static boolean endsBefore(Calendar nowTime, int year, int month, int day, int endHour,
+      int endMinute) {
+    // Create a calendar based off the post timing.
+    Calendar postTime = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+    postTime.set(year, month, day, endHour, endMinute);
+    return postTime.before(nowTime);
+  }
+
   /* Translate the fields of an entity from Datastore to a Post object. */
   public void entityToPost(Entity entity) {
     organizationName = (String) entity.getProperty("organizationName");
@@ -263,6 +336,10 @@ public class Post implements Comparable<Post> {
     typeOfFood = (String) entity.getProperty("typeOfFood");
     description = (String) entity.getProperty("description");
     timeSort = Integer.parseInt(entity.getProperty("timeSort").toString());
+    // Posts stored before the end time was sorted on don't have it.
+    endTimeSort = entity.hasProperty("endTimeSort")
+      ? Integer.parseInt(entity.getProperty("endTimeSort").toString())
+      : endHour * 60 + endMinute;
     collegeId = (String) entity.getProperty("collegeId");
     postId = entity.getKey().toString();
     rank = Double.parseDouble(entity.getProperty("rank").toString());
@@ -325,7 +402,24 @@ public class Post implements Comparable<Post> {
     return duration;
   }
 
+  /* Set the id once the post has been stored. */
+  public void setPostId(String postId) {
+    this.postId = postId;
+  }
+
   /* Class Getters. */
+  public String getPostId() {
+    return postId;
+  }
+
+  public String getInvalidField() {
+    return invalidField;
+  }
+
+  public String getBlobKey() {
+    return blobKey;
+  }
+
   public String getOrganizationName() {
     return organizationName;
   }
@@ -338,6 +432,10 @@ public class Post implements Comparable<Post> {
     return day;
   }
 
+  public int getYear() {
+    return year;
+  }
+
   public int getStartHour() {
     return startHour;
   }
@@ -385,4 +483,12 @@ public class Post implements Comparable<Post> {
   public double getRank() {
     return rank;
   }
+
+  public int getTimeSort() {
+    return timeSort;
+  }
+
+  public int getEndTimeSort() {
+    return endTimeSort;
+  }
 }
@@ -0,0 +1,242 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+  * Log of the posts created and expired at each college, which lets feeds fetch only what
+  * changed since they were last read.
+  *
+  * A college counts its changes in the changeSeq property of its College entity. Each change
+  * is a "PostChange" entity in the college's entity group, whose id is its number in the
+  * sequence, and is written in the same transaction that advances the count. Changes therefore
+  * become visible in order, and the ancestor query reading them is strongly consistent. Only
+  * the last PostRepository.MAX_CHANGES changes are kept.
+  *
+  * Every post created or expired at a college writes its College entity, and an entity group
+  * sustains about one write per second, so that is roughly the most posts a single college can
+  * take before writers start retrying and, past the retries, failing.
+  */
+public final class PostChanges {
+
+  public static final String ENTITY_KIND = "PostChange";
+  public static final String CHANGE_SEQ = "changeSeq";
+
+  // Posts to a college are serialized on its entity group, so a busy college retries more
+  // often than the other College transactions do, backing off for a random time that doubles
+  // with each attempt so the writers spread out.
+  private static final int TRANSACTION_ATTEMPTS = 10;
+  private static final long BACKOFF_MILLIS = 5;
+
+  // A cross-group transaction spans at most 25 entity groups: the college's and one per post.
+  private static final int EXPIRED_POSTS_PER_TRANSACTION = 24;
+
+  // Changes to a college made on this instance wait for each other here rather than failing
+  // each other's transactions, so retries are only needed against other instances.
+  private static final Map<String, Object> collegeLocks = new ConcurrentHashMap<String, Object>();
+
+  // Make the constructor private to emulate a static class.
+  private PostChanges() {}
+
+  /**
+    * Store a new post and log its creation, registering its college if needed. The post's key
+    * is allocated before the transaction, so the post is stored in the same put as its change
+    * and a retry overwrites it instead of storing a second copy.
+    *
+    * @param datastore datastore holding the colleges and posts
+    * @param collegeId unique id of the post's college
+    * @param post entity of the post
+    * @return key of the stored post
+    */
+  public static Key putCreated(DatastoreService datastore, String collegeId, Entity post) {
+    Entity keyedPost = post;
+    if (!post.getKey().isComplete()) {
+      keyedPost = new Entity(datastore.allocateIds(post.getKind(), 1).getStart());
+      keyedPost.setPropertiesFrom(post);
+    }
+    record(datastore, collegeId, keyedPost, new ArrayList<Key>());
+    return keyedPost.getKey();
+  }
+
+  /**
+    * Delete a college's expired posts and log their expiry, in the same transactions. Posts
+    * another reader already deleted are skipped, so each expiry is logged once.
+    *
+    * @param datastore datastore holding the colleges and posts
+    * @param collegeId unique id of the posts' college
+    * @param posts keys of the expired posts
+    * @return keys of the posts this call deleted
+    */
+  public static List<Key> deleteExpired(DatastoreService datastore, String collegeId,
+      List<Key> posts) {
+    List<Key> deleted = new ArrayList<Key>();
+    for (int i = 0; i < posts.size(); i += EXPIRED_POSTS_PER_TRANSACTION) {
+      List<Key> batch = posts.subList(i, Math.min(i + EXPIRED_POSTS_PER_TRANSACTION, posts.size()));
+      deleted.addAll(record(datastore, collegeId, null, batch));
+    }
+    return deleted;
+  }
+
+  /** Get the number of the last change logged for a college, or 0 if there is none. */
+  public static long getVersion(DatastoreService datastore, String collegeId) {
+    try {
+      return getChangeSeq(datastore.get(College.getKey(collegeId)));
+    } catch (EntityNotFoundException e) {
+      return 0;
+    }
+  }
+
+  /**
+    * Get the changes logged for a college after the given one, in order. Each change holds the
+    * key of its post in "postKey", and whether the post expired in "expired".
+    *
+    * @param datastore datastore holding the changes
+    * @param collegeId unique id of a college
+    * @param since number of a change, or 0 for every change kept
+    * @return the later changes, whose key ids are their numbers
+    */
+  public static List<Entity> getChangesSince(DatastoreService datastore, String collegeId,
+      long since) {
+    Key collegeKey = College.getKey(collegeId);
+    Query query = new Query(ENTITY_KIND, collegeKey).addSort(Entity.KEY_RESERVED_PROPERTY);
+    if (since > 0) {
+      query.setFilter(new FilterPredicate(Entity.KEY_RESERVED_PROPERTY,
+        FilterOperator.GREATER_THAN, KeyFactory.createKey(collegeKey, ENTITY_KIND, since)));
+    }
+    List<Entity> changes = new ArrayList<Entity>();
+    for (Entity change : datastore.prepare(query).asIterable()) {
+      changes.add(change);
+    }
+    return changes;
+  }
+
+  private static long getChangeSeq(Entity college) {
+    Long changeSeq = (Long) college.getProperty(CHANGE_SEQ);
+    return changeSeq == null ? 0 : changeSeq;
+  }
+
+  /*
+   * Advance a college's count and log a created post or expired posts in one transaction,
+   * dropping the changes that fall out of the log. The new post is stored, or the expired
+   * posts that are still stored are deleted, in the same transaction, across entity groups.
+   * Returns the keys of the expired posts deleted.
+   */
+  private static List<Key> record(DatastoreService datastore, String collegeId,
+      Entity createdPost, List<Key> expiredPosts) {
+    synchronized (collegeLocks.computeIfAbsent(collegeId, college -> new Object())) {
+      return recordInTransaction(datastore, collegeId, createdPost, expiredPosts);
+    }
+  }
+
+  private static List<Key> recordInTransaction(DatastoreService datastore, String collegeId,
+      Entity createdPost, List<Key> expiredPosts) {
+    TransactionOptions options = TransactionOptions.Builder.withXG(true);
+    for (int attempt = 1; ; attempt++) {
+      Transaction txn = datastore.beginTransaction(options);
+      try {
+        Entity college;
+        try {
+          college = datastore.get(txn, College.getKey(collegeId));
+        } catch (EntityNotFoundException e) {
+          college = new Entity(College.getKey(collegeId));
+        }
+        long changeSeq = getChangeSeq(college);
+
+        // Only the posts no other reader deleted first are logged.
+        List<Key> deletedPosts = new ArrayList<Key>();
+        if (!expiredPosts.isEmpty()) {
+          Map<Key, Entity> stored = datastore.get(txn, expiredPosts);
+          for (Key expiredPost : expiredPosts) {
+            if (stored.containsKey(expiredPost)) {
+              deletedPosts.add(expiredPost);
+            }
+          }
+        }
+        if (createdPost == null && deletedPosts.isEmpty()) {
+          return deletedPosts;
+        }
+
+        List<Entity> entities = new ArrayList<Entity>();
+        List<Key> dropped = new ArrayList<Key>();
+        if (createdPost != null) {
+          entities.add(createdPost);
+          changeSeq++;
+          entities.add(newChange(collegeId, changeSeq, createdPost.getKey(), false));
+        }
+        for (Key expiredPost : deletedPosts) {
+          changeSeq++;
+          entities.add(newChange(collegeId, changeSeq, expiredPost, true));
+        }
+        // Drop the changes pushed out of the log by the new ones.
+        long firstKept = Math.max(1, changeSeq - PostRepository.MAX_CHANGES + 1);
+        int newChanges = deletedPosts.size() + (createdPost == null ? 0 : 1);
+        for (long seq = Math.max(1, firstKept - newChanges); seq < firstKept; seq++) {
+          dropped.add(KeyFactory.createKey(College.getKey(collegeId), ENTITY_KIND, seq));
+        }
+        college.setUnindexedProperty(CHANGE_SEQ, changeSeq);
+        entities.add(college);
+
+        datastore.put(txn, entities);
+        dropped.addAll(deletedPosts);
+        if (!dropped.isEmpty()) {
+          datastore.delete(txn, dropped);
+        }
+        txn.commit();
+        return deletedPosts;
+      } catch (ConcurrentModificationException e) {
+        // Another change to the college won the race.
+        if (attempt == TRANSACTION_ATTEMPTS) {
+          throw e;
+        }
+        backOff(attempt);
+      } finally {
+        if (txn.isActive()) {
+          txn.rollback();
+        }
+      }
+    }
+  }
+
+  private static void backOff(int attempt) {
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextLong(BACKOFF_MILLIS << attempt));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static Entity newChange(String collegeId, long changeSeq, Key post, boolean expired) {
+    Entity change = new Entity(ENTITY_KIND, changeSeq, College.getKey(collegeId));
+    change.setUnindexedProperty("postKey", post);
+    change.setUnindexedProperty("expired", expired);
+    return change;
+  }
+}
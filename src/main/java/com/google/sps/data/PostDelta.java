@@ -0,0 +1,119 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+  * The changes to a college's feed since a version the client already has: the posts created
+  * since then and the ids of the posts that expired. A reset delta instead holds the whole
+  * feed, for clients too far behind to catch up from the log of changes.
+  */
+public final class PostDelta {
+
+  private final long version;
+  private final boolean reset;
+  private final ArrayList<Post> posts;
+  private final List<String> deleted;
+
+  private PostDelta(long version, boolean reset, ArrayList<Post> posts, List<String> deleted) {
+    this.version = version;
+    this.reset = reset;
+    this.posts = posts;
+    this.deleted = deleted;
+  }
+
+  /**
+    * Create a delta holding a whole feed.
+    *
+    * @param version number of the last change the feed includes
+    * @param posts every post of the feed
+    */
+  public static PostDelta reset(long version, ArrayList<Post> posts) {
+    return new PostDelta(version, true, posts, new ArrayList<String>());
+  }
+
+  /**
+    * Create a delta holding a whole feed read from a query that can lag behind the log of
+    * changes, brought up to date with the changes the log kept.
+    *
+    * @param version number of the last change
+    * @param feed every post the query returned
+    * @param created posts created by the changes kept, in order
+    * @param expiredIds ids of the posts that expired in the changes kept
+    */
+  public static PostDelta reset(long version, List<Post> feed, List<Post> created,
+      Collection<String> expiredIds) {
+    Set<String> deleted = new HashSet<String>(expiredIds);
+    Map<String, Post> posts = new LinkedHashMap<String, Post>();
+    for (Post post : feed) {
+      if (!deleted.contains(post.getPostId())) {
+        posts.put(post.getPostId(), post);
+      }
+    }
+    for (Post post : of(version, created, expiredIds).getPosts()) {
+      posts.putIfAbsent(post.getPostId(), post);
+    }
+    ArrayList<Post> sorted = new ArrayList<Post>(posts.values());
+    sorted.sort(Comparator.comparingInt(Post::getTimeSort));
+    return reset(version, sorted);
+  }
+
+  /**
+    * Create a delta from the changes logged after a version. Like the feed, it only holds
+    * posts of today that haven't ended, and no post that expired after it was created.
+    *
+    * @param version number of the last change
+    * @param created posts created by the changes, in order
+    * @param expiredIds ids of the posts that expired in the changes
+    */
+  public static PostDelta of(long version, List<Post> created, Collection<String> expiredIds) {
+    Set<String> deleted = new LinkedHashSet<String>(expiredIds);
+    Calendar nowTime = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+    ArrayList<Post> posts = new ArrayList<Post>();
+    for (Post post : created) {
+      if (!deleted.contains(post.getPostId()) && !post.hasEnded(nowTime) && post.isOnDayOf(nowTime)) {
+        posts.add(post);
+      }
+    }
+    return new PostDelta(version, false, posts, new ArrayList<String>(deleted));
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public boolean isReset() {
+    return reset;
+  }
+
+  public ArrayList<Post> getPosts() {
+    return posts;
+  }
+
+  public List<String> getDeleted() {
+    return deleted;
+  }
+}
@@ -0,0 +1,224 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+  * Facets of the posts of one college: their food type, how many people they feed and the
+  * time of day they start. Each value of a facet keeps its posts in time order and their
+  * count, both updated as posts are added and removed, so counts are read without a scan and
+  * a filtered feed walks only the posts of its rarest selected value. Posts that have ended are
+  * removed when counts are read, soonest ending first, before their expiry is logged.
+  */
+public final class PostFacets {
+
+  public static final String FOOD = "food";
+  public static final String FEEDS = "feeds";
+  public static final String TIME = "time";
+  public static final List<String> FACETS =
+    Collections.unmodifiableList(Arrays.asList(FOOD, FEEDS, TIME));
+
+  // Where each bucket of numberOfPeopleItFeeds after the first starts, and their names.
+  private static final int[] FEEDS_STARTS = {11, 26, 51, 101};
+  private static final String[] FEEDS_BUCKETS = {"1-10", "11-25", "26-50", "51-100", "101+"};
+  // Where each time of day after the first starts, in minutes since midnight like timeSort.
+  private static final int[] TIME_STARTS = {5 * 60, 12 * 60, 17 * 60, 21 * 60};
+  private static final String[] TIME_BUCKETS = {"night", "morning", "afternoon", "evening", "night"};
+
+  /** A post with the facet values it is filed under. */
+  private static final class FacetedPost {
+    private final String id;
+    private final int timeSort;
+    private final long endMillis;
+    private final Map<String, String> values;
+    private final Post post;
+
+    FacetedPost(Post post) {
+      this.id = post.getPostId();
+      this.timeSort = post.getTimeSort();
+      this.endMillis = getEndMillis(post);
+      this.values = getValues(post);
+      this.post = post;
+    }
+  }
+
+  private static final Comparator<FacetedPost> BY_TIME =
+    Comparator.<FacetedPost>comparingInt(faceted -> faceted.timeSort).thenComparing(faceted -> faceted.id);
+  private static final Comparator<FacetedPost> BY_END =
+    Comparator.<FacetedPost>comparingLong(faceted -> faceted.endMillis).thenComparing(faceted -> faceted.id);
+
+  /** The posts filed under one value of a facet, soonest first. */
+  private static final class FacetValue {
+    private final NavigableSet<FacetedPost> posts = new ConcurrentSkipListSet<FacetedPost>(BY_TIME);
+    // Kept apart since counting a concurrent set walks all of it.
+    private volatile int count = 0;
+  }
+
+  private final Map<String, Map<String, FacetValue>> facets = new ConcurrentHashMap<String, Map<String, FacetValue>>();
+  private final Map<String, FacetedPost> posts = new ConcurrentHashMap<String, FacetedPost>();
+  private final NavigableSet<FacetedPost> byEnd = new ConcurrentSkipListSet<FacetedPost>(BY_END);
+
+  public PostFacets() {
+    for (String facet : FACETS) {
+      facets.put(facet, new ConcurrentHashMap<String, FacetValue>());
+    }
+  }
+
+  /**
+    * Get the value of each facet for a post. Food types are compared without case or
+    * surrounding spaces.
+    */
+  public static Map<String, String> getValues(Post post) {
+    Map<String, String> values = new LinkedHashMap<String, String>();
+    values.put(FOOD, post.getTypeOfFood().trim().toLowerCase(Locale.ROOT));
+    values.put(FEEDS, getBucket(post.getNumberOfPeopleItFeeds(), FEEDS_STARTS, FEEDS_BUCKETS));
+    values.put(TIME, getBucket(post.getTimeSort(), TIME_STARTS, TIME_BUCKETS));
+    return values;
+  }
+
+  private static long getEndMillis(Post post) {
+    Calendar end = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+    end.clear();
+    end.set(post.getYear(), post.getMonth(), post.getDay(), post.getEndHour(), post.getEndMinute());
+    return end.getTimeInMillis();
+  }
+
+  private static String getBucket(int value, int[] starts, String[] buckets) {
+    int bucket = 0;
+    while (bucket < starts.length && value >= starts[bucket]) {
+      bucket++;
+    }
+    return buckets[bucket];
+  }
+
+  /** File a post under its facet values, replacing any post filed under the same id. */
+  public synchronized void add(Post post) {
+    remove(post.getPostId());
+    FacetedPost faceted = new FacetedPost(post);
+    posts.put(faceted.id, faceted);
+    byEnd.add(faceted);
+    for (Map.Entry<String, String> value : faceted.values.entrySet()) {
+      FacetValue facetValue =
+        facets.get(value.getKey()).computeIfAbsent(value.getValue(), v -> new FacetValue());
+      facetValue.posts.add(faceted);
+      facetValue.count++;
+    }
+  }
+
+  /** Stop counting a post, if it is filed. */
+  public synchronized void remove(String postId) {
+    FacetedPost faceted = posts.remove(postId);
+    if (faceted == null) {
+      return;
+    }
+    byEnd.remove(faceted);
+    for (Map.Entry<String, String> value : faceted.values.entrySet()) {
+      Map<String, FacetValue> facetValues = facets.get(value.getKey());
+      FacetValue facetValue = facetValues.get(value.getValue());
+      facetValue.posts.remove(faceted);
+      if (--facetValue.count == 0) {
+        facetValues.remove(value.getValue());
+      }
+    }
+  }
+
+  /**
+    * Get the number of posts under each value of each facet, leaving out the posts that have
+    * ended.
+    *
+    * @param nowTime current time in the time zone of the posts
+    * @return counts by value for every facet, the largest count first
+    */
+  public Map<String, Map<String, Integer>> getCounts(Calendar nowTime) {
+    for (FacetedPost faceted : byEnd) {
+      if (!faceted.post.hasEnded(nowTime)) {
+        break;
+      }
+      remove(faceted.id);
+    }
+
+    Map<String, Map<String, Integer>> counts = new LinkedHashMap<String, Map<String, Integer>>();
+    for (String facet : FACETS) {
+      List<Map.Entry<String, FacetValue>> values =
+        new ArrayList<Map.Entry<String, FacetValue>>(facets.get(facet).entrySet());
+      values.sort((a, b) -> Integer.compare(b.getValue().count, a.getValue().count));
+      Map<String, Integer> facetCounts = new LinkedHashMap<String, Integer>();
+      for (Map.Entry<String, FacetValue> value : values) {
+        facetCounts.put(value.getKey(), value.getValue().count);
+      }
+      counts.put(facet, facetCounts);
+    }
+    return counts;
+  }
+
+  /**
+    * Get the posts filed under every selected value, soonest first. Only posts of the given
+    * day that haven't ended are returned.
+    *
+    * @param selected value of each facet to filter on; facets left out aren't filtered
+    * @param nowTime current time in the time zone of the posts
+    * @param limit maximum number of posts
+    * @return posts in time order
+    * @throws IllegalArgumentException if a facet is unknown
+    */
+  public ArrayList<Post> filter(Map<String, String> selected, Calendar nowTime, int limit) {
+    ArrayList<Post> results = new ArrayList<Post>();
+    FacetValue rarest = null;
+    for (Map.Entry<String, String> value : selected.entrySet()) {
+      Map<String, FacetValue> facetValues = facets.get(value.getKey());
+      if (facetValues == null) {
+        throw new IllegalArgumentException("Unknown facet: " + value.getKey());
+      }
+      FacetValue facetValue = facetValues.get(value.getValue());
+      if (facetValue == null) {
+        return results;
+      }
+      if (rarest == null || facetValue.count < rarest.count) {
+        rarest = facetValue;
+      }
+    }
+
+    Iterable<FacetedPost> candidates = rarest != null ? rarest.posts : sortedPosts();
+    for (FacetedPost candidate : candidates) {
+      if (results.size() >= limit) {
+        break;
+      }
+      if (candidate.values.entrySet().containsAll(selected.entrySet())
+          && !candidate.post.hasEnded(nowTime) && candidate.post.isOnDayOf(nowTime)) {
+        results.add(candidate.post);
+      }
+    }
+    return results;
+  }
+
+  private List<FacetedPost> sortedPosts() {
+    List<FacetedPost> sorted = new ArrayList<FacetedPost>(posts.values());
+    sorted.sort(BY_TIME);
+    return sorted;
+  }
+}
@@ -0,0 +1,115 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+  * Stores the posts of every college. Posts whose event has ended are deleted by the
+  * repository the next time they are read. Every post created or deleted is logged as a
+  * change to its college's feed.
+  */
+public interface PostRepository {
+
+  // Orders of the feed:
+  //   time - the soonest events first
+  //   rank - the events feeding the most people for the longest first
+  //   endingSoon - the events closest to ending first, skipping the ones that already ended
+  String SORT_TIME = "time";
+  String SORT_RANK = "rank";
+  String SORT_ENDING_SOON = "endingSoon";
+  Set<String> SORTS = Collections.unmodifiableSet(
+    new HashSet<String>(Arrays.asList(SORT_TIME, SORT_RANK, SORT_ENDING_SOON)));
+
+  // How many of a college's latest changes are kept for getChangesSince.
+  int MAX_CHANGES = 500;
+
+  /**
+    * Store a new post and register its college.
+    *
+    * @param collegeId unique id of the post's college
+    * @param post a valid post, whose id is set once it is stored
+    * @return id of the stored post
+    */
+  String save(String collegeId, Post post);
+
+  /**
+    * Get the posts of today in a college's feed.
+    *
+    * @param collegeId unique id of a college
+    * @param sort one of SORTS
+    * @param minutesNow minutes since midnight, which endingSoon compares the end times to
+    * @param limit maximum number of posts, or Integer.MAX_VALUE for all of them
+    * @return posts in the order asked for
+    * @throws IllegalArgumentException if the order is unknown
+    */
+  ArrayList<Post> getFeed(String collegeId, String sort, int minutesNow, int limit);
+
+  /**
+    * Get the posts happening today at several colleges, for the daily digest.
+    *
+    * @param collegeIds unique ids of colleges
+    * @return posts of each college, in no particular order
+    */
+  Map<String, ArrayList<Post>> getTodaysPosts(List<String> collegeIds);
+
+  /**
+    * Get what changed in a college's feed since a version of it. Each post created or expired
+    * in a college is a change, numbered from 1 up; the version of a feed is the number of the
+    * last change it includes. Clients that are more than MAX_CHANGES changes behind, or that
+    * have no version yet, get a reset holding the whole feed in time order.
+    *
+    * @param collegeId unique id of a college
+    * @param since version the client has, or 0 for none
+    * @return the changes, or the whole feed, along with the version they bring the client to
+    */
+  PostDelta getChangesSince(String collegeId, long since);
+
+  /**
+    * Search a college's posts of today by the words of their description, food type,
+    * organization and location, through PostSearchIndex.
+    *
+    * @param collegeId unique id of a college
+    * @param query words to search for, the last of which may be unfinished
+    * @param limit maximum number of posts
+    * @return posts containing every word, best ranked first
+    */
+  ArrayList<Post> search(String collegeId, String query, int limit);
+
+  /**
+    * Count a college's posts of today under each value of each facet of PostFacets.
+    *
+    * @param collegeId unique id of a college
+    * @return counts by value for every facet, the largest count first
+    */
+  Map<String, Map<String, Integer>> getFacetCounts(String collegeId);
+
+  /**
+    * Get a college's posts of today filed under the selected facet values.
+    *
+    * @param collegeId unique id of a college
+    * @param selected value of each facet to filter on; facets left out aren't filtered
+    * @param limit maximum number of posts
+    * @return posts in time order
+    * @throws IllegalArgumentException if a facet is unknown
+    */
+  ArrayList<Post> getFilteredFeed(String collegeId, Map<String, String> selected, int limit);
+}
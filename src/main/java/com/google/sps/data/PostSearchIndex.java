@@ -0,0 +1,232 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+  * Inverted index of the posts of one college, from each term of their description, food
+  * type, organization and location to the posts containing it.
+  *
+  * Every term's posts are kept sorted by rank, so a search walks the posts of its rarest term
+  * from the best ranked down and stops once it has enough matches. The last term of a query
+  * also matches the terms it begins, so results show up while the query is typed. Searches
+  * don't lock; posts are added and removed one at a time.
+  */
+public final class PostSearchIndex {
+
+  /** A post with the values it is indexed and sorted on. */
+  private static final class IndexedPost {
+    private final String id;
+    private final double rank;
+    private final NavigableSet<String> terms;
+    private final Post post;
+
+    IndexedPost(Post post) {
+      this.id = post.getPostId();
+      this.rank = post.getRank();
+      this.terms = Collections.unmodifiableNavigableSet(PostTokenizer.getTerms(post));
+      this.post = post;
+    }
+
+    boolean hasTermStartingWith(String prefix) {
+      String term = terms.ceiling(prefix);
+      return term != null && term.startsWith(prefix);
+    }
+  }
+
+  private static final Comparator<IndexedPost> BY_RANK =
+    Comparator.<IndexedPost>comparingDouble(indexed -> -indexed.rank).thenComparing(indexed -> indexed.id);
+
+  /** The posts containing a term, best ranked first. */
+  private static final class Postings {
+    private final NavigableSet<IndexedPost> posts = new ConcurrentSkipListSet<IndexedPost>(BY_RANK);
+    // Kept apart since counting a concurrent set walks all of it.
+    private volatile int size = 0;
+  }
+
+  // Sorted by term, so the terms beginning with a prefix are next to each other.
+  private final ConcurrentSkipListMap<String, Postings> postingsByTerm =
+    new ConcurrentSkipListMap<String, Postings>();
+  private final Map<String, IndexedPost> posts = new ConcurrentHashMap<String, IndexedPost>();
+
+  /** Index a post, replacing any post indexed under the same id. */
+  public synchronized void add(Post post) {
+    remove(post.getPostId());
+    IndexedPost indexed = new IndexedPost(post);
+    posts.put(indexed.id, indexed);
+    for (String term : indexed.terms) {
+      Postings postings = postingsByTerm.computeIfAbsent(term, t -> new Postings());
+      postings.posts.add(indexed);
+      postings.size++;
+    }
+  }
+
+  /** Stop finding a post, if it is indexed. */
+  public synchronized void remove(String postId) {
+    IndexedPost indexed = posts.remove(postId);
+    if (indexed == null) {
+      return;
+    }
+    for (String term : indexed.terms) {
+      Postings postings = postingsByTerm.get(term);
+      postings.posts.remove(indexed);
+      if (--postings.size == 0) {
+        postingsByTerm.remove(term);
+      }
+    }
+  }
+
+  /** Get the number of posts indexed. */
+  public int size() {
+    return posts.size();
+  }
+
+  /**
+    * Find the posts containing every term of a query, the last one possibly as the beginning
+    * of a longer term. Only posts of the given day that haven't ended are returned.
+    *
+    * @param query words typed by the user
+    * @param nowTime current time in the time zone of the posts
+    * @param limit maximum number of posts
+    * @return the best ranked matching posts, best first
+    */
+  public ArrayList<Post> search(String query, Calendar nowTime, int limit) {
+    ArrayList<Post> results = new ArrayList<Post>();
+    List<String> terms = PostTokenizer.tokenize(query);
+    if (terms.isEmpty() || limit <= 0) {
+      return results;
+    }
+    String prefix = terms.get(terms.size() - 1);
+    Set<String> exactTerms = new LinkedHashSet<String>(terms.subList(0, terms.size() - 1));
+
+    // Walk the rarest term's posts and check the other terms on each of them.
+    Postings rarest = null;
+    List<Postings> others = new ArrayList<Postings>();
+    for (String term : exactTerms) {
+      Postings postings = postingsByTerm.get(term);
+      if (postings == null) {
+        return results;
+      }
+      if (rarest == null || postings.size < rarest.size) {
+        if (rarest != null) {
+          others.add(rarest);
+        }
+        rarest = postings;
+      } else {
+        others.add(postings);
+      }
+    }
+    Iterator<IndexedPost> candidates = rarest != null
+      ? rarest.posts.iterator()
+      : mergeByRank(postingsByTerm.subMap(prefix, prefix + Character.MAX_VALUE).values());
+
+    while (candidates.hasNext() && results.size() < limit) {
+      IndexedPost candidate = candidates.next();
+      if (!candidate.hasTermStartingWith(prefix) || !containedInAll(candidate, others)) {
+        continue;
+      }
+      if (!candidate.post.hasEnded(nowTime) && candidate.post.isOnDayOf(nowTime)) {
+        results.add(candidate.post);
+      }
+    }
+    return results;
+  }
+
+  private static boolean containedInAll(IndexedPost candidate, List<Postings> others) {
+    for (Postings postings : others) {
+      if (!postings.posts.contains(candidate)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * Merge the posts of several terms into a single walk by rank, skipping the posts that
+   * contain more than one of the terms after their first appearance.
+   */
+  private static Iterator<IndexedPost> mergeByRank(Collection<Postings> postings) {
+    PriorityQueue<PeekingIterator> heads = new PriorityQueue<PeekingIterator>(
+      Math.max(1, postings.size()), (a, b) -> BY_RANK.compare(a.next, b.next));
+    for (Postings term : postings) {
+      PeekingIterator head = new PeekingIterator(term.posts.iterator());
+      if (head.next != null) {
+        heads.add(head);
+      }
+    }
+    Set<String> seen = new HashSet<String>();
+    return new Iterator<IndexedPost>() {
+      private IndexedPost next = advance();
+
+      private IndexedPost advance() {
+        while (!heads.isEmpty()) {
+          PeekingIterator head = heads.poll();
+          IndexedPost indexed = head.next;
+          if (head.advance()) {
+            heads.add(head);
+          }
+          if (seen.add(indexed.id)) {
+            return indexed;
+          }
+        }
+        return null;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public IndexedPost next() {
+        IndexedPost current = next;
+        next = advance();
+        return current;
+      }
+    };
+  }
+
+  /** An iterator over a term's posts that shows the post it is at. */
+  private static final class PeekingIterator {
+    private final Iterator<IndexedPost> iterator;
+    private IndexedPost next;
+
+    PeekingIterator(Iterator<IndexedPost> iterator) {
+      this.iterator = iterator;
+      advance();
+    }
+
+    boolean advance() {
+      next = iterator.hasNext() ? iterator.next() : null;
+      return next != null;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+  * Splits text into the terms that posts are searched by: runs of letters and digits,
+  * lowercased, leaving out common English words that would match almost every post.
+  */
+public final class PostTokenizer {
+
+  public static final Set<String> STOP_WORDS = Collections.unmodifiableSet(new HashSet<String>(
+    Arrays.asList("a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "from", "have",
+      "has", "in", "is", "it", "its", "of", "on", "or", "our", "so", "some", "that",
+      "the", "their", "there", "this", "to", "was", "we", "were", "will", "with", "you", "your")));
+
+  // Make the constructor private to emulate a static class.
+  private PostTokenizer() {}
+
+  /**
+    * Get the terms of a text in the order they appear, repeats included.
+    *
+    * @param text any text, or null
+    * @return the terms, lowercased
+    */
+  public static List<String> tokenize(String text) {
+    List<String> terms = new ArrayList<String>();
+    if (text == null) {
+      return terms;
+    }
+    StringBuilder term = new StringBuilder();
+    for (int i = 0; i <= text.length(); i++) {
+      char c = i < text.length() ? text.charAt(i) : ' ';
+      if (Character.isLetterOrDigit(c)) {
+        term.append(Character.toLowerCase(c));
+      } else if (term.length() > 0) {
+        String word = term.toString();
+        if (!STOP_WORDS.contains(word)) {
+          terms.add(word);
+        }
+        term.setLength(0);
+      }
+    }
+    return terms;
+  }
+
+  /** Get the distinct terms of the fields a post is searched by, in alphabetical order. */
+  public static TreeSet<String> getTerms(Post post) {
+    TreeSet<String> terms = new TreeSet<String>();
+    terms.addAll(tokenize(post.getDescription()));
+    terms.addAll(tokenize(post.getTypeOfFood()));
+    terms.addAll(tokenize(post.getOrganizationName()));
+    terms.addAll(tokenize(post.getLocation()));
+    return terms;
+  }
+}
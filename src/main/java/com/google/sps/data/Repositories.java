@@ -0,0 +1,65 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.sps.metrics.MeteredAsyncDatastoreService;
+import com.google.sps.metrics.MeteredDatastoreService;
+
+/**
+  * Holds the repositories the servlets store posts and users in. They are kept in
+  * Datastore unless the "sps.repository" system property is "memory", which load tests
+  * set to run the servlets without Datastore. Tests can also swap in their own.
+  */
+public final class Repositories {
+
+  public static final String REPOSITORY_PROPERTY = "sps.repository";
+
+  private static volatile PostRepository posts;
+  private static volatile UserRepository users;
+
+  static {
+    if ("memory".equals(System.getProperty(REPOSITORY_PROPERTY))) {
+      posts = new InMemoryPostRepository();
+      users = new InMemoryUserRepository();
+    } else {
+      posts = new DatastorePostRepository(
+        new MeteredDatastoreService(DatastoreServiceFactory.getDatastoreService()),
+        new MeteredAsyncDatastoreService(DatastoreServiceFactory.getAsyncDatastoreService()));
+      users = new DatastoreUserRepository(
+        new MeteredDatastoreService(DatastoreServiceFactory.getDatastoreService()),
+        new MeteredAsyncDatastoreService(DatastoreServiceFactory.getAsyncDatastoreService()));
+    }
+  }
+
+  // Make the constructor private to emulate a static class.
+  private Repositories() {}
+
+  public static PostRepository posts() {
+    return posts;
+  }
+
+  public static UserRepository users() {
+    return users;
+  }
+
+  public static void setPosts(PostRepository repository) {
+    posts = repository;
+  }
+
+  public static void setUsers(UserRepository repository) {
+    users = repository;
+  }
+}
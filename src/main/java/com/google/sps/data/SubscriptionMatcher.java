@@ -0,0 +1,214 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+  * Finds the subscribers of one college who want to be emailed about a post, without reading
+  * every subscription.
+  *
+  * Subscriptions with food types or keywords are filed under the rarest term of each of them,
+  * and subscriptions with a distance under every cell of a grid of latitude and longitude
+  * their circle reaches. The subscribers a post can match are then the ones filed under its
+  * terms, plus the ones without topics, or the ones filed under its cell, plus the ones
+  * without a distance. Only the smaller of the two groups is checked against the post.
+  */
+public final class SubscriptionMatcher {
+
+  // Cells are about 1.4 miles high, so a subscriber covers at most a few hundred of them.
+  static final double CELL_DEGREES = 0.02;
+
+  /** A subscriber as filed in the indexes, so a candidate is checked without a lookup. */
+  private static final class Subscriber {
+    private final String email;
+    private final Interests interests;
+    // The term each food type and keyword is filed under, so they can be unfiled.
+    private final List<String> foodTermKeys = new ArrayList<String>();
+    private final List<String> keywordKeys = new ArrayList<String>();
+
+    Subscriber(String email, Interests interests) {
+      this.email = email;
+      this.interests = interests;
+    }
+  }
+
+  private final Map<String, Subscriber> subscribers = new HashMap<String, Subscriber>();
+  private final Map<String, Set<Subscriber>> byFoodTerm = new HashMap<String, Set<Subscriber>>();
+  private final Map<String, Set<Subscriber>> byKeyword = new HashMap<String, Set<Subscriber>>();
+  private final Map<Long, Set<Subscriber>> byCell = new HashMap<Long, Set<Subscriber>>();
+  private final Set<Subscriber> anyTopic = new HashSet<Subscriber>();
+  private final Set<Subscriber> anyPlace = new HashSet<Subscriber>();
+
+  /** File a subscriber's interests, replacing the ones filed before. */
+  public synchronized void add(String email, Interests interests) {
+    remove(email);
+    Subscriber subscriber = new Subscriber(email, interests);
+    subscribers.put(email, subscriber);
+    if (interests.hasTopics()) {
+      for (List<String> foodType : interests.getFoodTypeTerms()) {
+        String key = getRarest(byFoodTerm, foodType);
+        file(byFoodTerm, key, subscriber);
+        subscriber.foodTermKeys.add(key);
+      }
+      for (List<String> keyword : interests.getKeywordTerms()) {
+        String key = getRarest(byKeyword, keyword);
+        file(byKeyword, key, subscriber);
+        subscriber.keywordKeys.add(key);
+      }
+    } else {
+      anyTopic.add(subscriber);
+    }
+    if (interests.hasPlace()) {
+      for (long cell : getCells(interests)) {
+        file(byCell, cell, subscriber);
+      }
+    } else {
+      anyPlace.add(subscriber);
+    }
+  }
+
+  /** Stop matching a subscriber, if they are filed. */
+  public synchronized void remove(String email) {
+    Subscriber subscriber = subscribers.remove(email);
+    if (subscriber == null) {
+      return;
+    }
+    for (String key : subscriber.foodTermKeys) {
+      unfile(byFoodTerm, key, subscriber);
+    }
+    for (String key : subscriber.keywordKeys) {
+      unfile(byKeyword, key, subscriber);
+    }
+    if (subscriber.interests.hasPlace()) {
+      for (long cell : getCells(subscriber.interests)) {
+        unfile(byCell, cell, subscriber);
+      }
+    }
+    anyTopic.remove(subscriber);
+    anyPlace.remove(subscriber);
+  }
+
+  public synchronized int size() {
+    return subscribers.size();
+  }
+
+  /**
+    * Get the subscribers who want to be emailed about a post.
+    *
+    * @param post a new post
+    * @return emails of the subscribers, in alphabetical order
+    */
+  public synchronized List<String> match(Post post) {
+    List<String> foodTerms = PostTokenizer.tokenize(post.getTypeOfFood());
+    Set<String> terms = PostTokenizer.getTerms(post);
+
+    List<Set<Subscriber>> byTopic = new ArrayList<Set<Subscriber>>();
+    byTopic.add(anyTopic);
+    for (String term : new HashSet<String>(foodTerms)) {
+      byTopic.add(byFoodTerm.getOrDefault(term, Collections.<Subscriber>emptySet()));
+    }
+    for (String term : terms) {
+      byTopic.add(byKeyword.getOrDefault(term, Collections.<Subscriber>emptySet()));
+    }
+    List<Set<Subscriber>> byPlace = new ArrayList<Set<Subscriber>>();
+    byPlace.add(anyPlace);
+    byPlace.add(byCell.getOrDefault(getCell(post.getLat(), post.getLng()),
+      Collections.<Subscriber>emptySet()));
+
+    // A subscriber filed under several of the post's terms is checked once per term, which is
+    // cheaper than remembering every candidate checked.
+    Set<String> matches = new HashSet<String>();
+    for (Set<Subscriber> candidates : count(byTopic) <= count(byPlace) ? byTopic : byPlace) {
+      for (Subscriber candidate : candidates) {
+        if (candidate.interests.matches(foodTerms, terms, post.getLat(), post.getLng())) {
+          matches.add(candidate.email);
+        }
+      }
+    }
+    List<String> sorted = new ArrayList<String>(matches);
+    Collections.sort(sorted);
+    return sorted;
+  }
+
+  private static int count(List<Set<Subscriber>> groups) {
+    int count = 0;
+    for (Set<Subscriber> group : groups) {
+      count += group.size();
+    }
+    return count;
+  }
+
+  // A post holds every term of a phrase it matches, so the phrase can be filed under any of
+  // them; the one the fewest subscribers are filed under keeps the candidates few.
+  private static String getRarest(Map<String, Set<Subscriber>> index, List<String> phrase) {
+    String rarest = phrase.get(0);
+    for (String term : phrase) {
+      if (count(index, term) < count(index, rarest)) {
+        rarest = term;
+      }
+    }
+    return rarest;
+  }
+
+  private static int count(Map<String, Set<Subscriber>> index, String term) {
+    Set<Subscriber> subscribers = index.get(term);
+    return subscribers == null ? 0 : subscribers.size();
+  }
+
+  private static <K> void file(Map<K, Set<Subscriber>> index, K key, Subscriber subscriber) {
+    index.computeIfAbsent(key, k -> new HashSet<Subscriber>()).add(subscriber);
+  }
+
+  private static <K> void unfile(Map<K, Set<Subscriber>> index, K key, Subscriber subscriber) {
+    Set<Subscriber> subscribers = index.get(key);
+    if (subscribers != null && subscribers.remove(subscriber) && subscribers.isEmpty()) {
+      index.remove(key);
+    }
+  }
+
+  static long getCell(double lat, double lng) {
+    long row = (long) Math.floor(lat / CELL_DEGREES);
+    long column = (long) Math.floor(lng / CELL_DEGREES);
+    return (row << 32) ^ (column & 0xffffffffL);
+  }
+
+  // The cells of the square around a subscriber's circle. Longitude degrees shrink away from
+  // the equator, so the square is widest at its latitude farthest from it.
+  private static List<Long> getCells(Interests interests) {
+    double latDegrees = interests.getMaxDistance() / Interests.MILES_PER_DEGREE_LAT;
+    double farthestLat = Math.min(89, Math.abs(interests.getLat()) + latDegrees);
+    double lngDegrees = interests.getMaxDistance()
+      / (Math.cos(Math.toRadians(farthestLat)) * Interests.MILES_PER_DEGREE_LAT);
+
+    List<Long> cells = new ArrayList<Long>();
+    long firstRow = (long) Math.floor((interests.getLat() - latDegrees) / CELL_DEGREES);
+    long lastRow = (long) Math.floor((interests.getLat() + latDegrees) / CELL_DEGREES);
+    long firstColumn = (long) Math.floor((interests.getLng() - lngDegrees) / CELL_DEGREES);
+    long lastColumn = (long) Math.floor((interests.getLng() + lngDegrees) / CELL_DEGREES);
+    for (long row = firstRow; row <= lastRow; row++) {
+      for (long column = firstColumn; column <= lastColumn; column++) {
+        cells.add((row << 32) ^ (column & 0xffffffffL));
+      }
+    }
+    return cells;
+  }
+}
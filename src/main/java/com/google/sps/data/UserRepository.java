@@ -0,0 +1,78 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Iterator;
+import java.util.List;
+
+/** Stores the users subscribed to email notifications, identified by their email. */
+public interface UserRepository {
+
+  /**
+    * Subscribe a user to a college, moving them from the college they were subscribed to.
+    *
+    * @param email email address of the user
+    * @param name name of the user
+    * @param collegeId unique id of the college
+    */
+  default void subscribe(String email, String name, String collegeId) {
+    subscribe(email, name, collegeId, Interests.ANYTHING);
+  }
+
+  /**
+    * Subscribe a user to a college's posts that match their interests, moving them from the
+    * college they were subscribed to and replacing their interests.
+    *
+    * @param email email address of the user
+    * @param name name of the user
+    * @param collegeId unique id of the college
+    * @param interests posts the user wants to be emailed about
+    */
+  void subscribe(String email, String name, String collegeId, Interests interests);
+
+  /**
+    * Unsubscribe a user from notifications.
+    *
+    * @param email email address of the user
+    * @return false if the user wasn't subscribed
+    */
+  boolean unsubscribe(String email);
+
+  /**
+    * Get the emails of a college's subscribers, a batch at a time.
+    *
+    * @param collegeId unique id of a college
+    * @param batchSize maximum number of emails in a batch
+    * @return iterator over batches of emails, none of them empty
+    */
+  Iterator<List<String>> getSubscriberBatches(String collegeId, int batchSize);
+
+  /**
+    * Get the subscribers of a college who want to be emailed about a post, through a
+    * SubscriptionMatcher of the college's subscriptions.
+    *
+    * @param collegeId unique id of a college
+    * @param post a new post of the college
+    * @return emails of the subscribers whose interests match the post
+    */
+  List<String> getMatchingSubscribers(String collegeId, Post post);
+
+  /**
+    * Get the colleges with at least one subscriber.
+    *
+    * @return unique ids of the colleges
+    */
+  List<String> getSubscribedColleges();
+}
@@ -0,0 +1,87 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Counts request latencies in fixed buckets so percentiles can be estimated cheaply. */
+public final class LatencyHistogram {
+
+  // Upper bounds of the buckets in milliseconds. The last bucket holds everything slower.
+  public static final long[] BOUNDS_MILLIS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MILLIS.length + 1);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalMillis = new AtomicLong();
+  private final AtomicLong maxMillis = new AtomicLong();
+
+  public void record(long millis) {
+    int bucket = 0;
+    while (bucket < BOUNDS_MILLIS.length && millis > BOUNDS_MILLIS[bucket]) {
+      bucket++;
+    }
+    buckets.incrementAndGet(bucket);
+    count.incrementAndGet();
+    totalMillis.addAndGet(millis);
+    maxMillis.accumulateAndGet(millis, Math::max);
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getTotalMillis() {
+    return totalMillis.get();
+  }
+
+  public long getMaxMillis() {
+    return maxMillis.get();
+  }
+
+  /**
+    * Estimate a percentile as the upper bound of the bucket it falls in.
+    *
+    * @param percentile between 0 and 100
+    * @return latency in milliseconds, the maximum seen for the last bucket, or 0 if empty
+    */
+  public long getPercentileMillis(double percentile) {
+    long total = count.get();
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(total * percentile / 100);
+    long seen = 0;
+    for (int bucket = 0; bucket < BOUNDS_MILLIS.length; bucket++) {
+      seen += buckets.get(bucket);
+      if (seen >= rank) {
+        return BOUNDS_MILLIS[bucket];
+      }
+    }
+    return maxMillis.get();
+  }
+
+  /** Get the count in each bucket, labelled by its upper bound. */
+  public Map<String, Long> getBuckets() {
+    Map<String, Long> counts = new LinkedHashMap<String, Long>();
+    for (int bucket = 0; bucket < BOUNDS_MILLIS.length; bucket++) {
+      counts.put("le" + BOUNDS_MILLIS[bucket], buckets.get(bucket));
+    }
+    counts.put("inf", buckets.get(BOUNDS_MILLIS.length));
+    return counts;
+  }
+}
@@ -0,0 +1,177 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreAttributes;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Index;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyRange;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+  * AsyncDatastoreService that counts the calls of the current request in RequestMetrics when
+  * they are started, like MeteredDatastoreService does for synchronous calls.
+  *
+  * Calls are counted before their results arrive, so gets count the entities asked for rather
+  * than the ones found.
+  */
+public final class MeteredAsyncDatastoreService implements AsyncDatastoreService {
+  private final AsyncDatastoreService datastore;
+
+  public MeteredAsyncDatastoreService(AsyncDatastoreService datastore) {
+    this.datastore = datastore;
+  }
+
+  @Override
+  public Future<Entity> get(Key key) {
+    RequestMetrics.recordDatastoreRpc(1);
+    return datastore.get(key);
+  }
+
+  @Override
+  public Future<Entity> get(Transaction txn, Key key) {
+    RequestMetrics.recordDatastoreRpc(1);
+    return datastore.get(txn, key);
+  }
+
+  @Override
+  public Future<Map<Key, Entity>> get(Iterable<Key> keys) {
+    RequestMetrics.recordDatastoreRpc(MeteredDatastoreService.size(keys));
+    return datastore.get(keys);
+  }
+
+  @Override
+  public Future<Map<Key, Entity>> get(Transaction txn, Iterable<Key> keys) {
+    RequestMetrics.recordDatastoreRpc(MeteredDatastoreService.size(keys));
+    return datastore.get(txn, keys);
+  }
+
+  @Override
+  public Future<Key> put(Entity entity) {
+    RequestMetrics.recordDatastoreRpc(1);
+    return datastore.put(entity);
+  }
+
+  @Override
+  public Future<Key> put(Transaction txn, Entity entity) {
+    RequestMetrics.recordDatastoreRpc(1);
+    return datastore.put(txn, entity);
+  }
+
+  @Override
+  public Future<List<Key>> put(Iterable<Entity> entities) {
+    RequestMetrics.recordDatastoreRpc(MeteredDatastoreService.size(entities));
+    return datastore.put(entities);
+  }
+
+  @Override
+  public Future<List<Key>> put(Transaction txn, Iterable<Entity> entities) {
+    RequestMetrics.recordDatastoreRpc(MeteredDatastoreService.size(entities));
+    return datastore.put(txn, entities);
+  }
+
+  @Override
+  public Future<Void> delete(Key... keys) {
+    RequestMetrics.recordDatastoreRpc(keys.length);
+    return datastore.delete(keys);
+  }
+
+  @Override
+  public Future<Void> delete(Transaction txn, Key... keys) {
+    RequestMetrics.recordDatastoreRpc(keys.length);
+    return datastore.delete(txn, keys);
+  }
+
+  @Override
+  public Future<Void> delete(Iterable<Key> keys) {
+    RequestMetrics.recordDatastoreRpc(MeteredDatastoreService.size(keys));
+    return datastore.delete(keys);
+  }
+
+  @Override
+  public Future<Void> delete(Transaction txn, Iterable<Key> keys) {
+    RequestMetrics.recordDatastoreRpc(MeteredDatastoreService.size(keys));
+    return datastore.delete(txn, keys);
+  }
+
+  @Override
+  public Future<Transaction> beginTransaction() {
+    RequestMetrics.recordDatastoreRpc(0);
+    return datastore.beginTransaction();
+  }
+
+  @Override
+  public Future<Transaction> beginTransaction(TransactionOptions options) {
+    RequestMetrics.recordDatastoreRpc(0);
+    return datastore.beginTransaction(options);
+  }
+
+  @Override
+  public Future<KeyRange> allocateIds(String kind, long num) {
+    RequestMetrics.recordDatastoreRpc(0);
+    return datastore.allocateIds(kind, num);
+  }
+
+  @Override
+  public Future<KeyRange> allocateIds(Key parent, String kind, long num) {
+    RequestMetrics.recordDatastoreRpc(0);
+    return datastore.allocateIds(parent, kind, num);
+  }
+
+  @Override
+  public Future<DatastoreAttributes> getDatastoreAttributes() {
+    return datastore.getDatastoreAttributes();
+  }
+
+  @Override
+  public Future<Map<Index, Index.IndexState>> getIndexes() {
+    RequestMetrics.recordDatastoreRpc(0);
+    return datastore.getIndexes();
+  }
+
+  @Override
+  public PreparedQuery prepare(Query query) {
+    return new MeteredPreparedQuery(datastore.prepare(query));
+  }
+
+  @Override
+  public PreparedQuery prepare(Transaction txn, Query query) {
+    return new MeteredPreparedQuery(datastore.prepare(txn, query));
+  }
+
+  @Override
+  public Transaction getCurrentTransaction() {
+    return datastore.getCurrentTransaction();
+  }
+
+  @Override
+  public Transaction getCurrentTransaction(Transaction returnedIfNoTxn) {
+    return datastore.getCurrentTransaction(returnedIfNoTxn);
+  }
+
+  @Override
+  public Collection<Transaction> getActiveTransactions() {
+    return datastore.getActiveTransactions();
+  }
+}
@@ -0,0 +1,218 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import com.google.appengine.api.datastore.DatastoreAttributes;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Index;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyRange;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+  * DatastoreService that counts the calls and entities of the current request in
+  * RequestMetrics before passing them on.
+  *
+  * A query counts as one call when it is run, and its entities are counted as they are read,
+  * so batches fetched while iterating are not counted separately. Lists are counted in full.
+  */
+public final class MeteredDatastoreService implements DatastoreService {
+  private final DatastoreService datastore;
+
+  public MeteredDatastoreService(DatastoreService datastore) {
+    this.datastore = datastore;
+  }
+
+  static int size(Iterable<?> items) {
+    if (items instanceof Collection) {
+      return ((Collection<?>) items).size();
+    }
+    int size = 0;
+    for (Object item : items) {
+      size++;
+    }
+    return size;
+  }
+
+  @Override
+  public Entity get(Key key) throws EntityNotFoundException {
+    try {
+      Entity entity = datastore.get(key);
+      RequestMetrics.recordDatastoreRpc(1);
+      return entity;
+    } catch (EntityNotFoundException e) {
+      RequestMetrics.recordDatastoreRpc(0);
+      throw e;
+    }
+  }
+
+  @Override
+  public Entity get(Transaction txn, Key key) throws EntityNotFoundException {
+    try {
+      Entity entity = datastore.get(txn, key);
+      RequestMetrics.recordDatastoreRpc(1);
+      return entity;
+    } catch (EntityNotFoundException e) {
+      RequestMetrics.recordDatastoreRpc(0);
+      throw e;
+    }
+  }
+
+  @Override
+  public Map<Key, Entity> get(Iterable<Key> keys) {
+    Map<Key, Entity> entities = datastore.get(keys);
+    RequestMetrics.recordDatastoreRpc(entities.size());
+    return entities;
+  }
+
+  @Override
+  public Map<Key, Entity> get(Transaction txn, Iterable<Key> keys) {
+    Map<Key, Entity> entities = datastore.get(txn, keys);
+    RequestMetrics.recordDatastoreRpc(entities.size());
+    return entities;
+  }
+
+  @Override
+  public Key put(Entity entity) {
+    Key key = datastore.put(entity);
+    RequestMetrics.recordDatastoreRpc(1);
+    return key;
+  }
+
+  @Override
+  public Key put(Transaction txn, Entity entity) {
+    Key key = datastore.put(txn, entity);
+    RequestMetrics.recordDatastoreRpc(1);
+    return key;
+  }
+
+  @Override
+  public List<Key> put(Iterable<Entity> entities) {
+    List<Key> keys = datastore.put(entities);
+    RequestMetrics.recordDatastoreRpc(keys.size());
+    return keys;
+  }
+
+  @Override
+  public List<Key> put(Transaction txn, Iterable<Entity> entities) {
+    List<Key> keys = datastore.put(txn, entities);
+    RequestMetrics.recordDatastoreRpc(keys.size());
+    return keys;
+  }
+
+  @Override
+  public void delete(Key... keys) {
+    datastore.delete(keys);
+    RequestMetrics.recordDatastoreRpc(keys.length);
+  }
+
+  @Override
+  public void delete(Transaction txn, Key... keys) {
+    datastore.delete(txn, keys);
+    RequestMetrics.recordDatastoreRpc(keys.length);
+  }
+
+  @Override
+  public void delete(Iterable<Key> keys) {
+    datastore.delete(keys);
+    RequestMetrics.recordDatastoreRpc(size(keys));
+  }
+
+  @Override
+  public void delete(Transaction txn, Iterable<Key> keys) {
+    datastore.delete(txn, keys);
+    RequestMetrics.recordDatastoreRpc(size(keys));
+  }
+
+  @Override
+  public Transaction beginTransaction() {
+    Transaction txn = datastore.beginTransaction();
+    RequestMetrics.recordDatastoreRpc(0);
+    return txn;
+  }
+
+  @Override
+  public Transaction beginTransaction(TransactionOptions options) {
+    Transaction txn = datastore.beginTransaction(options);
+    RequestMetrics.recordDatastoreRpc(0);
+    return txn;
+  }
+
+  @Override
+  public KeyRange allocateIds(String kind, long num) {
+    KeyRange range = datastore.allocateIds(kind, num);
+    RequestMetrics.recordDatastoreRpc(0);
+    return range;
+  }
+
+  @Override
+  public KeyRange allocateIds(Key parent, String kind, long num) {
+    KeyRange range = datastore.allocateIds(parent, kind, num);
+    RequestMetrics.recordDatastoreRpc(0);
+    return range;
+  }
+
+  @Override
+  public KeyRangeState allocateIdRange(KeyRange range) {
+    KeyRangeState state = datastore.allocateIdRange(range);
+    RequestMetrics.recordDatastoreRpc(0);
+    return state;
+  }
+
+  @Override
+  public DatastoreAttributes getDatastoreAttributes() {
+    return datastore.getDatastoreAttributes();
+  }
+
+  @Override
+  public Map<Index, Index.IndexState> getIndexes() {
+    Map<Index, Index.IndexState> indexes = datastore.getIndexes();
+    RequestMetrics.recordDatastoreRpc(0);
+    return indexes;
+  }
+
+  @Override
+  public PreparedQuery prepare(Query query) {
+    return new MeteredPreparedQuery(datastore.prepare(query));
+  }
+
+  @Override
+  public PreparedQuery prepare(Transaction txn, Query query) {
+    return new MeteredPreparedQuery(datastore.prepare(txn, query));
+  }
+
+  @Override
+  public Transaction getCurrentTransaction() {
+    return datastore.getCurrentTransaction();
+  }
+
+  @Override
+  public Transaction getCurrentTransaction(Transaction returnedIfNoTxn) {
+    return datastore.getCurrentTransaction(returnedIfNoTxn);
+  }
+
+  @Override
+  public Collection<Transaction> getActiveTransactions() {
+    return datastore.getActiveTransactions();
+  }
+}
@@ -0,0 +1,149 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Index;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.QueryResultIterable;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.datastore.QueryResultList;
+import java.util.Iterator;
+import java.util.List;
+
+/** PreparedQuery that counts itself when it is run and its entities as they are read. */
+final class MeteredPreparedQuery implements PreparedQuery {
+  private final PreparedQuery query;
+
+  MeteredPreparedQuery(PreparedQuery query) {
+    this.query = query;
+  }
+
+  @Override
+  public List<Entity> asList(FetchOptions options) {
+    List<Entity> entities = query.asList(options);
+    RequestMetrics.recordDatastoreRpc(entities.size());
+    return entities;
+  }
+
+  @Override
+  public QueryResultList<Entity> asQueryResultList(FetchOptions options) {
+    QueryResultList<Entity> entities = query.asQueryResultList(options);
+    RequestMetrics.recordDatastoreRpc(entities.size());
+    return entities;
+  }
+
+  @Override
+  public Iterable<Entity> asIterable(FetchOptions options) {
+    return () -> asIterator(options);
+  }
+
+  @Override
+  public Iterable<Entity> asIterable() {
+    return () -> asIterator();
+  }
+
+  @Override
+  public QueryResultIterable<Entity> asQueryResultIterable(FetchOptions options) {
+    return () -> asQueryResultIterator(options);
+  }
+
+  @Override
+  public QueryResultIterable<Entity> asQueryResultIterable() {
+    return () -> asQueryResultIterator();
+  }
+
+  @Override
+  public Iterator<Entity> asIterator(FetchOptions options) {
+    return asQueryResultIterator(options);
+  }
+
+  @Override
+  public Iterator<Entity> asIterator() {
+    return asQueryResultIterator();
+  }
+
+  @Override
+  public QueryResultIterator<Entity> asQueryResultIterator(FetchOptions options) {
+    RequestMetrics.recordDatastoreRpc(0);
+    return new MeteredIterator(query.asQueryResultIterator(options));
+  }
+
+  @Override
+  public QueryResultIterator<Entity> asQueryResultIterator() {
+    RequestMetrics.recordDatastoreRpc(0);
+    return new MeteredIterator(query.asQueryResultIterator());
+  }
+
+  @Override
+  public Entity asSingleEntity() throws TooManyResultsException {
+    Entity entity = query.asSingleEntity();
+    RequestMetrics.recordDatastoreRpc(entity == null ? 0 : 1);
+    return entity;
+  }
+
+  @Override
+  public int countEntities(FetchOptions options) {
+    int count = query.countEntities(options);
+    RequestMetrics.recordDatastoreRpc(0);
+    return count;
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public int countEntities() {
+    int count = query.countEntities();
+    RequestMetrics.recordDatastoreRpc(0);
+    return count;
+  }
+
+  /* Counts entities as they are read. */
+  private static final class MeteredIterator implements QueryResultIterator<Entity> {
+    private final QueryResultIterator<Entity> iterator;
+
+    MeteredIterator(QueryResultIterator<Entity> iterator) {
+      this.iterator = iterator;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return iterator.hasNext();
+    }
+
+    @Override
+    public Entity next() {
+      Entity entity = iterator.next();
+      RequestMetrics.recordDatastoreEntities(1);
+      return entity;
+    }
+
+    @Override
+    public void remove() {
+      iterator.remove();
+    }
+
+    @Override
+    public List<Index> getIndexList() {
+      return iterator.getIndexList();
+    }
+
+    @Override
+    public Cursor getCursor() {
+      return iterator.getCursor();
+    }
+  }
+}
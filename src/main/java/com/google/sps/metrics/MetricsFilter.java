@@ -0,0 +1,84 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+// More information can be found here: http://www.slf4j.org/manual.html.
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+  * Filter that times each request and counts its Datastore calls, adding them to the totals
+  * in RequestMetrics and logging them as one key=value line per request.
+  */
+@WebFilter(urlPatterns = {"/postData", "/search", "/facets", "/dailyDigest",
+  "/notificationWindows", "/user", "/translateLocation"})
+public class MetricsFilter implements Filter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MetricsFilter.class);
+
+  // Clients can send any method name, so the others share one endpoint rather than each
+  // adding an entry to the metrics.
+  private static final Set<String> METHODS =
+    new HashSet<String>(Arrays.asList("GET", "POST", "HEAD"));
+  private static final String OTHER_METHOD = "OTHER";
+
+  @Override
+  public void init(FilterConfig config) {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+      chain.doFilter(request, response);
+      return;
+    }
+    HttpServletRequest httpRequest = (HttpServletRequest) request;
+    String method = httpRequest.getMethod();
+    String endpoint = (METHODS.contains(method) ? method : OTHER_METHOD) + " "
+      + httpRequest.getServletPath();
+
+    RequestMetrics.RequestStats stats = RequestMetrics.start();
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      chain.doFilter(request, response);
+      failed = false;
+    } finally {
+      long latencyMillis = (System.nanoTime() - start) / 1_000_000;
+      RequestMetrics.stop();
+      int status = failed ? 500 : ((HttpServletResponse) response).getStatus();
+      RequestMetrics.record(endpoint, latencyMillis, status, stats);
+      LOGGER.info("request_metrics endpoint=\"{}\" status={} latency_ms={} datastore_rpcs={} "
+        + "datastore_entities={}", endpoint, status, latencyMillis, stats.getDatastoreRpcs(),
+        stats.getDatastoreEntities());
+    }
+  }
+
+  @Override
+  public void destroy() {}
+}
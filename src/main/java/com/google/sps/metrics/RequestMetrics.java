@@ -0,0 +1,131 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+  * Per-endpoint request metrics for this instance.
+  *
+  * Datastore calls are attributed to the request running on the calling thread, which
+  * MetricsFilter starts and stops around each request. Calls made outside a metered request,
+  * e.g. on background threads, are not counted.
+  */
+public final class RequestMetrics {
+
+  /** Datastore usage of a single request. */
+  public static final class RequestStats {
+    private int datastoreRpcs = 0;
+    private int datastoreEntities = 0;
+
+    public int getDatastoreRpcs() {
+      return datastoreRpcs;
+    }
+
+    public int getDatastoreEntities() {
+      return datastoreEntities;
+    }
+  }
+
+  /** Totals for all requests to one endpoint. */
+  public static final class EndpointMetrics {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong datastoreRpcs = new AtomicLong();
+    private final AtomicLong datastoreEntities = new AtomicLong();
+
+    public LatencyHistogram getLatency() {
+      return latency;
+    }
+
+    public long getErrors() {
+      return errors.get();
+    }
+
+    public long getDatastoreRpcs() {
+      return datastoreRpcs.get();
+    }
+
+    public long getDatastoreEntities() {
+      return datastoreEntities.get();
+    }
+  }
+
+  private static final ThreadLocal<RequestStats> current = new ThreadLocal<RequestStats>();
+  private static final ConcurrentMap<String, EndpointMetrics> endpoints =
+    new ConcurrentHashMap<String, EndpointMetrics>();
+
+  private RequestMetrics() {}
+
+  /** Start counting Datastore usage for the request on this thread. */
+  public static RequestStats start() {
+    RequestStats stats = new RequestStats();
+    current.set(stats);
+    return stats;
+  }
+
+  /** Stop counting Datastore usage on this thread. */
+  public static void stop() {
+    current.remove();
+  }
+
+  /** Count a Datastore call and the entities it read or wrote. */
+  public static void recordDatastoreRpc(int entities) {
+    RequestStats stats = current.get();
+    if (stats != null) {
+      stats.datastoreRpcs++;
+      stats.datastoreEntities += entities;
+    }
+  }
+
+  /** Count entities read from a query after its call was counted. */
+  public static void recordDatastoreEntities(int entities) {
+    RequestStats stats = current.get();
+    if (stats != null) {
+      stats.datastoreEntities += entities;
+    }
+  }
+
+  /**
+    * Add a finished request to the totals of its endpoint.
+    *
+    * @param endpoint method and path, e.g. "GET /postData"
+    * @param status HTTP status sent, 5xx counting as errors
+    */
+  public static void record(String endpoint, long latencyMillis, int status, RequestStats stats) {
+    EndpointMetrics metrics = endpoints.computeIfAbsent(endpoint, e -> new EndpointMetrics());
+    metrics.latency.record(latencyMillis);
+    if (status >= 500) {
+      metrics.errors.incrementAndGet();
+    }
+    metrics.datastoreRpcs.addAndGet(stats.datastoreRpcs);
+    metrics.datastoreEntities.addAndGet(stats.datastoreEntities);
+  }
+
+  /** Get the metrics of every endpoint requested so far, sorted by endpoint. */
+  public static Map<String, EndpointMetrics> getEndpoints() {
+    return Collections.unmodifiableMap(new TreeMap<String, EndpointMetrics>(endpoints));
+  }
+
+  /** Forget all recorded requests. */
+  public static void reset() {
+    endpoints.clear();
+  }
+}
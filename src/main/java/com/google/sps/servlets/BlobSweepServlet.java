@@ -0,0 +1,61 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.blobstore.BlobstoreService;
+import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.sps.data.BlobLifecycle;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+// More information can be found here: http://www.slf4j.org/manual.html.
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Servlet that deletes uploaded images no post claimed, meant to be run periodically by cron. */
+@WebServlet("/blobSweep")
+public class BlobSweepServlet extends HttpServlet {
+  private static final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  private static final Logger LOGGER = LoggerFactory.getLogger(BlobSweepServlet.class);
+
+  // Leaves enough time for a form submission to finish after its upload.
+  public static final long GRACE_PERIOD_MILLIS = TimeUnit.HOURS.toMillis(24);
+  public static final int BATCH_SIZE = 100;
+
+  /** GETs the unclaimed uploads past the grace period and deletes them; only cron may call this. */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // App Engine strips this header from requests that don't come from cron.
+    if (request.getHeader("X-Appengine-Cron") == null) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+    BlobstoreService blobstoreService = BlobstoreServiceFactory.getBlobstoreService();
+    BlobLifecycle.SweepResult result =
+      BlobLifecycle.sweep(datastore, blobstoreService, GRACE_PERIOD_MILLIS, BATCH_SIZE);
+
+    String summary = String.format("Deleted %d unclaimed blobs, reclaimed %d bytes",
+      result.getDeletedBlobs(), result.getReclaimedBytes());
+    LOGGER.info(summary);
+    response.setContentType("text/plain");
+    response.getWriter().println(summary);
+  }
+}
@@ -2,8 +2,14 @@ package com.google.sps.servlets;
 
 import com.google.appengine.api.blobstore.BlobstoreService;
 import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
+import com.google.appengine.api.blobstore.UploadOptions;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
 import java.io.IOException;
 import java.net.URL;
+import java.time.Clock;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -14,23 +20,60 @@ import javax.servlet.http.HttpServletResponse;
 public class CreateBlobstoreUrlServlet extends HttpServlet {
   private static final Logger log = Logger.getLogger(CreateBlobstoreUrlServlet.class.getName());
 
+  // A post has a single photo, so the whole upload is limited to the size of one.
+  public static final long MAX_UPLOAD_BYTES = 10 * 1024 * 1024;
+  public static final int UPLOAD_URL_POOL_SIZE = 5;
+
+  // Refills run in a task that POSTs back here, so the request that took the URL doesn't
+  // wait on the createUploadUrl calls. The pool is in memcache, so whichever instance serves
+  // the task fills it for all of them.
+  private static final Executor TASK_QUEUE_EXECUTOR =
+    command -> QueueFactory.getDefaultQueue().addAsync(
+      TaskOptions.Builder.withUrl("/createBlobstoreUrl").method(TaskOptions.Method.POST));
+
+  private final UploadUrlPool uploadUrlPool = new UploadUrlPool(
+    () -> getUploadUrl(BlobstoreServiceFactory.getBlobstoreService()),
+    UPLOAD_URL_POOL_SIZE, TASK_QUEUE_EXECUTOR, Clock.systemUTC(),
+    MemcacheServiceFactory.getMemcacheService());
+
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    // Creates an upload URL for sending the form submission.
-    BlobstoreService blobstoreService = BlobstoreServiceFactory.getBlobstoreService();
-    String uploadUrl = getUploadUrl(blobstoreService);
+    // Takes a ready upload URL for sending the form submission.
+    String uploadUrl = uploadUrlPool.take();
 
     response.setContentType("text/html");
     response.getWriter().println(uploadUrl);
   }
 
+  /** Refills the upload URL pool; only the task queue may call this. */
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // App Engine strips this header from requests that don't come from the task queue.
+    if (request.getHeader("X-AppEngine-QueueName") == null) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+    uploadUrlPool.refill();
+  }
+
+  /* Create a new upload URL, returning an empty string if Blobstore fails. */
   public String getUploadUrl(BlobstoreService blobstoreService) {
     String uploadUrl = "";
     try {
-      uploadUrl = blobstoreService.createUploadUrl("/postData");
+      uploadUrl = blobstoreService.createUploadUrl("/postData", getUploadOptions());
     } catch (Exception e) {
       log.severe(e.toString());
     }
     return uploadUrl;
   }
+
+  public UploadUrlPool getUploadUrlPool() {
+    return uploadUrlPool;
+  }
+
+  /* Limit the size of each uploaded file and of the upload as a whole. */
+  public static UploadOptions getUploadOptions() {
+    return UploadOptions.Builder.withMaxUploadSizeBytesPerBlob(MAX_UPLOAD_BYTES)
+      .maxUploadSizeBytes(MAX_UPLOAD_BYTES);
+  }
 }
@@ -0,0 +1,49 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.sps.data.Repositories;
+import java.io.IOException;
+import java.util.Map;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Servlet that counts a college's posts of today under each facet value. */
+@WebServlet("/facets")
+public class FacetsServlet extends HttpServlet {
+
+  private static final Gson gson = new Gson();
+
+  /**
+    * GETs an object with the counts of each facet, such as {"food": {"pizza": 4, "bagels": 2}},
+    * largest count first. The posts under a value are fetched from /postData with the facet
+    * as a parameter, e.g. /postData?collegeId=...&food=pizza.
+    */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String collegeId = request.getParameter("collegeId");
+    if (collegeId == null) {
+      response.setStatus(400);
+      return;
+    }
+
+    Map<String, Map<String, Integer>> counts = Repositories.posts().getFacetCounts(collegeId);
+    response.setContentType("application/json");
+    response.getWriter().println(gson.toJson(counts));
+  }
+}
@@ -0,0 +1,73 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.sps.metrics.LatencyHistogram;
+import com.google.sps.metrics.RequestMetrics;
+import java.io.IOException;
+import java.util.Map;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Servlet that shows the request metrics of this instance to admins. */
+@WebServlet("/metrics")
+public class MetricsServlet extends HttpServlet {
+  private static final Gson gson = new Gson();
+
+  /** GETs latency percentiles, histograms and Datastore usage for each endpoint. */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    UserService userService = UserServiceFactory.getUserService();
+    if (!userService.isUserLoggedIn() || !userService.isUserAdmin()) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    response.setContentType("application/json;");
+    response.getWriter().println(gson.toJson(toJson(RequestMetrics.getEndpoints())));
+  }
+
+  /* Convert the metrics of each endpoint to JSON, averaging the Datastore usage per request. */
+  static JsonObject toJson(Map<String, RequestMetrics.EndpointMetrics> endpoints) {
+    JsonObject json = new JsonObject();
+    for (Map.Entry<String, RequestMetrics.EndpointMetrics> endpoint : endpoints.entrySet()) {
+      RequestMetrics.EndpointMetrics metrics = endpoint.getValue();
+      LatencyHistogram latency = metrics.getLatency();
+      long requests = latency.getCount();
+
+      JsonObject endpointJson = new JsonObject();
+      endpointJson.addProperty("requests", requests);
+      endpointJson.addProperty("errors", metrics.getErrors());
+      endpointJson.addProperty("p50Millis", latency.getPercentileMillis(50));
+      endpointJson.addProperty("p95Millis", latency.getPercentileMillis(95));
+      endpointJson.addProperty("p99Millis", latency.getPercentileMillis(99));
+      endpointJson.addProperty("maxMillis", latency.getMaxMillis());
+      endpointJson.addProperty("meanMillis", requests == 0 ? 0 : latency.getTotalMillis() / requests);
+      endpointJson.add("latencyBuckets", gson.toJsonTree(latency.getBuckets()));
+      endpointJson.addProperty("datastoreRpcs", metrics.getDatastoreRpcs());
+      endpointJson.addProperty("datastoreEntities", metrics.getDatastoreEntities());
+      endpointJson.addProperty("datastoreRpcsPerRequest",
+        requests == 0 ? 0 : (double) metrics.getDatastoreRpcs() / requests);
+      json.add(endpoint.getKey(), endpointJson);
+    }
+    return json;
+  }
+}
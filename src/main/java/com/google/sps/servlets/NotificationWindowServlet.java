@@ -0,0 +1,80 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.sps.api.GmailConfiguration;
+import com.google.sps.data.NotificationWindows;
+import com.google.sps.metrics.MeteredDatastoreService;
+import java.io.IOException;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+// More information can be found here: http://www.slf4j.org/manual.html.
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+  * Servlet that emails the posts of the notification windows that have ended, meant to be run
+  * by cron at least once per window.
+  */
+@WebServlet("/notificationWindows")
+public class NotificationWindowServlet extends HttpServlet {
+  private static final DatastoreService datastore =
+    new MeteredDatastoreService(DatastoreServiceFactory.getDatastoreService());
+  private static final Logger LOGGER = LoggerFactory.getLogger(NotificationWindowServlet.class);
+
+  /**
+    * GETs the ended windows, emails their subscribers and drops their posts. A window some
+    * subscribers couldn't be emailed about is kept, and the next run emails only them. Only
+    * cron may call this.
+    */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // App Engine strips this header from requests that don't come from cron.
+    if (request.getHeader("X-Appengine-Cron") == null) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+    // Posts held back before windows were turned off are sent as if their window just ended.
+    long windowMillis = Math.max(1, NotificationWindows.getWindowMillis());
+    List<NotificationWindows.Window> windows =
+      NotificationWindows.getEndedWindows(datastore, System.currentTimeMillis(), windowMillis);
+
+    int sent = 0;
+    int posts = 0;
+    for (NotificationWindows.Window window : windows) {
+      // The outbox skips the emails already sent if a window is emailed again after a failure.
+      if (GmailConfiguration.notifyUsers(window)) {
+        NotificationWindows.remove(datastore, window);
+        sent++;
+        posts += window.getPosts().size();
+      } else {
+        LOGGER.warn("Keeping window {} of college {} for another try", window.getStart(),
+          window.getCollegeId());
+      }
+    }
+
+    String summary = String.format("Emailed %d of %d windows, of %d posts", sent, windows.size(),
+      posts);
+    LOGGER.info(summary);
+    response.setContentType("text/plain");
+    response.getWriter().println(summary);
+  }
+}
@@ -14,24 +14,38 @@
 
 package com.google.sps.servlets;
 
+import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.blobstore.BlobstoreService;
+import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
+import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.EntityNotFoundException;
 import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
-import com.google.appengine.api.datastore.Query.FilterOperator;
-import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.images.ImagesService;
+import com.google.appengine.api.images.ImagesServiceFactory;
 import com.google.sps.api.GmailConfiguration;
+import com.google.sps.data.BlobLifecycle;
+import com.google.sps.data.DatastoreFutures;
+import com.google.sps.data.ImageSniffer;
+import com.google.sps.data.ImageVariants;
+import com.google.sps.data.NotificationWindows;
 import com.google.sps.data.Post;
+import com.google.sps.data.PostDelta;
+import com.google.sps.data.PostFacets;
+import com.google.sps.data.PostRepository;
+import com.google.sps.data.Repositories;
+import com.google.sps.metrics.MeteredAsyncDatastoreService;
+import com.google.sps.metrics.MeteredDatastoreService;
 import com.google.gson.Gson;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Future;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -41,12 +55,20 @@ import javax.servlet.http.HttpServletResponse;
 @WebServlet("/postData")
 public class PostDataServlet extends HttpServlet {
   
-  public static final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  public static final DatastoreService datastore =
+    new MeteredDatastoreService(DatastoreServiceFactory.getDatastoreService());
+  private static final AsyncDatastoreService asyncDatastore =
+    new MeteredAsyncDatastoreService(DatastoreServiceFactory.getAsyncDatastoreService());
   public static final String ENTITY_KIND = "Post";
+  // Gson is thread-safe and caches what it learns about Post, so a single instance is shared.
+  private static final Gson gson = new Gson();
 
-  /* Convert an ArrayList of Post objects to JSON. */
-  private String listToJson(ArrayList<Post> alist) {
-    Gson gson = new Gson();
+  // How many posts to return for the orders that pick the top posts.
+  public static final int DEFAULT_LIMIT = 20;
+  public static final int MAX_LIMIT = 100;
+
+  /* Convert an ArrayList of Post objects to JSON. Public to provide visibility for benchmarks. */
+  public static String listToJson(ArrayList<Post> alist) {
     String json = gson.toJson(alist);
     return json;
   }
@@ -54,12 +76,22 @@ public class PostDataServlet extends HttpServlet {
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     String collegeId = request.getParameter("collegeId");
+    if (request.getParameter("since") != null) {
+      getChanges(collegeId, request.getParameter("since"), response);
+      return;
+    }
+    String sort = getParameter(request, "sort", PostRepository.SORT_TIME);
 
-    // Queries Datastore with the college ID and receives posts such that the soonest events are shown first.
-    Filter collegeIdFilter = new FilterPredicate("collegeId", FilterOperator.EQUAL, collegeId);
-    Query query = new Query(ENTITY_KIND).setFilter(collegeIdFilter).addSort("timeSort", SortDirection.ASCENDING);
-    PreparedQuery results = datastore.prepare(query);
-    ArrayList<Post> posts = Post.queryToPosts(results, datastore);
+    int limit = getLimit(request, sort);
+    Map<String, String> facets = getSelectedFacets(request);
+    if (!PostRepository.SORTS.contains(sort) || limit <= 0
+        || (!facets.isEmpty() && !sort.equals(PostRepository.SORT_TIME))) {
+      response.setStatus(400);
+      return;
+    }
+    ArrayList<Post> posts = facets.isEmpty()
+      ? Repositories.posts().getFeed(collegeId, sort, getMinutesNow(), limit)
+      : Repositories.posts().getFilteredFeed(collegeId, facets, limit);
 
     // Prepares the relevant posts in JSON.
     String json = listToJson(posts);
@@ -67,6 +99,68 @@ public class PostDataServlet extends HttpServlet {
     response.getWriter().println(json);
   }
 
+  /*
+   * Respond with what changed in the feed since the client's version, as an object holding the
+   * new version, the created posts and the ids of the deleted ones. Clients start with version 0,
+   * which returns the whole feed as a reset.
+   */
+  private static void getChanges(String collegeId, String since, HttpServletResponse response)
+      throws IOException {
+    long version;
+    try {
+      version = Long.parseLong(since);
+    } catch (NumberFormatException e) {
+      version = -1;
+    }
+    if (version < 0) {
+      response.setStatus(400);
+      return;
+    }
+    PostDelta delta = Repositories.posts().getChangesSince(collegeId, version);
+    response.setContentType("application/json");
+    response.getWriter().println(gson.toJson(delta));
+  }
+
+  /* Get the number of posts to return, or 0 if the limit isn't a positive number. */
+  private static int getLimit(HttpServletRequest request, String sort) {
+    String limit = request.getParameter("limit");
+    if (limit == null) {
+      // The whole feed is shown in time order, while the other orders pick the top posts.
+      return sort.equals(PostRepository.SORT_TIME) ? Integer.MAX_VALUE : DEFAULT_LIMIT;
+    }
+    try {
+      return Math.min(Integer.parseInt(limit), MAX_LIMIT);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /*
+   * Get the facet values the feed is filtered on, from the parameters named after the facets of
+   * PostFacets. Filtered feeds are only in time order.
+   */
+  private static Map<String, String> getSelectedFacets(HttpServletRequest request) {
+    Map<String, String> facets = new LinkedHashMap<String, String>();
+    for (String facet : PostFacets.FACETS) {
+      String value = request.getParameter(facet);
+      if (value != null) {
+        facets.put(facet, value.trim().toLowerCase(Locale.ROOT));
+      }
+    }
+    return facets;
+  }
+
+  /* Get the minutes since midnight in the time zone of the posts. */
+  private static int getMinutesNow() {
+    Calendar nowTime = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+    return nowTime.get(Calendar.HOUR_OF_DAY) * 60 + nowTime.get(Calendar.MINUTE);
+  }
+
+  private static String getParameter(HttpServletRequest request, String name, String defaultValue) {
+    String value = request.getParameter(name);
+    return value == null ? defaultValue : value;
+  }
+
   /* On the POST command, serializes the request information into Post objects,
    * stores the post as entity in Datastore.
    */
@@ -74,17 +168,42 @@ public class PostDataServlet extends HttpServlet {
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
     String collegeId = request.getParameter("collegeId");
 
+    BlobstoreService blobstoreService = BlobstoreServiceFactory.getBlobstoreService();
+    List<BlobKey> uploads = BlobLifecycle.getUploads(blobstoreService, request);
+    // Every upload is swept unless the post using it is stored and claims it, so nothing leaks
+    // if the request fails from here on.
+    BlobLifecycle.recordUploads(datastore, uploads, null, null);
+
     Post newPost = new Post();
     newPost.requestToPost(request);
 
+    // Files that aren't images are deleted right away, and so is the post using one.
+    List<BlobKey> nonImages = ImageSniffer.deleteNonImages(blobstoreService, uploads);
+    if (newPost.getBlobKey() != null && nonImages.contains(new BlobKey(newPost.getBlobKey()))) {
+      newPost.rejectImage();
+    }
+
     if (newPost.valid) {
-      Entity collegeEntity = new Entity("College", collegeId);
-      datastore.put(collegeEntity);
+      String newPostId = Repositories.posts().save(collegeId, newPost);
+
+      // Claim the image while it is resized, which doesn't depend on the record.
+      Future<Key> claimed =
+        BlobLifecycle.claimUploadAsync(asyncDatastore, newPost.getBlobKey(), newPostId);
 
-      Entity newPostEntity = newPost.postToEntity(ENTITY_KIND);
-      datastore.put(newPostEntity);
+      // Resize the image now so the feed never has to download the original.
+      if (newPost.getBlobKey() != null) {
+        ImagesService imagesService = ImagesServiceFactory.getImagesService();
+        ImageVariants.createVariants(datastore, imagesService, newPost.getBlobKey());
+      }
 
-      GmailConfiguration.notifyUsers(collegeId, newPost);
+      DatastoreFutures.await(claimed);
+      if (NotificationWindows.isEnabled() && !newPost.getPostId().isEmpty()) {
+        // The post is emailed with the others of its window once the window ends.
+        NotificationWindows.add(datastore, collegeId, newPost, System.currentTimeMillis(),
+          NotificationWindows.getWindowMillis());
+      } else {
+        GmailConfiguration.notifyUsers(collegeId, newPost);
+      }
     }
 
     String redirectURL ="/find-events.html?" + "collegeid=" + collegeId;
@@ -0,0 +1,140 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.data.Post;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+// More information can be found here: http://www.slf4j.org/manual.html.
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+  * Servlet that rewrites stored posts with Post.INDEXED_PROPERTIES as their only indexed
+  * properties, dropping the index rows of the others. Admins run it once after deploying.
+  */
+@WebServlet("/migratePostIndexes")
+public class PostIndexMigrationServlet extends HttpServlet {
+  private static final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  private static final Logger LOGGER = LoggerFactory.getLogger(PostIndexMigrationServlet.class);
+
+  public static final int BATCH_SIZE = 100;
+  // Stops well before the request deadline; the cursor printed lets the next request go on.
+  private static final long TIME_BUDGET_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  /** Outcome of migrating one batch of posts. */
+  public static final class BatchResult {
+    private final int read;
+    private final int rewritten;
+    private final Cursor cursor;
+
+    BatchResult(int read, int rewritten, Cursor cursor) {
+      this.read = read;
+      this.rewritten = rewritten;
+      this.cursor = cursor;
+    }
+
+    public int getRead() {
+      return read;
+    }
+
+    public int getRewritten() {
+      return rewritten;
+    }
+
+    /** Get where the next batch starts, or null after the last batch. */
+    public Cursor getCursor() {
+      return cursor;
+    }
+  }
+
+  /** GETs batches of posts, starting at the cursor parameter, and rewrites them. */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    UserService userService = UserServiceFactory.getUserService();
+    if (!userService.isUserLoggedIn() || !userService.isUserAdmin()) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    Cursor cursor = null;
+    try {
+      String cursorParameter = request.getParameter("cursor");
+      cursor = cursorParameter == null ? null : Cursor.fromWebSafeString(cursorParameter);
+    } catch (IllegalArgumentException e) {
+      response.setStatus(400);
+      return;
+    }
+    long deadline = System.currentTimeMillis() + TIME_BUDGET_MILLIS;
+    int read = 0;
+    int rewritten = 0;
+    do {
+      BatchResult result = migrateBatch(datastore, cursor, BATCH_SIZE);
+      read += result.getRead();
+      rewritten += result.getRewritten();
+      cursor = result.getCursor();
+    } while (cursor != null && System.currentTimeMillis() < deadline);
+
+    String summary = String.format("Read %d posts, rewrote %d", read, rewritten);
+    LOGGER.info(summary);
+    response.setContentType("text/plain");
+    response.getWriter().println(summary);
+    if (cursor != null) {
+      response.getWriter().println("Continue with cursor=" + cursor.toWebSafeString());
+    }
+  }
+
+  /**
+    * Apply the indexing policy to a batch of posts, putting only the ones that changed.
+    *
+    * @param cursor where to start, or null for the first batch
+    */
+  public static BatchResult migrateBatch(DatastoreService datastore, Cursor cursor, int batchSize) {
+    FetchOptions options = FetchOptions.Builder.withLimit(batchSize);
+    if (cursor != null) {
+      options.startCursor(cursor);
+    }
+    QueryResultList<Entity> posts =
+      datastore.prepare(new Query(PostDataServlet.ENTITY_KIND)).asQueryResultList(options);
+
+    List<Entity> changed = new ArrayList<Entity>();
+    for (Entity post : posts) {
+      if (Post.applyIndexingPolicy(post)) {
+        changed.add(post);
+      }
+    }
+    if (!changed.isEmpty()) {
+      datastore.put(changed);
+    }
+    Cursor next = posts.size() < batchSize ? null : posts.getCursor();
+    return new BatchResult(posts.size(), changed.size(), next);
+  }
+}
@@ -0,0 +1,60 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.Post;
+import com.google.sps.data.Repositories;
+import java.io.IOException;
+import java.util.ArrayList;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Servlet that searches a college's posts of today by their words. */
+@WebServlet("/search")
+public class SearchServlet extends HttpServlet {
+
+  /**
+    * GETs the posts matching the words in q, best ranked first. Takes the same limit as the
+    * ranked feeds of /postData.
+    */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String collegeId = request.getParameter("collegeId");
+    String query = request.getParameter("q");
+    int limit = getLimit(request.getParameter("limit"));
+    if (collegeId == null || query == null || limit <= 0) {
+      response.setStatus(400);
+      return;
+    }
+
+    ArrayList<Post> posts = Repositories.posts().search(collegeId, query, limit);
+    response.setContentType("application/json");
+    response.getWriter().println(PostDataServlet.listToJson(posts));
+  }
+
+  /* Get the number of posts to return, or 0 if the limit isn't a positive number. */
+  private static int getLimit(String limit) {
+    if (limit == null) {
+      return PostDataServlet.DEFAULT_LIMIT;
+    }
+    try {
+      return Math.min(Integer.parseInt(limit), PostDataServlet.MAX_LIMIT);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
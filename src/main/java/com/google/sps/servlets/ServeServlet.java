@@ -3,6 +3,11 @@ package com.google.sps.servlets;
 import com.google.appengine.api.blobstore.BlobKey;
 import com.google.appengine.api.blobstore.BlobstoreService;
 import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
+import com.google.appengine.api.blobstore.ByteRange;
+import com.google.appengine.api.blobstore.RangeFormatException;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.sps.data.ImageVariants;
 import java.io.IOException;
 import java.net.URL;
 import javax.servlet.annotation.WebServlet;
@@ -13,6 +18,13 @@ import javax.servlet.http.HttpServletResponse;
 @WebServlet("/serve")
 public class ServeServlet extends HttpServlet {
 
+  public static final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  // Blob keys are never reused, so the image at a URL never changes.
+  public static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+  // The original stands in for a missing variant, which may be stored later, so browsers
+  // check back before reusing it.
+  public static final String FALLBACK_CACHE_CONTROL = "public, no-cache";
+
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     BlobstoreService blobstoreService = BlobstoreServiceFactory.getBlobstoreService();
@@ -20,10 +32,93 @@ public class ServeServlet extends HttpServlet {
   }
 
   // Adds helper function to provide visibility for testing.
+  // Serves the resized variant named by the size parameter if there is one, otherwise the original image.
   public void serveImage(HttpServletRequest request, HttpServletResponse response, BlobstoreService blobstoreService) throws IOException {
     if (request.getParameter("blobKey") != null) {
+      String size = request.getParameter("size");
+      String originalTag = "\"" + request.getParameter("blobKey") + "\"";
+      response.setHeader("Accept-Ranges", "bytes");
+
+      if (size != null) {
+        // A variant never changes once stored, so a client holding it needs no lookup.
+        String variantTag = "\"" + request.getParameter("blobKey") + "-" + size + "\"";
+        if (isCached(request, variantTag)) {
+          setCacheHeaders(response, CACHE_CONTROL, variantTag);
+          response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+          return;
+        }
+        byte[] variant = ImageVariants.getVariant(datastore, request.getParameter("blobKey"), size);
+        if (variant != null) {
+          setCacheHeaders(response, CACHE_CONTROL, variantTag);
+          serveBytes(variant, getRange(request, variantTag), response);
+          return;
+        }
+      }
+
+      setCacheHeaders(response, size == null ? CACHE_CONTROL : FALLBACK_CACHE_CONTROL, originalTag);
+      if (isCached(request, originalTag)) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
+      }
+      ByteRange range = getRange(request, originalTag);
       BlobKey blobKey = new BlobKey(request.getParameter("blobKey"));
-      blobstoreService.serve(blobKey, response);
+      if (range != null) {
+        blobstoreService.serve(blobKey, range, response);
+      } else {
+        blobstoreService.serve(blobKey, response);
+      }
+    }
+  }
+
+  private void setCacheHeaders(HttpServletResponse response, String cacheControl, String eTag) {
+    response.setHeader("Cache-Control", cacheControl);
+    response.setHeader("ETag", eTag);
+  }
+
+  // Get the single byte range requested, or null to send the whole image.
+  // Ranges that can't be parsed are ignored, as are ranges for a different version of the image.
+  private ByteRange getRange(HttpServletRequest request, String eTag) {
+    String rangeHeader = request.getHeader("Range");
+    String ifRange = request.getHeader("If-Range");
+    if (rangeHeader == null || (ifRange != null && !ifRange.equals(eTag))) {
+      return null;
+    }
+    try {
+      return ByteRange.parse(rangeHeader);
+    } catch (RangeFormatException e) {
+      return null;
     }
   }
+
+  // Write a stored image, or the requested part of it.
+  private void serveBytes(byte[] data, ByteRange range, HttpServletResponse response) throws IOException {
+    response.setContentType(ImageVariants.CONTENT_TYPE);
+    if (range == null) {
+      response.setContentLength(data.length);
+      response.getOutputStream().write(data);
+      return;
+    }
+
+    // A negative start asks for the last bytes of the image.
+    long first = range.getStart() < 0 ? Math.max(0, data.length + range.getStart()) : range.getStart();
+    long last = range.hasEnd() ? Math.min(range.getEnd(), data.length - 1) : data.length - 1;
+    if (first >= data.length || first > last) {
+      response.setHeader("Content-Range", "bytes */" + data.length);
+      response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+      return;
+    }
+
+    int length = (int) (last - first + 1);
+    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+    response.setHeader("Content-Range", "bytes " + first + "-" + last + "/" + data.length);
+    response.setContentLength(length);
+    response.getOutputStream().write(data, (int) first, length);
+  }
+
+  // The client already has the image if it sends the same ETag. No Last-Modified is sent, so
+  // If-Modified-Since is never answered.
+  private boolean isCached(HttpServletRequest request, String eTag) {
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    return ifNoneMatch != null && (ifNoneMatch.equals("*") || ifNoneMatch.contains(eTag));
+  }
 }
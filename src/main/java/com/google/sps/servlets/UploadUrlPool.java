@@ -0,0 +1,243 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.IdentifiableValue;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import java.io.Serializable;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+  * Keeps a few Blobstore upload URLs ready so that opening the new post form doesn't wait
+  * for one to be created.
+  *
+  * The URLs are kept in memcache, so every instance takes from and refills the same pool.
+  * Each URL can only be used once, so taking a URL asks the given executor for a refill. The
+  * executor may run the refill somewhere else, such as a task that calls refill() later on
+  * any instance; a refill that hasn't run after a minute is asked for again. Blobstore upload
+  * URLs expire after 10 minutes; URLs are discarded well before that. When the pool is empty,
+  * or memcache evicted it, a URL is created on the spot. The counts of hits, misses and
+  * refills are kept per instance.
+  */
+public final class UploadUrlPool {
+
+  public static final long MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(8);
+  public static final long REFILL_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private static final long NO_REFILL = Long.MIN_VALUE;
+  private static final String POOL_KEY = "uploadUrlPool";
+  // Instances change the pool with compare-and-set, retrying this many times when they race.
+  private static final int CAS_ATTEMPTS = 5;
+
+  private static final Logger log = Logger.getLogger(UploadUrlPool.class.getName());
+
+  private static final class PooledUrl implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final String url;
+    final long createdAt;
+
+    PooledUrl(String url, long createdAt) {
+      this.url = url;
+      this.createdAt = createdAt;
+    }
+  }
+
+  private final Supplier<String> createUrl;
+  private final int capacity;
+  private final Executor executor;
+  private final Clock clock;
+  private final MemcacheService memcache;
+
+  // When the pending refill was asked for, or NO_REFILL if none is pending.
+  private final AtomicLong refillRequestedAt = new AtomicLong(NO_REFILL);
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong expired = new AtomicLong();
+  private final AtomicLong refills = new AtomicLong();
+  private final AtomicLong lastRefillMillis = new AtomicLong();
+  private final AtomicLong totalRefillMillis = new AtomicLong();
+
+  /**
+    * Create an empty pool. It fills up after the first URL is taken.
+    *
+    * @param createUrl creates a new upload URL, returning an empty string on failure
+    * @param capacity number of URLs to keep ready
+    * @param executor starts the refills, which end up calling refill()
+    * @param clock tells the age of the URLs
+    * @param memcache holds the URLs, oldest first, for every instance
+    */
+  public UploadUrlPool(Supplier<String> createUrl, int capacity, Executor executor, Clock clock,
+      MemcacheService memcache) {
+    this.createUrl = createUrl;
+    this.capacity = capacity;
+    this.executor = executor;
+    this.clock = clock;
+    this.memcache = memcache;
+  }
+
+  /**
+    * Take an unused upload URL, creating one if none is ready, and start a refill.
+    *
+    * @return upload URL, or an empty string if one couldn't be created
+    */
+  public String take() {
+    String url = poll();
+    if (url != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+      url = createUrl.get();
+    }
+    refillAsync();
+    return url;
+  }
+
+  /*
+   * Remove the oldest URL that is still young enough from the pool, dropping the older ones.
+   * Returns null if none is ready or other instances kept changing the pool.
+   */
+  @SuppressWarnings("unchecked")
+  private String poll() {
+    for (int attempt = 0; attempt < CAS_ATTEMPTS; attempt++) {
+      IdentifiableValue pooled = memcache.getIdentifiable(POOL_KEY);
+      if (pooled == null || ((List<PooledUrl>) pooled.getValue()).isEmpty()) {
+        return null;
+      }
+      List<PooledUrl> urls = new ArrayList<PooledUrl>((List<PooledUrl>) pooled.getValue());
+      String url = null;
+      int dropped = 0;
+      while (url == null && !urls.isEmpty()) {
+        PooledUrl first = urls.remove(0);
+        if (clock.millis() - first.createdAt < MAX_AGE_MILLIS) {
+          url = first.url;
+        } else {
+          dropped++;
+        }
+      }
+      if (memcache.putIfUntouched(POOL_KEY, pooled, urls)) {
+        expired.addAndGet(dropped);
+        return url;
+      }
+    }
+    return null;
+  }
+
+  /* Add new URLs after the ones in the pool, returning false if they couldn't be added. */
+  @SuppressWarnings("unchecked")
+  private boolean add(List<PooledUrl> newUrls) {
+    for (int attempt = 0; attempt < CAS_ATTEMPTS; attempt++) {
+      IdentifiableValue pooled = memcache.getIdentifiable(POOL_KEY);
+      if (pooled == null) {
+        if (memcache.put(POOL_KEY, new ArrayList<PooledUrl>(newUrls), null,
+            SetPolicy.ADD_ONLY_IF_NOT_PRESENT)) {
+          return true;
+        }
+        continue;
+      }
+      List<PooledUrl> urls = new ArrayList<PooledUrl>((List<PooledUrl>) pooled.getValue());
+      urls.addAll(newUrls);
+      if (memcache.putIfUntouched(POOL_KEY, pooled, urls)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /* Ask for a refill unless the pool is full or a recent refill is still pending. */
+  void refillAsync() {
+    long now = clock.millis();
+    long requestedAt = refillRequestedAt.get();
+    if (size() >= capacity
+        || (requestedAt != NO_REFILL && now - requestedAt < REFILL_TIMEOUT_MILLIS)
+        || !refillRequestedAt.compareAndSet(requestedAt, now)) {
+      return;
+    }
+    try {
+      executor.execute(this::refill);
+    } catch (RuntimeException e) {
+      refillRequestedAt.set(NO_REFILL);
+      log.warning("Could not start upload URL refill: " + e);
+    }
+  }
+
+  /** Create upload URLs until the pool is full or one can't be created. */
+  public void refill() {
+    try {
+      long start = clock.millis();
+      List<PooledUrl> newUrls = new ArrayList<PooledUrl>();
+      for (int missing = capacity - size(); newUrls.size() < missing; ) {
+        String url = createUrl.get();
+        if (url.isEmpty()) {
+          break;
+        }
+        newUrls.add(new PooledUrl(url, clock.millis()));
+      }
+      int created = newUrls.isEmpty() || add(newUrls) ? newUrls.size() : 0;
+      if (created < newUrls.size()) {
+        log.warning("Could not add " + newUrls.size() + " upload URLs to the pool");
+      }
+      long elapsed = clock.millis() - start;
+      refills.incrementAndGet();
+      lastRefillMillis.set(elapsed);
+      totalRefillMillis.addAndGet(elapsed);
+      log.info(String.format(
+        "Created %d upload URLs in %d ms; pool size %d, hits %d, misses %d, expired %d",
+        created, elapsed, size(), hits.get(), misses.get(), expired.get()));
+    } finally {
+      refillRequestedAt.set(NO_REFILL);
+    }
+  }
+
+  /* Pool metrics. */
+  @SuppressWarnings("unchecked")
+  public int size() {
+    List<PooledUrl> urls = (List<PooledUrl>) memcache.get(POOL_KEY);
+    return urls == null ? 0 : urls.size();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getExpired() {
+    return expired.get();
+  }
+
+  public long getRefills() {
+    return refills.get();
+  }
+
+  public long getLastRefillMillis() {
+    return lastRefillMillis.get();
+  }
+
+  public long getTotalRefillMillis() {
+    return totalRefillMillis.get();
+  }
+}
@@ -14,18 +14,17 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.EntityNotFoundException;
-import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
 import com.google.sps.data.Email;
 import com.google.sps.data.InputPattern;
+import com.google.sps.data.Interests;
+import com.google.sps.data.Repositories;
 import com.google.sps.api.GmailConfiguration;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -39,7 +38,6 @@ import org.slf4j.LoggerFactory;
 @WebServlet("/user")
 public class UserDataServlet extends HttpServlet {
 
-  private static final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
   private static final Logger LOGGER = LoggerFactory.getLogger(UserDataServlet.class);
 
   /** POST a user's information. */
@@ -51,13 +49,15 @@ public class UserDataServlet extends HttpServlet {
     String email = request.getParameter("email");
     String college = request.getParameter("cID");
     String subscription = request.getParameter("email-notif");
+    Interests interests = getInterests(request);
 
     // Before we do anything with these inputs, we validate that appropriate characters
     // were used and that the payload is unlikely to be malicious.
     if (!InputPattern.PERSON_NAME.matcher(name).matches() || name.length() > 35 ||
         !InputPattern.GOOGLE_EMAIL.matcher(email).matches() || email.length() > 35 ||
         !InputPattern.POSITIVE_INTEGER.matcher(college).matches() ||
-        !InputPattern.TEXT.matcher(subscription).matches() || subscription.length() > 30) {
+        !InputPattern.TEXT.matcher(subscription).matches() || subscription.length() > 30 ||
+        interests == null) {
 
       // If these were invalid, the user likely didn't use our official form to
       // make this request, so we just silently reject the POST.
@@ -70,23 +70,16 @@ public class UserDataServlet extends HttpServlet {
     if (subscription.equals("unsubscribe")) {
 
       // Remove user if in database.
-      Key userKey = KeyFactory.createKey("User", email);
-      try {
-        Entity task = datastore.get(userKey);
-        datastore.delete(userKey);
+      if (Repositories.users().unsubscribe(email)) {
         LOGGER.info("User was unsubscribed and removed from Datastore.");
-      } catch (EntityNotFoundException e) {
+      } else {
         LOGGER.warn("User was unable to unsubscribe but was never subscribed.");
       }
 
     } else {
 
-      Entity userEntity = new Entity("User", email);
-      userEntity.setProperty("name", name);
-      userEntity.setProperty("college", college);
-
-      // Datastores updates the entity if it existed before based on email key.
-      datastore.put(userEntity);
+      // Updates the user if they subscribed before, keeping the colleges' subscriber counts in step.
+      Repositories.users().subscribe(email, name, college, interests);
       LOGGER.info("User was subscribed to email notifications and added to Datastore.");
 
       // Send a welcome email.
@@ -95,4 +88,47 @@ public class UserDataServlet extends HttpServlet {
 
     response.sendRedirect("/index.html");
   }
+
+  /**
+    * Read the optional interests of a subscriber: comma-separated food types and keywords, and
+    * a distance in miles from a lat and lng. Blank fields are left out.
+    *
+    * @return the interests, or null if one is malformed
+    */
+  private static Interests getInterests(HttpServletRequest request) {
+    String foodTypes = getOptionalParameter(request, "food-types");
+    String keywords = getOptionalParameter(request, "keywords");
+    String maxDistance = getOptionalParameter(request, "max-distance");
+    String lat = getOptionalParameter(request, "lat");
+    String lng = getOptionalParameter(request, "lng");
+    if ((foodTypes != null && (!InputPattern.isText(foodTypes) || foodTypes.length() > 100)) ||
+        (keywords != null && (!InputPattern.isText(keywords) || keywords.length() > 100))) {
+      return null;
+    }
+    if (maxDistance != null && (!isNumber(maxDistance) || !InputPattern.isDouble(lat) ||
+        !InputPattern.isDouble(lng))) {
+      return null;
+    }
+
+    try {
+      return new Interests(split(foodTypes), split(keywords),
+        lat == null ? 0 : Double.parseDouble(lat), lng == null ? 0 : Double.parseDouble(lng),
+        maxDistance == null ? 0 : Double.parseDouble(maxDistance));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static String getOptionalParameter(HttpServletRequest request, String name) {
+    String value = request.getParameter(name);
+    return value == null || value.trim().isEmpty() ? null : value.trim();
+  }
+
+  private static boolean isNumber(String value) {
+    return InputPattern.isPositiveInteger(value) || InputPattern.isDouble(value);
+  }
+
+  private static List<String> split(String values) {
+    return values == null ? new ArrayList<String>() : Arrays.asList(values.split(","));
+  }
 }
@@ -0,0 +1,111 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.utils.SystemProperty;
+import com.google.sps.api.GmailAPI;
+import com.google.sps.data.College;
+import com.google.sps.data.Email;
+import com.google.sps.data.InputPattern;
+import com.google.sps.data.Post;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+// More information can be found here: http://www.slf4j.org/manual.html.
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+  * Servlet that App Engine calls when it starts a new instance, before the instance gets user
+  * requests. Initializes everything that would otherwise be set up by the first request.
+  */
+@WebServlet("/_ah/warmup")
+public class WarmupServlet extends HttpServlet {
+  private static final Logger LOGGER = LoggerFactory.getLogger(WarmupServlet.class);
+
+  /** A part of the app to initialize. */
+  interface Component {
+    void initialize() throws Exception;
+  }
+
+  /** GETs every component initialized and logs how long each one took. */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    long start = System.currentTimeMillis();
+    Map<String, Long> timings = warmUp(getComponents());
+    String report = "Warmed up in " + (System.currentTimeMillis() - start) + " ms: " + timings;
+
+    LOGGER.info(report);
+    response.setContentType("text/plain");
+    response.getWriter().println(report);
+  }
+
+  /**
+    * Get the components to initialize, in order.
+    *
+    * @return components by name
+    */
+  static Map<String, Component> getComponents() {
+    Map<String, Component> components = new LinkedHashMap<String, Component>();
+
+    // Opens the connection to Datastore with the cheapest possible query.
+    components.put("datastore", () -> PostDataServlet.datastore
+      .prepare(new Query(College.ENTITY_KIND).setKeysOnly())
+      .asList(FetchOptions.Builder.withLimit(1)));
+    // Lets the shared Gson instance inspect Post.
+    components.put("gson", () -> {
+      ArrayList<Post> posts = new ArrayList<Post>();
+      posts.add(new Post());
+      PostDataServlet.listToJson(posts);
+    });
+    // Compiles the regexes when the class is loaded.
+    components.put("inputPatterns", () -> InputPattern.PERSON_NAME.matcher("noms").matches());
+    components.put("emailTemplates", Email::loadTemplates);
+    // Fetches the Gmail secrets, which only exist in production.
+    if (SystemProperty.environment.value() == SystemProperty.Environment.Value.Production) {
+      components.put("gmail", GmailAPI::getGmailService);
+    }
+    return components;
+  }
+
+  /**
+    * Initialize each component, continuing past the ones that fail.
+    *
+    * @param components components by name
+    * @return milliseconds each component took, or -1 if it failed
+    */
+  static Map<String, Long> warmUp(Map<String, Component> components) {
+    Map<String, Long> timings = new LinkedHashMap<String, Long>();
+    for (Map.Entry<String, Component> component : components.entrySet()) {
+      long start = System.currentTimeMillis();
+      try {
+        component.getValue().initialize();
+        timings.put(component.getKey(), System.currentTimeMillis() - start);
+      } catch (Exception e) {
+        LOGGER.warn("Could not warm up " + component.getKey() + ": " + e);
+        timings.put(component.getKey(), -1L);
+      }
+    }
+    return timings;
+  }
+}
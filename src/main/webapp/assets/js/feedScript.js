@@ -52,6 +52,7 @@
  * @property {boolean} happeningNow - Whether the event is happening right now.
  * @property {number} distance - The maximum distance from the user to the event.
  * @property {Array<string>} keywords - Keywords to include.
+ * @property {string} foodType - The type of food, lowercased, or '' for any.
  */
 
 //
@@ -64,6 +65,9 @@ let collegeLocation = null;
 /** @type {Array<PostInfo>} */
 let posts = null;
 
+/** @type {number} */
+let postsVersion = 0;
+
 /** @type {google.maps.Map} */
 let map;
 
@@ -141,10 +145,14 @@ const NUM_PEOPLE_FILTER_DEFAULT = 0;
 const HAPPENING_NOW_FILTER_DEFAULT = false;
 const DISTANCE_FILTER_DEFAULT = 3;
 const KEYWORDS_FILTER_DEFAULT = [];
+const FOOD_TYPE_FILTER_DEFAULT = '';
 
 // Conversion constant for degrees lat to miles.
 const MILES_PER_DEGREE_LAT = 69.172;
 
+// How often the feed asks for changes, in milliseconds.
+const POLL_INTERVAL_MS = 30000;
+
 //
 // Event listener registration
 //
@@ -185,6 +193,7 @@ async function onLoad() {
   const happeningNowCheckbox = document.getElementById('happening-now');
   const distanceSlider = document.getElementById('distance');
   const keywordsInput = document.getElementById('keywords');
+  const foodTypeSelect = document.getElementById('food-type');
   modalMonth = document.getElementById('modal-month');
   modalDay = document.getElementById('modal-day');
   const modalOrganizationName = document.getElementById('modal-org-name');
@@ -202,6 +211,7 @@ async function onLoad() {
   happeningNowCheckbox.addEventListener('change', filterAndUpdatePagePosts);
   distanceSlider.addEventListener('change', filterAndUpdatePagePosts);
   keywordsInput.addEventListener('input', filterAndUpdatePagePosts);
+  foodTypeSelect.addEventListener('change', filterAndUpdatePagePosts);
   modalFileUpload.addEventListener('change', displayUploadedFile);
   modalMonth.addEventListener('input', showDateTipOnModal);
   modalDay.addEventListener('input', showDateTipOnModal);
@@ -227,8 +237,13 @@ async function onLoad() {
 
   // Add the posts to the page, after which we can add the map
   // as well because the map relies on the post information existing.
-  posts = await fetchPosts(collegeId);
+  applyPostChanges(await fetchPostChanges(collegeId, 0));
   addPosts(posts);
+  pollPostChanges(collegeId);
+
+  // The counts of each type of food are refreshed whenever the filters are opened.
+  updateFoodTypeFilter(collegeId);
+  toggleFiltersButton.addEventListener('click', () => updateFoodTypeFilter(collegeId));
 
   // Add the embedded map to the page.
   addMapToPage();
@@ -414,46 +429,121 @@ async function fetchCollegeLocation(collegeid) {
 }
 
 /**
- * A GET request that fetches all posts on this current day.
+ * A GET request that fetches how many of today's posts fall under each facet
+ * value, counted by the server as posts are created and expire.
+ * @param {number} collegeId - The ID of the college we want counts for.
+ * @return {Object} - The counts of each value of the 'food', 'feeds' and
+ *     'time' facets, largest count first.
+ */
+async function fetchFacetCounts(collegeId) {
+  const response = await fetch('/facets?collegeId=' + collegeId);
+  return await response.json();
+}
+
+/**
+ * Lists each type of food in the food type filter with its number of posts,
+ * such as "pizza (4)", keeping the type selected if there still is one.
+ * @param {number} collegeId - The ID of the college we want counts for.
+ */
+async function updateFoodTypeFilter(collegeId) {
+  const foodTypeSelect = document.getElementById('food-type');
+  const selected = foodTypeSelect.value;
+  const counts = (await fetchFacetCounts(collegeId))['food'];
+
+  foodTypeSelect.options.length = 1;
+  for (const [foodType, count] of Object.entries(counts)) {
+    foodTypeSelect.add(new Option(`${foodType} (${count})`, foodType));
+  }
+  foodTypeSelect.value = selected in counts ? selected : FOOD_TYPE_FILTER_DEFAULT;
+}
+
+/**
+ * A GET request that fetches what changed in the feed since a version of it.
  * @param {number} collegeId - The ID of the college we want posts for.
- * @return {array} - The posts.
+ * @param {number} since - The version the page has, or 0 for the whole feed.
+ * @return {Object} - The new version, whether the feed was reset, the posts
+ *     created since the version and the ids of the posts deleted since then.
  */
-async function fetchPosts(collegeId) {
-  // Send the college Id.
-  const url = '/postData?collegeId=' + collegeId;
-  const response = await fetch(url);
+async function fetchPostChanges(collegeId, since) {
+  const response = await fetch('/postData?collegeId=' + collegeId + '&since=' + since);
   const message = await response.json();
+  return {
+    version: message['version'],
+    reset: message['reset'],
+    posts: message['posts'].map(messageToPost),
+    deleted: message['deleted'],
+  };
+}
 
-  const posts = [];
-
-  for (let i = 0; i < message.length; i++) {
-    const year = message[i]['year'];
-    const month = message[i]['month'];
-    const day = message[i]['day'];
-    const startHour = message[i]['startHour'];
-    const endHour = message[i]['endHour'];
-    const startMinute = message[i]['startMinute'];
-    const endMinute = message[i]['endMinute'];
-
-    const post = {
-      id: message[i]['postId'],
-      organizationName: message[i]['organizationName'],
-      postDateTime: new Date(),
-      eventStartTime: new Date(year, month, day, startHour, startMinute, 0, 0),
-      eventEndTime: new Date(year, month, day, endHour, endMinute, 0, 0),
-      location: {
-        name: message[i]['location'],
-        lat: message[i]['lat'],
-        long: message[i]['lng'],
-      },
-      numOfPeopleFoodWillFeed: message[i]['numberOfPeopleItFeeds'],
-      foodType: message[i]['typeOfFood'],
-      description: message[i]['description'],
-      blobKey: message[i]['blobKey'],
-    };
-    posts.push(post);
+/**
+ * Applies changes fetched from the server to the page's posts, keeping them
+ * in time order. A post the page already has is only added once.
+ * @param {Object} changes - The changes, as returned by fetchPostChanges.
+ */
+function applyPostChanges(changes) {
+  if (changes.reset) {
+    posts = changes.posts;
+  } else {
+    const newPosts = changes.posts.filter((p) => !posts.some((q) => q.id === p.id));
+    posts = posts.filter((p) => !changes.deleted.includes(p.id)).concat(newPosts);
+    posts.sort((a, b) => a.eventStartTime - b.eventStartTime);
   }
-  return posts;
+  postsVersion = changes.version;
+}
+
+/**
+ * Converts a post sent by the server into the page's post format.
+ * @param {Object} message - The post as serialized by the server.
+ * @return {PostInfo} - The post.
+ */
+function messageToPost(message) {
+  const year = message['year'];
+  const month = message['month'];
+  const day = message['day'];
+  const startHour = message['startHour'];
+  const endHour = message['endHour'];
+  const startMinute = message['startMinute'];
+  const endMinute = message['endMinute'];
+
+  return {
+    id: message['postId'],
+    organizationName: message['organizationName'],
+    postDateTime: new Date(),
+    eventStartTime: new Date(year, month, day, startHour, startMinute, 0, 0),
+    eventEndTime: new Date(year, month, day, endHour, endMinute, 0, 0),
+    location: {
+      name: message['location'],
+      lat: message['lat'],
+      long: message['lng'],
+    },
+    numOfPeopleFoodWillFeed: message['numberOfPeopleItFeeds'],
+    foodType: message['typeOfFood'],
+    description: message['description'],
+    blobKey: message['blobKey'],
+  };
+}
+
+/**
+ * Keeps the page's posts up to date by fetching the posts created and
+ * expired since the page's version of the feed every POLL_INTERVAL_MS, while
+ * the page is visible. A failed poll is retried at the next interval.
+ * @param {number} collegeId - The ID of the college we want posts for.
+ */
+function pollPostChanges(collegeId) {
+  setInterval(async () => {
+    if (document.visibilityState !== 'visible') {
+      return;
+    }
+    try {
+      const changes = await fetchPostChanges(collegeId, postsVersion);
+      if (changes.version !== postsVersion || changes.reset) {
+        applyPostChanges(changes);
+        filterAndUpdatePagePosts();
+      }
+    } catch (err) {
+      console.warn(err);
+    }
+  }, POLL_INTERVAL_MS);
 }
 
 /**
@@ -706,12 +796,12 @@ async function addPosts(posts) {
 }
 
 /**
- * Given a post's blobKey, creates a local URL for the image.
+ * Given a post's blobKey, creates a local URL for the card-sized image.
  * @param {String} blobKey
  * @return {String}
  */
 async function getImageUrl(blobKey) {
-  const url = '/serve?blobKey=' + blobKey;
+  const url = '/serve?blobKey=' + blobKey + '&size=card';
   const response = await fetch(url, {
     method: 'GET',
   });
@@ -1262,6 +1352,7 @@ function filterAndUpdatePagePosts() {
     distance: parseFloat(document.getElementById('distance').value),
     keywords: document.getElementById('keywords').value === '' ?
       [] : document.getElementById('keywords').value.split(',').map((e) => e.trim()),
+    foodType: document.getElementById('food-type').value,
   };
 
   const location = userLocation ?
@@ -1273,9 +1364,12 @@ function filterAndUpdatePagePosts() {
 
   // Update the posts shown on the page
   removePosts();
-  removeMarkers();
   addPosts(filteredPosts);
-  addMarkers(filteredPosts);
+  // Posts can arrive from a poll before the map has loaded.
+  if (map) {
+    removeMarkers();
+    addMarkers(filteredPosts);
+  }
 }
 
 /**
@@ -1316,6 +1410,12 @@ function filterPosts(posts, now, userLocation, filters) {
       return false;
     });
   }
+  // Food types are compared the way the server counts them.
+  if (filters.foodType !== FOOD_TYPE_FILTER_DEFAULT) {
+    filteredPosts = filteredPosts.filter((p) => {
+      return p.foodType.trim().toLowerCase() === filters.foodType;
+    });
+  }
 
   return filteredPosts;
 }
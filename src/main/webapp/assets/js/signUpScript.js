@@ -82,7 +82,7 @@ async function submitForm() {
   // Disable multiple submissions.
   submitFormButton.disabled = true;
 
-  if (validateForm()) {
+  if (validateForm() && await addFormLocation()) {
     emailForm.action = '/user';
 
     // Based on user subscribing or unsubscribing, show confirmation that form
@@ -98,6 +98,29 @@ async function submitForm() {
   }
 }
 
+/**
+ * Fills in the user's location when they only want posts within a distance of it.
+ * @return {Promise<boolean>} whether the form can be sent
+ */
+async function addFormLocation() {
+  if (!document.getElementById('max-distance').value) {
+    return true;
+  }
+  try {
+    const position = await new Promise((resolve, reject) => {
+      navigator.geolocation.getCurrentPosition(resolve, reject);
+    });
+    // The server expects decimal degrees with a decimal point.
+    document.getElementById('lat').value = position.coords.latitude.toFixed(6);
+    document.getElementById('lng').value = position.coords.longitude.toFixed(6);
+    return true;
+  } catch (error) {
+    markInvalidInputs(['max-distance'], ['allow access to your location to limit the distance'],
+      emailForm.elements);
+    return false;
+  }
+}
+
 /**
  * Goes through the form elements and marks the invalid inputs.
  * @return {boolean} whether all the inputs are valid
@@ -157,7 +180,8 @@ function validateFormRadioButtons(invalidIds, errorMessages, formElements) {
 function validateFormText(invalidIds, errorMessages, formElements) {
   // Checks if any text elements are blank.
   for (let i = 0; i < formElements.length; i++) {
-    if (formElements[i].type === 'text' || formElements[i].type === 'email') {
+    if ((formElements[i].type === 'text' && !formElements[i].classList.contains('optional')) ||
+        formElements[i].type === 'email') {
       if (!formElements[i].value.trim()) {
         invalidIds.push(formElements[i].id);
         const errorMessage = formElements[i].name + ' is blank';
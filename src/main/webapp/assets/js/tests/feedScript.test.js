@@ -475,6 +475,21 @@ describe('Post Filtering', function() {
       expect(result.length).to.be.equal(1);
       expect(extractIDs(result)).to.deep.equal([1]);
     });
+
+    it('should only return posts of the selected food type, ignoring case', function() {
+      const posts = [];
+      posts.push(newPost(1, 0, 0, 0, 0, 0, 0, 'Pizza', 0));
+      posts.push(newPost(2, 0, 0, 0, 0, 0, 0, ' pizza ', 0));
+      posts.push(newPost(3, 0, 0, 0, 0, 0, 0, 'Pizza rolls', 0));
+      posts.push(newPost(4));
+      const now = TIME_1500;
+      const userLocation = AT_MEMORIAL_UNION;
+      const filters = newFilter(0, 0, 0, 0, 'pizza');
+
+      const result = filterPosts(posts, now, userLocation, filters);
+      expect(result.length).to.be.equal(2);
+      expect(extractIDs(result)).to.deep.equal([1, 2]);
+    });
   });
 });
 
@@ -485,14 +500,16 @@ describe('Post Filtering', function() {
  * @param {Boolean} happeningNow - Whether the event is happening right now.
  * @param {Number} distance - The maximum distance from the user to the event.
  * @param {Array<String>} keywords - Keywords to include.
+ * @param {String} foodType - The lowercased type of food.
  * @return {Object} - The new filter object.
  */
-function newFilter(numPeople = 0, happeningNow = 0, distance = 0, keywords = 0) {
+function newFilter(numPeople = 0, happeningNow = 0, distance = 0, keywords = 0, foodType = 0) {
   return {
     numPeople: numPeople ? numPeople : NUM_PEOPLE_FILTER_DEFAULT,
     happeningNow: happeningNow ? happeningNow : HAPPENING_NOW_FILTER_DEFAULT,
     distance: distance ? distance : DISTANCE_FILTER_DEFAULT,
     keywords: keywords ? keywords : KEYWORDS_FILTER_DEFAULT,
+    foodType: foodType ? foodType : FOOD_TYPE_FILTER_DEFAULT,
   };
 }
 
@@ -42,6 +42,7 @@ import com.google.api.client.util.Base64;
 import com.google.api.services.gmail.Gmail;
 import com.google.api.services.gmail.model.Message;
 import com.google.sps.data.Email;
+import com.google.sps.data.Outbox;
 import com.google.sps.data.Post;
 import com.google.sps.api.GmailAPI;
 import com.google.sps.api.GmailConfiguration;
@@ -76,6 +77,7 @@ public final class GmailConfigurationTest {
   private static final String EMAIL = "test@google.com";
   private static final String COLLEGE_A = "000000";
   private static final String COLLEGE_B = "000001";
+  private static final String POST_ID = "Post(1)";
 
   private static final String SUCCESS_MSG = "Successfully sent an email to: ";
   private static final String LOGGER_NAME = "com.google.sps.api";
@@ -139,6 +141,44 @@ public final class GmailConfigurationTest {
     Assert.assertEquals(0, memoryAppender.countEventsForLogger(LOGGER_NAME));
   }
 
+  @Test
+  public void userAlreadyNotifiedAboutPost() throws Exception {
+    Entity userEntity = new Entity("User", EMAIL);
+    userEntity.setProperty("name", NAME);
+    userEntity.setProperty("college", COLLEGE_A);
+    datastore.put(userEntity);
+
+    post.setPostId(POST_ID);
+    String deliveryId = Outbox.postDeliveryId(POST_ID);
+    Outbox.markSent(datastore, Outbox.claim(datastore, deliveryId, EMAIL));
+
+    GmailConfiguration.notifyUsers(COLLEGE_A, post);
+
+    Assert.assertEquals(0, memoryAppender.countEventsForLogger(LOGGER_NAME));
+  }
+
+  @Test
+  public void usersAreNotifiedPastTheFirstBatch() throws Exception {
+    // Every user but the last one, which lands in the second batch, was already notified.
+    post.setPostId(POST_ID);
+    String deliveryId = Outbox.postDeliveryId(POST_ID);
+    for (int i = 0; i <= 500; i++) {
+      String email = String.format("user%03d@google.com", i);
+      Entity userEntity = new Entity("User", email);
+      userEntity.setProperty("name", NAME);
+      userEntity.setProperty("college", COLLEGE_A);
+      datastore.put(userEntity);
+      if (i < 500) {
+        Outbox.markSent(datastore, Outbox.claim(datastore, deliveryId, email));
+      }
+    }
+
+    GmailConfiguration.notifyUsers(COLLEGE_A, post);
+
+    Assert.assertEquals(1, memoryAppender.countEventsForLogger(LOGGER_NAME));
+    Assert.assertTrue(Outbox.claim(datastore, deliveryId, "user500@google.com") != null);
+  }
+
   @Test
   public void sendEmailWithAuthorizedService() {
     GmailConfiguration.sendEmail(TO, SUBJECT, CONTENT);
@@ -0,0 +1,201 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+import com.google.sps.data.DatastorePostRepository;
+import com.google.sps.data.Post;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+  * Measures ranking the posts of many colleges for the daily digest, querying one college
+  * at a time versus starting every college's query before reading any of them.
+  */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DigestQueriesBenchmark {
+  private static final int POSTS_PER_COLLEGE = 20;
+
+  @Param({"10"})
+  public int colleges;
+
+  // The local stub answers in microseconds, so each call is held back by a round trip
+  // closer to production Datastore's.
+  @Param({"0", "10"})
+  public int rpcLatencyMillis;
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+  private ApiProxy.Delegate stub;
+  private List<String> collegeIds;
+  private DatastorePostRepository repository;
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    helper.setUp();
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    collegeIds = new ArrayList<String>();
+    List<Entity> entities = new ArrayList<Entity>();
+    for (int i = 0; i < colleges; i++) {
+      String collegeId = "college-" + i;
+      collegeIds.add(collegeId);
+      for (Entity entity : PostDatasets.entities(POSTS_PER_COLLEGE)) {
+        entity.setIndexedProperty("collegeId", collegeId);
+        entities.add(entity);
+      }
+    }
+    datastore.put(entities);
+
+    repository = new DatastorePostRepository(datastore,
+      DatastoreServiceFactory.getAsyncDatastoreService());
+    stub = ApiProxy.getDelegate();
+    ApiProxy.setDelegate(new SlowDelegate(stub, rpcLatencyMillis));
+  }
+
+  @TearDown
+  @SuppressWarnings("unchecked")
+  public void tearDown() {
+    ApiProxy.setDelegate(stub);
+    helper.tearDown();
+  }
+
+  @Benchmark
+  public List<ArrayList<Post>> oneCollegeAtATime() {
+    List<ArrayList<Post>> digests = new ArrayList<ArrayList<Post>>();
+    for (String collegeId : collegeIds) {
+      digests.add(repository.getTodaysPosts(Collections.singletonList(collegeId)).get(collegeId));
+    }
+    return digests;
+  }
+
+  @Benchmark
+  public Map<String, ArrayList<Post>> overlappedQueries() {
+    return repository.getTodaysPosts(collegeIds);
+  }
+
+  /** Delegate whose calls complete no sooner than a fixed latency after they are made. */
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static final class SlowDelegate implements ApiProxy.Delegate<ApiProxy.Environment> {
+    private final ApiProxy.Delegate delegate;
+    private final long latencyMillis;
+
+    SlowDelegate(ApiProxy.Delegate delegate, long latencyMillis) {
+      this.delegate = delegate;
+      this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public byte[] makeSyncCall(ApiProxy.Environment environment, String packageName,
+        String methodName, byte[] request) throws ApiProxy.ApiProxyException {
+      sleepUntil(System.currentTimeMillis() + latencyMillis);
+      return delegate.makeSyncCall(environment, packageName, methodName, request);
+    }
+
+    @Override
+    public Future<byte[]> makeAsyncCall(ApiProxy.Environment environment, String packageName,
+        String methodName, byte[] request, ApiProxy.ApiConfig apiConfig) {
+      Future<byte[]> response =
+        delegate.makeAsyncCall(environment, packageName, methodName, request, apiConfig);
+      long readyAt = System.currentTimeMillis() + latencyMillis;
+      return new Future<byte[]>() {
+        @Override
+        public byte[] get() throws InterruptedException, ExecutionException {
+          sleepUntil(readyAt);
+          return response.get();
+        }
+
+        @Override
+        public byte[] get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+          sleepUntil(readyAt);
+          return response.get(timeout, unit);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+          return response.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+          return response.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+          return System.currentTimeMillis() >= readyAt && response.isDone();
+        }
+      };
+    }
+
+    @Override
+    public void log(ApiProxy.Environment environment, ApiProxy.LogRecord record) {
+      delegate.log(environment, record);
+    }
+
+    @Override
+    public void flushLogs(ApiProxy.Environment environment) {
+      delegate.flushLogs(environment);
+    }
+
+    @Override
+    public List<Thread> getRequestThreads(ApiProxy.Environment environment) {
+      return delegate.getRequestThreads(environment);
+    }
+
+    private static void sleepUntil(long readyAt) {
+      long remaining = readyAt - System.currentTimeMillis();
+      if (remaining <= 0) {
+        return;
+      }
+      try {
+        Thread.sleep(remaining);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,97 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+  * Builds lightweight requests and responses for benchmarks. Mockito mocks record every call,
+  * which would cost more than the code being measured.
+  */
+public final class FakeRequests {
+
+  // Make the constructor private to emulate a static class.
+  private FakeRequests() {}
+
+  /**
+    * Create a request that only answers getParameter().
+    *
+    * @param parameters request parameters by name
+    * @return request backed by the given parameters
+    */
+  public static HttpServletRequest withParameters(Map<String, String> parameters) {
+    return (HttpServletRequest) Proxy.newProxyInstance(
+      FakeRequests.class.getClassLoader(),
+      new Class<?>[] {HttpServletRequest.class},
+      (proxy, method, args) -> {
+        if (method.getName().equals("getParameter")) {
+          return parameters.get(args[0]);
+        }
+        throw new UnsupportedOperationException(method.getName());
+      });
+  }
+
+  /**
+    * Create a response that only answers getWriter(), setContentType() and setStatus().
+    *
+    * @param body where the response body is written
+    * @return response writing to the given writer
+    */
+  public static HttpServletResponse writingTo(Writer body) {
+    PrintWriter writer = new PrintWriter(body);
+    return (HttpServletResponse) Proxy.newProxyInstance(
+      FakeRequests.class.getClassLoader(),
+      new Class<?>[] {HttpServletResponse.class},
+      (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "getWriter":
+            return writer;
+          case "setContentType":
+          case "setStatus":
+            return null;
+          default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+      });
+  }
+
+  /** @return the parameters of a valid new post form for the given college */
+  public static Map<String, String> newPostParameters(String collegeId) {
+    Map<String, String> parameters = new HashMap<String, String>();
+    parameters.put("organizationName", "Duck Club");
+    parameters.put("month", "10");
+    parameters.put("day", "30");
+    parameters.put("startHour", "5");
+    parameters.put("startMinute", "00");
+    parameters.put("startAMorPM", "pm");
+    parameters.put("endHour", "7");
+    parameters.put("endMinute", "15");
+    parameters.put("endAMorPM", "pm");
+    parameters.put("location", "Goss Stadium");
+    parameters.put("lat", "44.562842");
+    parameters.put("lng", "-123.2771362");
+    parameters.put("numberOfPeopleItFeeds", "25");
+    parameters.put("typeOfFood", "Popcorn");
+    parameters.put("description", "We have some popcorn left after our weekly Duck watching meeting!");
+    parameters.put("collegeId", collegeId);
+    return parameters;
+  }
+}
@@ -0,0 +1,72 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.data.Email;
+import com.google.sps.data.Post;
+import com.google.sps.servlets.PostDataServlet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures turning posts into the feed's JSON and into notification emails. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FeedRenderingBenchmark {
+
+  @Param({"10", "1000", "100000"})
+  public int posts;
+
+  private ArrayList<Post> feed;
+  private ArrayList<Post> rankedPosts;
+
+  @Setup
+  public void setUp() {
+    feed = PostDatasets.posts(posts);
+    rankedPosts = new ArrayList<Post>(feed.subList(0, Math.min(3, feed.size())));
+  }
+
+  @Benchmark
+  public String feedJson() {
+    return PostDataServlet.listToJson(feed);
+  }
+
+  @Benchmark
+  public String newPostEmail() throws IOException {
+    return Email.addNewPost(feed.get(0));
+  }
+
+  @Benchmark
+  public String dailyDigestEmail() throws IOException {
+    return Email.addRankedPosts(rankedPosts);
+  }
+}
@@ -0,0 +1,94 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.data.InMemoryPostRepository;
+import com.google.sps.data.Post;
+import com.google.sps.data.PostRepository;
+import com.google.sps.data.Repositories;
+import com.google.sps.servlets.PostDataServlet;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+  * Load tests GET /postData from several threads with posts kept in memory, so the
+  * servlet, the feed orders and the JSON are measured without Datastore.
+  */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class InMemoryFeedBenchmark {
+
+  @Param({"1000", "100000"})
+  public int posts;
+
+  @Param({PostRepository.SORT_TIME, PostRepository.SORT_RANK, PostRepository.SORT_ENDING_SOON})
+  public String sort;
+
+  private final PostDataServlet servlet = new PostDataServlet();
+  private PostRepository previousPosts;
+  private HttpServletRequest request;
+
+  @Setup
+  public void setUp() {
+    previousPosts = Repositories.posts();
+    PostRepository repository = new InMemoryPostRepository();
+    for (Post post : PostDatasets.posts(posts)) {
+      repository.save(PostDatasets.COLLEGE_ID, post);
+    }
+    Repositories.setPosts(repository);
+
+    Map<String, String> parameters = new HashMap<String, String>();
+    parameters.put("collegeId", PostDatasets.COLLEGE_ID);
+    parameters.put("sort", sort);
+    parameters.put("limit", Integer.toString(PostDataServlet.DEFAULT_LIMIT));
+    request = FakeRequests.withParameters(parameters);
+  }
+
+  @TearDown
+  public void tearDown() {
+    Repositories.setPosts(previousPosts);
+  }
+
+  @Benchmark
+  public StringWriter getFeed() throws IOException {
+    StringWriter body = new StringWriter();
+    servlet.doGet(request, FakeRequests.writingTo(body));
+    return body;
+  }
+}
@@ -0,0 +1,111 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.Post;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures converting a single post between requests, entities and Post objects. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PostBenchmark {
+  private static final int SAMPLES = 1024;
+
+  // Datastore keys need an App Engine environment on the benchmark thread.
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper();
+
+  private HttpServletRequest[] requests;
+  private Entity[] entities;
+  private Post[] posts;
+  private int next = 0;
+
+  @Setup
+  public void setUp() {
+    helper.setUp();
+    List<Map<String, String>> parameters = PostDatasets.postParameters(SAMPLES);
+    requests = new HttpServletRequest[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      requests[i] = FakeRequests.withParameters(parameters.get(i));
+    }
+
+    ArrayList<Post> datasetPosts = PostDatasets.posts(SAMPLES);
+    posts = datasetPosts.toArray(new Post[SAMPLES]);
+    entities = new Entity[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      // Stored entities have complete keys, which entityToPost() reads.
+      Entity entity = new Entity(KeyFactory.createKey("Post", i + 1));
+      entity.setPropertiesFrom(posts[i].postToEntity("Post"));
+      entities[i] = entity;
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  private int nextSample() {
+    next = (next + 1) & (SAMPLES - 1);
+    return next;
+  }
+
+  @Benchmark
+  public Post requestToPost() {
+    Post post = new Post();
+    post.requestToPost(requests[nextSample()]);
+    return post;
+  }
+
+  @Benchmark
+  public Post entityToPost() {
+    Post post = new Post();
+    post.entityToPost(entities[nextSample()]);
+    return post;
+  }
+
+  @Benchmark
+  public Entity postToEntity() {
+    return posts[nextSample()].postToEntity("Post");
+  }
+
+  @Benchmark
+  public double calculateRank() {
+    return posts[nextSample()].calculateRank();
+  }
+}
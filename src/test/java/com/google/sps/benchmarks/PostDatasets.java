@@ -0,0 +1,118 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.sps.data.Post;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+  * Generates reproducible posts for benchmarks. The same size always produces the same
+  * posts, all happening today and lasting until the end of the day so none of them expire
+  * while a benchmark runs.
+  */
+public final class PostDatasets {
+
+  public static final String COLLEGE_ID = "209542";
+
+  private static final long SEED = 186;
+  private static final String[] FOODS = {"Pizza", "Bagels", "Popcorn", "Boba", "Burritos", "Cookies"};
+  private static final String[] PLACES = {"Goss Stadium", "Aldrich Park", "DBH 6011", "Benson Center"};
+  private static final String[] WORDS = {"vegan", "vegetarian", "halal", "kosher", "gluten", "free",
+    "fresh", "warm", "spicy", "sweet", "leftover", "extra", "coffee", "tea", "fruit", "salad",
+    "pastries", "donuts", "sandwiches", "snacks", "drinks", "meeting", "workshop", "social"};
+
+  // Make the constructor private to emulate a static class.
+  private PostDatasets() {}
+
+  /**
+    * Create the form parameters of posts, as they would arrive at /postData.
+    *
+    * @param count number of posts
+    * @return form parameters of each post
+    */
+  public static List<Map<String, String>> postParameters(int count) {
+    // Posts are built through requestToPost(), which logs a warning for every post
+    // without an uploaded image. Benchmarks don't upload images.
+    Logger.getLogger(Post.class.getName()).setLevel(Level.SEVERE);
+
+    Calendar today = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+    Random random = new Random(SEED);
+    // Descriptions draw from their own generator, so the other fields stay as they were.
+    Random words = new Random(SEED + 1);
+    List<Map<String, String>> posts = new ArrayList<Map<String, String>>();
+    for (int i = 0; i < count; i++) {
+      Map<String, String> parameters = FakeRequests.newPostParameters(COLLEGE_ID);
+      int startHour = random.nextInt(23);
+      parameters.put("organizationName", "Club " + random.nextInt(500));
+      parameters.put("month", Integer.toString(today.get(Calendar.MONTH) + 1));
+      parameters.put("day", Integer.toString(today.get(Calendar.DATE)));
+      parameters.put("startHour", Integer.toString(startHour % 12 == 0 ? 12 : startHour % 12));
+      parameters.put("startMinute", Integer.toString(random.nextInt(60)));
+      parameters.put("startAMorPM", startHour < 12 ? "am" : "pm");
+      parameters.put("endHour", "11");
+      parameters.put("endMinute", "59");
+      parameters.put("endAMorPM", "pm");
+      parameters.put("location", PLACES[random.nextInt(PLACES.length)]);
+      parameters.put("numberOfPeopleItFeeds", Integer.toString(1 + random.nextInt(300)));
+      parameters.put("typeOfFood", FOODS[random.nextInt(FOODS.length)]);
+      StringBuilder description = new StringBuilder("Come by for");
+      for (int w = 3 + words.nextInt(4); w > 0; w--) {
+        description.append(' ').append(WORDS[words.nextInt(WORDS.length)]);
+      }
+      parameters.put("description", description.append('!').toString());
+      posts.add(parameters);
+    }
+    return posts;
+  }
+
+  /**
+    * Create valid posts.
+    *
+    * @param count number of posts
+    * @return posts parsed from their form parameters
+    */
+  public static ArrayList<Post> posts(int count) {
+    ArrayList<Post> posts = new ArrayList<Post>();
+    for (Map<String, String> parameters : postParameters(count)) {
+      Post post = new Post();
+      post.requestToPost(FakeRequests.withParameters(parameters));
+      posts.add(post);
+    }
+    return posts;
+  }
+
+  /**
+    * Create the Datastore entities of valid posts.
+    *
+    * @param count number of posts
+    * @return entities ready to be stored
+    */
+  public static List<Entity> entities(int count) {
+    List<Entity> entities = new ArrayList<Entity>();
+    for (Post post : posts(count)) {
+      entities.add(post.postToEntity("Post"));
+    }
+    return entities;
+  }
+}
@@ -0,0 +1,92 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.data.Post;
+import com.google.sps.data.PostSearchIndex;
+import com.google.sps.data.PostTokenizer;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+  * Compares searching 100k posts through PostSearchIndex with scanning every post's terms,
+  * for a common term, a rare combination of terms and a prefix, returning the top 20.
+  */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PostSearchBenchmark {
+
+  private static final int POSTS = 100000;
+  private static final int LIMIT = 20;
+
+  @Param({"pizza", "halal spicy aldrich", "veg"})
+  public String query;
+
+  private final PostSearchIndex index = new PostSearchIndex();
+  private final List<Post> posts = new ArrayList<Post>();
+  private final Calendar nowTime = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+
+  @Setup
+  public void setUp() {
+    posts.addAll(PostDatasets.posts(POSTS));
+    for (int i = 0; i < posts.size(); i++) {
+      posts.get(i).setPostId(Integer.toString(i));
+      index.add(posts.get(i));
+    }
+  }
+
+  @Benchmark
+  public List<Post> searchIndex() {
+    return index.search(query, nowTime, LIMIT);
+  }
+
+  /** What a search costs without the index: tokenize every post, then sort the matches. */
+  @Benchmark
+  public List<Post> scanPosts() {
+    List<String> terms = PostTokenizer.tokenize(query);
+    String prefix = terms.get(terms.size() - 1);
+    List<String> exactTerms = terms.subList(0, terms.size() - 1);
+    List<Post> matches = new ArrayList<Post>();
+    for (Post post : posts) {
+      List<String> postTerms = new ArrayList<String>(PostTokenizer.getTerms(post));
+      if (postTerms.containsAll(exactTerms)
+          && postTerms.stream().anyMatch(term -> term.startsWith(prefix))) {
+        matches.add(post);
+      }
+    }
+    matches.sort((a, b) -> Double.compare(b.getRank(), a.getRank()));
+    return matches.subList(0, Math.min(LIMIT, matches.size()));
+  }
+}
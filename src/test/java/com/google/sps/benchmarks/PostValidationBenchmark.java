@@ -0,0 +1,116 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.data.FormValidator;
+import com.google.sps.data.InputPattern;
+
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Compares the regex validation of a new post form with the single-pass FormValidator. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PostValidationBenchmark {
+
+  private HttpServletRequest request;
+
+  @Setup
+  public void setUp() {
+    request = FakeRequests.withParameters(FakeRequests.newPostParameters("209542"));
+  }
+
+  /** The matcher-per-field validation followed by a second parse, as Post used to do it. */
+  @Benchmark
+  public void regexValidation(Blackhole blackhole) {
+    String organizationName = request.getParameter("organizationName");
+    String month = request.getParameter("month");
+    String day = request.getParameter("day");
+    String startHour = request.getParameter("startHour");
+    String startMinute = request.getParameter("startMinute");
+    String endHour = request.getParameter("endHour");
+    String endMinute = request.getParameter("endMinute");
+    String location = request.getParameter("location");
+    String lat = request.getParameter("lat");
+    String lng = request.getParameter("lng");
+    String numberOfPeopleItFeeds = request.getParameter("numberOfPeopleItFeeds");
+    String typeOfFood = request.getParameter("typeOfFood");
+    String description = request.getParameter("description");
+    String collegeId = request.getParameter("collegeId");
+
+    boolean valid = InputPattern.TEXT.matcher(organizationName).matches() && organizationName.length() <= 75 &&
+        InputPattern.POSITIVE_INTEGER.matcher(month).matches() &&
+        InputPattern.POSITIVE_INTEGER.matcher(day).matches() &&
+        InputPattern.POSITIVE_INTEGER.matcher(startHour).matches() &&
+        InputPattern.POSITIVE_INTEGER.matcher(startMinute).matches() &&
+        InputPattern.POSITIVE_INTEGER.matcher(endHour).matches() &&
+        InputPattern.POSITIVE_INTEGER.matcher(endMinute).matches() &&
+        InputPattern.TEXT.matcher(location).matches() && location.length() <= 100 &&
+        InputPattern.DOUBLE.matcher(lat).matches() &&
+        InputPattern.DOUBLE.matcher(lng).matches() &&
+        InputPattern.POSITIVE_INTEGER.matcher(numberOfPeopleItFeeds).matches() &&
+        InputPattern.TEXT.matcher(typeOfFood).matches() && typeOfFood.length() <= 25 &&
+        InputPattern.TEXT.matcher(description).matches() && description.length() <= 500 &&
+        description.length() >= 15 &&
+        InputPattern.TEXT.matcher(collegeId).matches() && collegeId.length() <= 6;
+
+    blackhole.consume(valid);
+    blackhole.consume(Integer.parseInt(month));
+    blackhole.consume(Integer.parseInt(day));
+    blackhole.consume(Integer.parseInt(startHour));
+    blackhole.consume(Integer.parseInt(startMinute));
+    blackhole.consume(Integer.parseInt(endHour));
+    blackhole.consume(Integer.parseInt(endMinute));
+    blackhole.consume(Double.parseDouble(lat));
+    blackhole.consume(Double.parseDouble(lng));
+    blackhole.consume(Integer.parseInt(numberOfPeopleItFeeds));
+  }
+
+  @Benchmark
+  public void scannerValidation(Blackhole blackhole) {
+    FormValidator form = new FormValidator(request);
+    blackhole.consume(form.text("organizationName", 1, 75));
+    blackhole.consume(form.positiveInteger("month"));
+    blackhole.consume(form.positiveInteger("day"));
+    blackhole.consume(form.positiveInteger("startHour"));
+    blackhole.consume(form.positiveInteger("startMinute"));
+    blackhole.consume(form.positiveInteger("endHour"));
+    blackhole.consume(form.positiveInteger("endMinute"));
+    blackhole.consume(form.text("location", 1, 100));
+    blackhole.consume(form.decimal("lat"));
+    blackhole.consume(form.decimal("lng"));
+    blackhole.consume(form.positiveInteger("numberOfPeopleItFeeds"));
+    blackhole.consume(form.text("typeOfFood", 1, 25));
+    blackhole.consume(form.text("description", 15, 500));
+    blackhole.consume(form.text("collegeId", 1, 6));
+    blackhole.consume(form.isValid());
+  }
+}
@@ -0,0 +1,114 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.data.Interests;
+import com.google.sps.data.Post;
+import com.google.sps.data.SubscriptionMatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+  * Compares finding the subscribers of a new post through SubscriptionMatcher with checking
+  * every subscription, for 100k subscribers of one college. The share of subscribers without
+  * interests, who match every post, is a parameter, since they can't be skipped either way.
+  */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubscriptionMatchBenchmark {
+
+  private static final int SUBSCRIBERS = 100000;
+  private static final double LAT = 44.562842;
+  private static final double LNG = -123.2771362;
+  private static final List<String> FOODS = Arrays.asList("pizza", "bagels", "ice cream", "tacos",
+    "sushi", "burritos", "cookies", "donuts", "sandwiches", "salad", "curry", "pho");
+  private static final List<String> KEYWORDS = Arrays.asList("vegan", "halal", "kosher", "gluten",
+    "coffee", "fruit", "workshop", "social", "club", "free", "snacks", "drinks");
+
+  @Param({"0", "0.1"})
+  public double anythingShare;
+
+  private final SubscriptionMatcher matcher = new SubscriptionMatcher();
+  private final List<Interests> subscriptions = new ArrayList<Interests>();
+  private Post post;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(1);
+    for (int i = 0; i < SUBSCRIBERS; i++) {
+      Interests interests;
+      if (random.nextDouble() < anythingShare) {
+        interests = Interests.ANYTHING;
+      } else {
+        // Most subscribers name a food type or a keyword, and half of them a distance too.
+        List<String> foods = new ArrayList<String>();
+        List<String> keywords = new ArrayList<String>();
+        if (random.nextBoolean()) {
+          foods.add(FOODS.get(random.nextInt(FOODS.size())));
+        } else {
+          keywords.add(KEYWORDS.get(random.nextInt(KEYWORDS.size())) + " " + random.nextInt(50));
+        }
+        double maxDistance = random.nextBoolean() ? 0 : 0.5 + random.nextInt(5) / 2.0;
+        interests = new Interests(foods, keywords, LAT + random.nextGaussian() * 0.2,
+          LNG + random.nextGaussian() * 0.2, maxDistance);
+      }
+      subscriptions.add(interests);
+      matcher.add("user" + i + "@google.com", interests);
+    }
+
+    Map<String, String> parameters = PostDatasets.postParameters(1).get(0);
+    parameters.put("typeOfFood", "Pizza");
+    post = new Post();
+    post.requestToPost(FakeRequests.withParameters(parameters));
+  }
+
+  @Benchmark
+  public List<String> matchIndex() {
+    return matcher.match(post);
+  }
+
+  /** What matching costs without the index: check the post against every subscription. */
+  @Benchmark
+  public int scanSubscriptions() {
+    int matches = 0;
+    for (Interests interests : subscriptions) {
+      if (interests.matches(post)) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+}
@@ -0,0 +1,149 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.google.appengine.api.blobstore.BlobInfoFactory;
+import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.blobstore.BlobstoreService;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.BlobLifecycle;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests recording uploads and sweeping the ones no post claimed. */
+@RunWith(JUnit4.class)
+public final class BlobLifecycleTest {
+  private static final BlobKey CLAIMED = new BlobKey("claimedBlobKey");
+  private static final BlobKey ORPHAN = new BlobKey("orphanBlobKey");
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+  private DatastoreService datastore;
+  private BlobstoreService blobstoreService;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    blobstoreService = mock(BlobstoreService.class);
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  // Store the Blobstore metadata of an uploaded blob.
+  private void storeBlobInfo(BlobKey blobKey, long size) {
+    Entity blobInfo = new Entity(KeyFactory.createKey(BlobInfoFactory.KIND, blobKey.getKeyString()));
+    blobInfo.setProperty(BlobInfoFactory.CONTENT_TYPE, "image/jpeg");
+    blobInfo.setProperty(BlobInfoFactory.CREATION, new Date());
+    blobInfo.setProperty(BlobInfoFactory.FILENAME, "food.jpeg");
+    blobInfo.setProperty(BlobInfoFactory.SIZE, size);
+    blobInfo.setProperty(BlobInfoFactory.MD5_HASH, "");
+    datastore.put(blobInfo);
+  }
+
+  @Test
+  public void uploadsAreRecorded() throws Exception {
+    String postId = KeyFactory.createKey("Post", 1).toString();
+    BlobLifecycle.recordUploads(datastore, Arrays.asList(CLAIMED, ORPHAN), CLAIMED.getKeyString(), postId);
+
+    Entity claimed = datastore.get(BlobLifecycle.getKey(CLAIMED.getKeyString()));
+    Entity orphan = datastore.get(BlobLifecycle.getKey(ORPHAN.getKeyString()));
+    Assert.assertEquals(true, claimed.getProperty("claimed"));
+    Assert.assertEquals(postId, claimed.getProperty("postId"));
+    Assert.assertEquals(false, orphan.getProperty("claimed"));
+  }
+
+  @Test
+  public void unclaimedUploadsAreSwept() {
+    storeBlobInfo(ORPHAN, 2048);
+    BlobLifecycle.recordUploads(datastore, Arrays.asList(CLAIMED, ORPHAN), CLAIMED.getKeyString(),
+      KeyFactory.createKey("Post", 1).toString());
+
+    BlobLifecycle.SweepResult result = BlobLifecycle.sweep(datastore, blobstoreService, -1000, 1);
+
+    Assert.assertEquals(1, result.getDeletedBlobs());
+    Assert.assertEquals(2048, result.getReclaimedBytes());
+    verify(blobstoreService).delete(ORPHAN);
+    verify(blobstoreService, never()).delete(CLAIMED);
+  }
+
+  @Test
+  public void recentUploadsAreKept() {
+    BlobLifecycle.recordUploads(datastore, Arrays.asList(ORPHAN), null, null);
+
+    BlobLifecycle.SweepResult result = BlobLifecycle.sweep(datastore, blobstoreService, 60000, 100);
+
+    Assert.assertEquals(0, result.getDeletedBlobs());
+    verify(blobstoreService, never()).delete(ORPHAN);
+  }
+
+  @Test
+  public void uploadClaimedSinceTheQueryIsKept() throws Exception {
+    // Writes are left out of queries until their entity is read again.
+    helper.tearDown();
+    LocalServiceTestHelper staleHelper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setDefaultHighRepJobPolicyUnappliedJobPercentage(100));
+    staleHelper.setUp();
+    try {
+      datastore = DatastoreServiceFactory.getDatastoreService();
+      Key record = BlobLifecycle.getKey(ORPHAN.getKeyString());
+      BlobLifecycle.recordUploads(datastore, Arrays.asList(ORPHAN), null, null);
+      datastore.get(record);
+      BlobLifecycle.recordUploads(datastore, Arrays.asList(ORPHAN), ORPHAN.getKeyString(),
+        KeyFactory.createKey("Post", 1).toString());
+
+      BlobLifecycle.SweepResult result = BlobLifecycle.sweep(datastore, blobstoreService, -1000, 100);
+
+      Assert.assertEquals(0, result.getDeletedBlobs());
+      verify(blobstoreService, never()).delete(ORPHAN);
+      Assert.assertEquals(true, datastore.get(record).getProperty("claimed"));
+    } finally {
+      staleHelper.tearDown();
+      helper.setUp();
+    }
+  }
+
+  @Test
+  public void releasedBlobIsForgotten() {
+    BlobLifecycle.recordUploads(datastore, Arrays.asList(CLAIMED), CLAIMED.getKeyString(),
+      KeyFactory.createKey("Post", 1).toString());
+
+    BlobLifecycle.release(datastore, blobstoreService, CLAIMED.getKeyString());
+
+    verify(blobstoreService).delete(CLAIMED);
+    Assert.assertTrue(datastore.get(Arrays.asList(BlobLifecycle.getKey(CLAIMED.getKeyString()))).isEmpty());
+  }
+}
@@ -0,0 +1,66 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.sps.benchmarks.PostDatasets;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests catching a college's indexes up with its changes. */
+@RunWith(JUnit4.class)
+public final class CollegeIndexesTest {
+  private static final int READERS = 4;
+
+  @Test
+  public void readersDontWaitOnEachOthersChanges() throws Exception {
+    // Every reader's changes arrive only once all the readers are reading them.
+    CountDownLatch reading = new CountDownLatch(READERS);
+    PostRepository posts = mock(PostRepository.class);
+    when(posts.getChangesSince(eq(PostDatasets.COLLEGE_ID), anyLong())).thenAnswer(invocation -> {
+      reading.countDown();
+      Assert.assertTrue(reading.await(10, TimeUnit.SECONDS));
+      return PostDelta.reset(1, PostDatasets.posts(3));
+    });
+    CollegeIndexes indexes = new CollegeIndexes();
+    Calendar nowTime = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+
+    ExecutorService executor = Executors.newFixedThreadPool(READERS);
+    ArrayList<Future<CollegeIndexes>> results = new ArrayList<Future<CollegeIndexes>>();
+    for (int i = 0; i < READERS; i++) {
+      results.add(executor.submit(() -> indexes.catchUp(posts, PostDatasets.COLLEGE_ID, nowTime)));
+    }
+    executor.shutdown();
+    for (Future<CollegeIndexes> result : results) {
+      Assert.assertSame(indexes, result.get(1, TimeUnit.MINUTES));
+    }
+  }
+}
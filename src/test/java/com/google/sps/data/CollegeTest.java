@@ -0,0 +1,175 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.College;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests counting the subscribers of colleges. */
+@RunWith(JUnit4.class)
+public final class CollegeTest {
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  private void addSubscribers(String collegeId, long delta) {
+    Transaction txn = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+    College.addSubscribers(datastore, txn, collegeId, "student@example.edu", delta);
+    txn.commit();
+  }
+
+  @Test
+  public void subscriberCountNeverGoesNegative() throws Exception {
+    Entity countedCollege = new Entity(College.getKey("100003"));
+    countedCollege.setProperty(College.SUBSCRIBER_COUNT, 0L);
+    datastore.put(countedCollege);
+    addSubscribers("100003", 1);
+    addSubscribers("100003", -1);
+    addSubscribers("100003", -1);
+
+    Entity college = datastore.get(College.getKey("100003"));
+    Assert.assertEquals(0L, college.getProperty(College.SUBSCRIBER_COUNT));
+  }
+
+  @Test
+  public void resubscribingCountsTheUserOnce() throws Exception {
+    UserRepository users = new DatastoreUserRepository(datastore,
+      DatastoreServiceFactory.getAsyncDatastoreService());
+    users.subscribe("a@google.com", "a", "100007");
+    users.subscribe("a@google.com", "a", "100007");
+    users.subscribe("a@google.com", "a", "100008");
+
+    Assert.assertEquals(0, College.getSubscriberCount(datastore, datastore.get(College.getKey("100007"))));
+    Assert.assertEquals(1, College.getSubscriberCount(datastore, datastore.get(College.getKey("100008"))));
+    Assert.assertTrue(users.unsubscribe("a@google.com"));
+    Assert.assertFalse(users.unsubscribe("a@google.com"));
+    Assert.assertEquals(0L, datastore.get(College.getKey("100008")).getProperty(College.SUBSCRIBER_COUNT));
+  }
+
+  @Test
+  public void firstSubscriberLeavesTheCountToBeComputed() throws Exception {
+    // A user subscribed before the college was stored.
+    Entity user = new Entity("User", "a@google.com");
+    user.setProperty("college", "100010");
+    datastore.put(user);
+    addSubscribers("100010", 1);
+
+    Entity college = datastore.get(College.getKey("100010"));
+    Assert.assertFalse(college.hasProperty(College.SUBSCRIBER_COUNT));
+    Assert.assertEquals(1, College.getSubscriberCount(datastore, college));
+  }
+
+  @Test
+  public void countIsNotStoredIfSubscriptionsChangeWhileCounting() throws Exception {
+    datastore.put(new Entity(College.getKey("100011")));
+    UserRepository users = new DatastoreUserRepository(datastore,
+      DatastoreServiceFactory.getAsyncDatastoreService());
+    DatastoreService countingDatastore = spy(datastore);
+    doAnswer(invocation -> {
+      // Someone subscribes while the users are counted.
+      users.subscribe("a@google.com", "a", "100011");
+      return invocation.callRealMethod();
+    }).when(countingDatastore).prepare(any(Query.class));
+
+    College.getSubscriberCount(countingDatastore, datastore.get(College.getKey("100011")));
+
+    Entity college = datastore.get(College.getKey("100011"));
+    Assert.assertFalse(college.hasProperty(College.SUBSCRIBER_COUNT));
+    Assert.assertEquals(1, College.getSubscriberCount(datastore, college));
+  }
+
+  @Test
+  public void subscribersTheQueryMissedAreCounted() throws Exception {
+    // Writes are left out of queries until their entity is read again.
+    helper.tearDown();
+    LocalServiceTestHelper staleHelper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setDefaultHighRepJobPolicyUnappliedJobPercentage(100));
+    staleHelper.setUp();
+    try {
+      datastore = DatastoreServiceFactory.getDatastoreService();
+      UserRepository users = new DatastoreUserRepository(datastore,
+        DatastoreServiceFactory.getAsyncDatastoreService());
+      users.subscribe("a@google.com", "a", "100012");
+      users.subscribe("b@google.com", "b", "100012");
+
+      Entity college = datastore.get(College.getKey("100012"));
+      Assert.assertEquals(2, College.getSubscriberCount(datastore, college));
+    } finally {
+      staleHelper.tearDown();
+      helper.setUp();
+    }
+  }
+
+  @Test
+  public void onlyTheLastSubscribersToChangeAreKept() throws Exception {
+    int changes = College.MAX_RECENT_SUBSCRIBERS + 5;
+    for (int i = 0; i < changes; i++) {
+      Transaction txn = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+      College.addSubscribers(datastore, txn, "100009", i + "@google.com", 1);
+      txn.commit();
+    }
+
+    List<String> recent = College.getRecentSubscribers(datastore.get(College.getKey("100009")));
+    Assert.assertEquals(College.MAX_RECENT_SUBSCRIBERS, recent.size());
+    Assert.assertEquals("5@google.com", recent.get(0));
+    Assert.assertEquals((changes - 1) + "@google.com", recent.get(recent.size() - 1));
+  }
+
+  @Test
+  public void missingSubscriberCountIsComputed() throws Exception {
+    for (String email : new String[] {"a@google.com", "b@google.com"}) {
+      Entity user = new Entity("User", email);
+      user.setProperty("college", "100004");
+      datastore.put(user);
+    }
+    Entity legacyCollege = new Entity(College.getKey("100004"));
+    datastore.put(legacyCollege);
+
+    Assert.assertEquals(2, College.getSubscriberCount(datastore, legacyCollege));
+    Entity college = datastore.get(College.getKey("100004"));
+    Assert.assertEquals(2L, college.getProperty(College.SUBSCRIBER_COUNT));
+  }
+}
@@ -26,6 +26,7 @@ import com.google.sps.data.Post;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
@@ -104,6 +105,24 @@ public final class EmailTest {
     Assert.assertTrue(newPostEmail.contains("beep boop bop"));
   }
 
+  @Test
+  public void addNewPostsOfAWindow() throws IOException {
+    when(mockPost.getOrganizationName()).thenReturn("WICS");
+    when(mockPost.getLocation()).thenReturn("DBH 6011");
+    when(mockPost.getStartHour()).thenReturn(17);
+    when(mockPost.getStartMinute()).thenReturn(30);
+    when(mockPost.getEndHour()).thenReturn(23);
+    when(mockPost.getEndMinute()).thenReturn(59);
+    when(mockPost.getDescription()).thenReturn("beep boop bop");
+
+    String newPostsEmail = email.addNewPosts(Arrays.asList(mockPost, mockPost));
+
+    Assert.assertTrue(newPostsEmail.contains("here are the new free food events"));
+    String line = "WICS @ DBH 6011 | 5:30PM - 11:59PM";
+    Assert.assertTrue(newPostsEmail.indexOf(line) < newPostsEmail.lastIndexOf(line));
+    Assert.assertTrue(email.getNewPostsSubject(2).contains("2 new free food posts"));
+  }
+
   @Test(expected = Exception.class)
   public void addNewPostWithNoInformation() throws Exception {
     email.addNewPost(mockPost);
@@ -0,0 +1,115 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.sps.data.FormValidator;
+import com.google.sps.data.InputPattern;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests validating and parsing form fields without regexes. */
+@RunWith(JUnit4.class)
+public final class FormValidatorTest {
+  private static final String[] SAMPLES = {
+    "", "0", "12", "007", "2147483648", "-1", "1.5", "-37.3476132", "37..3476132", "--121.9",
+    "1.", ".5", "-.5", "abc", "Birthday Party!!!", "Line one\nLine two", "<script>", "DROP TABLE;",
+    "tab\there", "café", " ", "a,b.c!"
+  };
+
+  @Test
+  public void scannersAgreeWithPatterns() {
+    for (String sample : SAMPLES) {
+      Assert.assertEquals(sample, InputPattern.POSITIVE_INTEGER.matcher(sample).matches(),
+        InputPattern.isPositiveInteger(sample));
+      Assert.assertEquals(sample, InputPattern.DOUBLE.matcher(sample).matches(),
+        InputPattern.isDouble(sample));
+      Assert.assertEquals(sample, InputPattern.TEXT.matcher(sample).matches(),
+        InputPattern.isText(sample));
+    }
+  }
+
+  @Test
+  public void validFieldsAreParsed() {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getParameter("count")).thenReturn("42");
+    when(request.getParameter("lat")).thenReturn("-37.25");
+    when(request.getParameter("name")).thenReturn("Duck Club");
+
+    FormValidator form = new FormValidator(request);
+
+    Assert.assertEquals(42, form.positiveInteger("count"));
+    Assert.assertEquals(-37.25, form.decimal("lat"), 0);
+    Assert.assertEquals("Duck Club", form.text("name", 1, 25));
+    Assert.assertTrue(form.isValid());
+    Assert.assertNull(form.getInvalidField());
+  }
+
+  @Test
+  public void firstInvalidFieldIsReported() {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getParameter("count")).thenReturn("4x2");
+    when(request.getParameter("lat")).thenReturn("oops");
+
+    FormValidator form = new FormValidator(request);
+    form.positiveInteger("count");
+    form.decimal("lat");
+
+    Assert.assertFalse(form.isValid());
+    Assert.assertEquals("count", form.getInvalidField());
+  }
+
+  @Test
+  public void overflowingIntegerIsInvalid() {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getParameter("count")).thenReturn("2147483648");
+
+    FormValidator form = new FormValidator(request);
+
+    Assert.assertEquals(0, form.positiveInteger("count"));
+    Assert.assertEquals("count", form.getInvalidField());
+  }
+
+  @Test
+  public void missingAndTooLongTextIsInvalid() {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getParameter("description")).thenReturn("Too short");
+
+    FormValidator missing = new FormValidator(request);
+    missing.text("name", 1, 25);
+    FormValidator tooShort = new FormValidator(request);
+    tooShort.text("description", 15, 500);
+
+    Assert.assertEquals("name", missing.getInvalidField());
+    Assert.assertEquals("description", tooShort.getInvalidField());
+  }
+
+  @Test
+  public void failedRequirementIsReported() {
+    FormValidator form = new FormValidator(mock(HttpServletRequest.class));
+    form.require(true, "month");
+    form.require(false, "endHour");
+    form.require(false, "day");
+
+    Assert.assertEquals("endHour", form.getInvalidField());
+  }
+}
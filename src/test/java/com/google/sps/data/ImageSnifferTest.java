@@ -0,0 +1,87 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.blobstore.BlobstoreService;
+import com.google.sps.data.ImageSniffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests recognizing uploaded images by their first bytes. */
+@RunWith(JUnit4.class)
+public final class ImageSnifferTest {
+  private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0, 0x10};
+  private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 0x0D};
+  private static final byte[] GIF = "GIF89a".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] WEBP = "RIFF$\0\0\0WEBP".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] HTML = "<html><script>".getBytes(StandardCharsets.US_ASCII);
+
+  @Test
+  public void imageFormatsAreRecognized() {
+    Assert.assertEquals("image/jpeg", ImageSniffer.getImageType(JPEG));
+    Assert.assertEquals("image/png", ImageSniffer.getImageType(PNG));
+    Assert.assertEquals("image/gif", ImageSniffer.getImageType(GIF));
+    Assert.assertEquals("image/webp", ImageSniffer.getImageType(WEBP));
+  }
+
+  @Test
+  public void otherFilesAreNotImages() {
+    Assert.assertNull(ImageSniffer.getImageType(HTML));
+    Assert.assertNull(ImageSniffer.getImageType("RIFF\0\0\0\0WAVE".getBytes(StandardCharsets.US_ASCII)));
+    Assert.assertNull(ImageSniffer.getImageType(new byte[] {(byte) 0xFF}));
+    Assert.assertNull(ImageSniffer.getImageType(new byte[0]));
+  }
+
+  @Test
+  public void nonImageUploadsAreDeleted() {
+    BlobKey image = new BlobKey("image");
+    BlobKey script = new BlobKey("script");
+    BlobstoreService blobstoreService = mock(BlobstoreService.class);
+    when(blobstoreService.fetchData(eq(image), anyLong(), anyLong())).thenReturn(JPEG);
+    when(blobstoreService.fetchData(eq(script), anyLong(), anyLong())).thenReturn(HTML);
+    List<BlobKey> uploads = new ArrayList<BlobKey>(Arrays.asList(image, script));
+
+    List<BlobKey> deleted = ImageSniffer.deleteNonImages(blobstoreService, uploads);
+
+    Assert.assertEquals(Arrays.asList(script), deleted);
+    Assert.assertEquals(Arrays.asList(image), uploads);
+    verify(blobstoreService).delete(script);
+  }
+
+  @Test
+  public void unreadableUploadIsNotAnImage() {
+    BlobKey empty = new BlobKey("empty");
+    BlobstoreService blobstoreService = mock(BlobstoreService.class);
+    when(blobstoreService.fetchData(eq(empty), anyLong(), anyLong()))
+      .thenThrow(new IllegalArgumentException("Start index out of bounds"));
+
+    Assert.assertFalse(ImageSniffer.isImage(blobstoreService, empty));
+  }
+}
@@ -0,0 +1,107 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.images.Image;
+import com.google.appengine.api.images.ImagesService;
+import com.google.appengine.api.images.ImagesServiceFailureException;
+import com.google.appengine.api.images.OutputSettings;
+import com.google.appengine.api.images.Transform;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.ImageVariants;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests storing and serving resized copies of uploaded images. */
+@RunWith(JUnit4.class)
+public final class ImageVariantsTest {
+  private static final String BLOB_KEY = "fakeBlobKey";
+  private static final byte[] RESIZED = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 0x01};
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  // Mock an Images service that resizes every image to the given bytes.
+  private ImagesService mockImagesService(byte[] data) {
+    Image resized = mock(Image.class);
+    when(resized.getImageData()).thenReturn(data);
+    ImagesService imagesService = mock(ImagesService.class);
+    when(imagesService.applyTransform(any(Transform.class), any(Image.class), any(OutputSettings.class)))
+      .thenReturn(resized);
+    return imagesService;
+  }
+
+  @Test
+  public void everySizeIsStored() {
+    int stored = ImageVariants.createVariants(datastore, mockImagesService(RESIZED), BLOB_KEY);
+
+    Assert.assertEquals(ImageVariants.SIZES.size(), stored);
+    for (String size : ImageVariants.SIZES.keySet()) {
+      Assert.assertArrayEquals(RESIZED, ImageVariants.getVariant(datastore, BLOB_KEY, size));
+    }
+  }
+
+  @Test
+  public void unknownSizeHasNoVariant() {
+    ImageVariants.createVariants(datastore, mockImagesService(RESIZED), BLOB_KEY);
+
+    Assert.assertNull(ImageVariants.getVariant(datastore, BLOB_KEY, "huge"));
+    Assert.assertNull(ImageVariants.getVariant(datastore, "otherBlobKey", "card"));
+  }
+
+  @Test
+  public void unreadableImageHasNoVariants() {
+    ImagesService imagesService = mock(ImagesService.class);
+    when(imagesService.applyTransform(any(Transform.class), any(Image.class), any(OutputSettings.class)))
+      .thenThrow(new ImagesServiceFailureException("not an image"));
+
+    Assert.assertEquals(0, ImageVariants.createVariants(datastore, imagesService, BLOB_KEY));
+    Assert.assertNull(ImageVariants.getVariant(datastore, BLOB_KEY, "thumbnail"));
+  }
+
+  @Test
+  public void deletedVariantsAreGone() {
+    ImageVariants.createVariants(datastore, mockImagesService(RESIZED), BLOB_KEY);
+    ImageVariants.deleteVariants(datastore, BLOB_KEY);
+
+    for (String size : ImageVariants.SIZES.keySet()) {
+      Assert.assertNull(ImageVariants.getVariant(datastore, BLOB_KEY, size));
+    }
+  }
+}
@@ -0,0 +1,158 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.sps.benchmarks.FakeRequests;
+import com.google.sps.benchmarks.PostDatasets;
+import com.google.sps.data.InMemoryPostRepository;
+import com.google.sps.data.InMemoryUserRepository;
+import com.google.sps.data.Post;
+import com.google.sps.data.PostDelta;
+import com.google.sps.data.PostRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests keeping posts and users in memory. */
+@RunWith(JUnit4.class)
+public final class InMemoryRepositoriesTest {
+  private static final int POSTS = 30;
+
+  private final InMemoryPostRepository posts = new InMemoryPostRepository();
+  private final InMemoryUserRepository users = new InMemoryUserRepository();
+
+  private void savePosts() {
+    for (Post post : PostDatasets.posts(POSTS)) {
+      posts.save(PostDatasets.COLLEGE_ID, post);
+    }
+  }
+
+  @Test
+  public void feedOrdersMatchTheDatastoreIndexes() {
+    savePosts();
+
+    List<Post> byTime = posts.getFeed(PostDatasets.COLLEGE_ID, PostRepository.SORT_TIME, 0,
+      Integer.MAX_VALUE);
+    List<Post> byRank = posts.getFeed(PostDatasets.COLLEGE_ID, PostRepository.SORT_RANK, 0, 5);
+
+    Assert.assertEquals(POSTS, byTime.size());
+    for (int i = 1; i < byTime.size(); i++) {
+      Assert.assertTrue(byTime.get(i - 1).getTimeSort() <= byTime.get(i).getTimeSort());
+    }
+    List<Double> ranks = new ArrayList<Double>();
+    for (Post post : byTime) {
+      ranks.add(post.getRank());
+    }
+    ranks.sort(Collections.reverseOrder());
+    Assert.assertEquals(5, byRank.size());
+    for (int i = 0; i < byRank.size(); i++) {
+      Assert.assertEquals(ranks.get(i), byRank.get(i).getRank(), 0);
+    }
+    Assert.assertTrue(posts.getFeed("000000", PostRepository.SORT_TIME, 0, 10).isEmpty());
+  }
+
+  // Create a post that ended at midnight.
+  private Post endedPost() {
+    Map<String, String> parameters = PostDatasets.postParameters(1).get(0);
+    parameters.put("startHour", "12");
+    parameters.put("startAMorPM", "am");
+    parameters.put("endHour", "12");
+    parameters.put("endMinute", "0");
+    parameters.put("endAMorPM", "am");
+    Post ended = new Post();
+    ended.requestToPost(FakeRequests.withParameters(parameters));
+    return ended;
+  }
+
+  @Test
+  public void endedPostsAreDeleted() {
+    savePosts();
+    Post ended = endedPost();
+    posts.save(PostDatasets.COLLEGE_ID, ended);
+
+    List<Post> feed = posts.getFeed(PostDatasets.COLLEGE_ID, PostRepository.SORT_RANK, 0,
+      Integer.MAX_VALUE);
+
+    Assert.assertEquals(POSTS, feed.size());
+    Assert.assertFalse(feed.contains(ended));
+    Assert.assertEquals(POSTS, posts.getTodaysPosts(Arrays.asList(PostDatasets.COLLEGE_ID))
+      .get(PostDatasets.COLLEGE_ID).size());
+  }
+
+  @Test
+  public void changesSinceAVersionHoldOnlyNewAndExpiredPosts() {
+    savePosts();
+    PostDelta first = posts.getChangesSince(PostDatasets.COLLEGE_ID, 0);
+    Assert.assertTrue(first.isReset());
+    Assert.assertEquals(POSTS, first.getVersion());
+    Assert.assertEquals(POSTS, first.getPosts().size());
+
+    Post ended = endedPost();
+    posts.save(PostDatasets.COLLEGE_ID, ended);
+    Post added = PostDatasets.posts(1).get(0);
+    posts.save(PostDatasets.COLLEGE_ID, added);
+    // Reading the feed deletes the ended post.
+    posts.getFeed(PostDatasets.COLLEGE_ID, PostRepository.SORT_TIME, 0, Integer.MAX_VALUE);
+
+    PostDelta delta = posts.getChangesSince(PostDatasets.COLLEGE_ID, first.getVersion());
+    Assert.assertFalse(delta.isReset());
+    Assert.assertEquals(POSTS + 3, delta.getVersion());
+    Assert.assertEquals(Arrays.asList(added), delta.getPosts());
+    Assert.assertEquals(Arrays.asList(ended.getPostId()), delta.getDeleted());
+
+    PostDelta upToDate = posts.getChangesSince(PostDatasets.COLLEGE_ID, delta.getVersion());
+    Assert.assertEquals(delta.getVersion(), upToDate.getVersion());
+    Assert.assertTrue(upToDate.getPosts().isEmpty() && upToDate.getDeleted().isEmpty());
+  }
+
+  @Test
+  public void clientsTooFarBehindGetTheWholeFeed() {
+    // Only the changes after the second one are kept.
+    for (Post post : PostDatasets.posts(PostRepository.MAX_CHANGES + 2)) {
+      posts.save(PostDatasets.COLLEGE_ID, post);
+    }
+
+    PostDelta delta = posts.getChangesSince(PostDatasets.COLLEGE_ID, 1);
+    Assert.assertFalse(posts.getChangesSince(PostDatasets.COLLEGE_ID, 2).isReset());
+    Assert.assertTrue(delta.isReset());
+    Assert.assertEquals(PostRepository.MAX_CHANGES + 2, delta.getPosts().size());
+  }
+
+  @Test
+  public void subscribersMoveBetweenColleges() {
+    users.subscribe("a@google.com", "a", "000001");
+    users.subscribe("b@google.com", "b", "000001");
+    users.subscribe("c@google.com", "c", "000001");
+    users.subscribe("b@google.com", "b", "000002");
+    Assert.assertTrue(users.unsubscribe("c@google.com"));
+    Assert.assertFalse(users.unsubscribe("d@google.com"));
+
+    Iterator<List<String>> batches = users.getSubscriberBatches("000001", 1);
+    Assert.assertEquals(Arrays.asList("a@google.com"), batches.next());
+    Assert.assertFalse(batches.hasNext());
+    Assert.assertEquals(Arrays.asList("b@google.com"), users.getSubscriberBatches("000002", 10).next());
+    users.unsubscribe("a@google.com");
+    Assert.assertEquals(Arrays.asList("000002"), users.getSubscribedColleges());
+  }
+}
@@ -0,0 +1,122 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.benchmarks.PostDatasets;
+import com.google.sps.data.NotificationWindows;
+import com.google.sps.data.Post;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests holding posts back in notification windows until the windows end. */
+@RunWith(JUnit4.class)
+public final class NotificationWindowsTest {
+  private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(10);
+  // The start of a window, some day in 2020.
+  private static final long START = 1597000200000L;
+  private static final String OTHER_COLLEGE_ID = "110635";
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  private Post add(int id, String collegeId, long nowMillis) {
+    Post post = PostDatasets.posts(id + 1).get(id);
+    post.setPostId("Post(" + id + ")");
+    NotificationWindows.add(datastore, collegeId, post, nowMillis, WINDOW_MILLIS);
+    return post;
+  }
+
+  @Test
+  public void windowsStartAtMultiplesOfTheirLength() {
+    Assert.assertEquals(START, NotificationWindows.getWindowStart(START, WINDOW_MILLIS));
+    Assert.assertEquals(START,
+      NotificationWindows.getWindowStart(START + WINDOW_MILLIS - 1, WINDOW_MILLIS));
+    Assert.assertEquals(START + WINDOW_MILLIS,
+      NotificationWindows.getWindowStart(START + WINDOW_MILLIS, WINDOW_MILLIS));
+  }
+
+  @Test
+  public void onlyEndedWindowsAreReturnedByCollege() {
+    Post first = add(0, PostDatasets.COLLEGE_ID, START + 1000);
+    add(1, PostDatasets.COLLEGE_ID, START + WINDOW_MILLIS - 1);
+    add(2, OTHER_COLLEGE_ID, START + 5000);
+    // Still in the current window.
+    add(3, PostDatasets.COLLEGE_ID, START + WINDOW_MILLIS + 1000);
+
+    List<NotificationWindows.Window> windows =
+      NotificationWindows.getEndedWindows(datastore, START + WINDOW_MILLIS + 2000, WINDOW_MILLIS);
+
+    Assert.assertEquals(2, windows.size());
+    for (NotificationWindows.Window window : windows) {
+      Assert.assertEquals(START, window.getStart());
+      int expectedPosts = window.getCollegeId().equals(PostDatasets.COLLEGE_ID) ? 2 : 1;
+      Assert.assertEquals(expectedPosts, window.getPosts().size());
+    }
+
+    // Posts come back as they were held.
+    for (NotificationWindows.Window window : windows) {
+      for (Post pending : window.getPosts()) {
+        if (pending.getPostId().equals(first.getPostId())) {
+          Assert.assertEquals(first.getDescription(), pending.getDescription());
+          Assert.assertEquals(first.getTypeOfFood(), pending.getTypeOfFood());
+          return;
+        }
+      }
+    }
+    Assert.fail("Missing post " + first.getPostId());
+  }
+
+  @Test
+  public void removedWindowsAreNotReturnedAgain() {
+    add(0, PostDatasets.COLLEGE_ID, START);
+    add(1, PostDatasets.COLLEGE_ID, START + WINDOW_MILLIS);
+    long later = START + 3 * WINDOW_MILLIS;
+
+    List<NotificationWindows.Window> windows =
+      NotificationWindows.getEndedWindows(datastore, later, WINDOW_MILLIS);
+    Assert.assertEquals(2, windows.size());
+    Assert.assertEquals(START, windows.get(0).getStart());
+    NotificationWindows.remove(datastore, windows.get(0));
+
+    windows = NotificationWindows.getEndedWindows(datastore, later, WINDOW_MILLIS);
+    Assert.assertEquals(1, windows.size());
+    Assert.assertEquals(START + WINDOW_MILLIS, windows.get(0).getStart());
+    Assert.assertEquals("Post(1)", windows.get(0).getPosts().get(0).getPostId());
+  }
+}
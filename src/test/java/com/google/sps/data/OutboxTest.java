@@ -0,0 +1,109 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.Outbox;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests recording email deliveries in the outbox. */
+@RunWith(JUnit4.class)
+public final class OutboxTest {
+  private static final String EMAIL = "test@google.com";
+  private static final String DELIVERY_ID = "post-test";
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void digestDeliveryIdUsesDate() {
+    Calendar day = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+    day.set(2020, Calendar.AUGUST, 4);
+
+    Assert.assertEquals("digest-2020-08-04", Outbox.digestDeliveryId(day));
+  }
+
+  @Test
+  public void windowDeliveryIdFollowsThePosts() {
+    String deliveryId = Outbox.windowDeliveryId("123", 1597000200000L, Arrays.asList("1", "2"));
+
+    Assert.assertTrue(deliveryId.startsWith("window-123-1597000200000-"));
+    Assert.assertEquals(deliveryId,
+      Outbox.windowDeliveryId("123", 1597000200000L, Arrays.asList("2", "1")));
+    // A post found only after the window was emailed makes a new delivery.
+    Assert.assertNotEquals(deliveryId,
+      Outbox.windowDeliveryId("123", 1597000200000L, Arrays.asList("3")));
+  }
+
+  @Test
+  public void newDeliveryIsClaimed() {
+    Entity delivery = Outbox.claim(datastore, DELIVERY_ID, EMAIL);
+
+    Assert.assertNotNull(delivery);
+    Assert.assertEquals("pending", delivery.getProperty("status"));
+    Assert.assertFalse(Outbox.isSent(datastore, DELIVERY_ID, EMAIL));
+  }
+
+  @Test
+  public void sentDeliveryIsNotClaimedAgain() {
+    Outbox.markSent(datastore, Outbox.claim(datastore, DELIVERY_ID, EMAIL));
+
+    Assert.assertTrue(Outbox.isSent(datastore, DELIVERY_ID, EMAIL));
+    Assert.assertNull(Outbox.claim(datastore, DELIVERY_ID, EMAIL));
+  }
+
+  @Test
+  public void failedDeliveryIsRetried() {
+    Outbox.claim(datastore, DELIVERY_ID, EMAIL);
+    Entity retry = Outbox.claim(datastore, DELIVERY_ID, EMAIL);
+
+    Assert.assertNotNull(retry);
+    Assert.assertEquals(2L, retry.getProperty("attempts"));
+  }
+
+  @Test
+  public void deliveriesAreSeparatedByRecipient() {
+    Outbox.markSent(datastore, Outbox.claim(datastore, DELIVERY_ID, EMAIL));
+
+    Assert.assertFalse(Outbox.isSent(datastore, DELIVERY_ID, "other@google.com"));
+    Assert.assertFalse(Outbox.isSent(datastore, "post-other", EMAIL));
+  }
+}
@@ -0,0 +1,113 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.benchmarks.PostDatasets;
+import com.google.sps.data.PostChanges;
+import com.google.sps.metrics.MeteredDatastoreService;
+import com.google.sps.metrics.RequestMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests logging the posts created and expired at a college. */
+@RunWith(JUnit4.class)
+public final class PostChangesTest {
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  private List<Key> putCreated(int posts) {
+    List<Key> keys = new ArrayList<Key>();
+    for (Entity post : PostDatasets.entities(posts)) {
+      keys.add(PostChanges.putCreated(datastore, PostDatasets.COLLEGE_ID, post));
+    }
+    return keys;
+  }
+
+  @Test
+  public void expiryIsLoggedOnce() {
+    List<Key> posts = putCreated(2);
+
+    Assert.assertEquals(Arrays.asList(posts.get(0)),
+      PostChanges.deleteExpired(datastore, PostDatasets.COLLEGE_ID, posts.subList(0, 1)));
+    // Another reader found both posts expired before the first was deleted.
+    Assert.assertEquals(Arrays.asList(posts.get(1)),
+      PostChanges.deleteExpired(datastore, PostDatasets.COLLEGE_ID, posts));
+    Assert.assertTrue(PostChanges.deleteExpired(datastore, PostDatasets.COLLEGE_ID, posts).isEmpty());
+
+    Assert.assertEquals(4, PostChanges.getVersion(datastore, PostDatasets.COLLEGE_ID));
+    List<Entity> changes = PostChanges.getChangesSince(datastore, PostDatasets.COLLEGE_ID, 0);
+    Assert.assertEquals(4, changes.size());
+    Assert.assertEquals(posts.get(1), changes.get(3).getProperty("postKey"));
+    Assert.assertTrue(datastore.get(posts).isEmpty());
+  }
+
+  @Test
+  public void expiredPostsAreDeletedInBatches() {
+    // More posts than one cross-group transaction can hold.
+    List<Key> posts = putCreated(30);
+
+    Assert.assertEquals(posts,
+      PostChanges.deleteExpired(datastore, PostDatasets.COLLEGE_ID, posts));
+    Assert.assertEquals(60, PostChanges.getVersion(datastore, PostDatasets.COLLEGE_ID));
+    Assert.assertTrue(datastore.get(posts).isEmpty());
+  }
+
+  @Test
+  public void createdPostIsStoredWithItsChange() throws Exception {
+    putCreated(1);
+    DatastoreService meteredDatastore = new MeteredDatastoreService(datastore);
+    Entity post = PostDatasets.entities(1).get(0);
+
+    RequestMetrics.RequestStats stats = RequestMetrics.start();
+    Key postKey = PostChanges.putCreated(meteredDatastore, PostDatasets.COLLEGE_ID, post);
+    RequestMetrics.stop();
+
+    // Allocating the key, beginning the transaction, reading the college and a single put; the
+    // commit goes through the Transaction, which isn't metered.
+    Assert.assertEquals(4, stats.getDatastoreRpcs());
+    Assert.assertEquals(post.getProperty("organizationName"),
+      datastore.get(postKey).getProperty("organizationName"));
+    List<Entity> changes = PostChanges.getChangesSince(datastore, PostDatasets.COLLEGE_ID, 1);
+    Assert.assertEquals(postKey, changes.get(0).getProperty("postKey"));
+  }
+}
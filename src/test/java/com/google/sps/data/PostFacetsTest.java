@@ -0,0 +1,150 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.sps.benchmarks.FakeRequests;
+import com.google.sps.benchmarks.PostDatasets;
+import com.google.sps.data.Post;
+import com.google.sps.data.PostFacets;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests counting posts by facet and filtering them on facet values. */
+@RunWith(JUnit4.class)
+public final class PostFacetsTest {
+  private static final int POSTS = 200;
+
+  private final PostFacets facets = new PostFacets();
+  private final Calendar nowTime = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+  private List<Post> posts;
+
+  @Before
+  public void setUp() {
+    posts = PostDatasets.posts(POSTS);
+    for (int i = 0; i < posts.size(); i++) {
+      posts.get(i).setPostId(Integer.toString(i));
+      facets.add(posts.get(i));
+    }
+  }
+
+  // Count the posts under each value of a facet by reading every post.
+  private Map<String, Integer> count(String facet) {
+    Map<String, Integer> counts = new HashMap<String, Integer>();
+    for (Post post : posts) {
+      counts.merge(PostFacets.getValues(post).get(facet), 1, Integer::sum);
+    }
+    return counts;
+  }
+
+  @Test
+  public void postsAreBucketedBySizeAndTimeOfDay() {
+    Map<String, String> parameters = PostDatasets.postParameters(1).get(0);
+    parameters.put("numberOfPeopleItFeeds", "25");
+    parameters.put("startHour", "12");
+    parameters.put("startMinute", "0");
+    parameters.put("startAMorPM", "pm");
+    parameters.put("typeOfFood", " Pizza ");
+    Post post = new Post();
+    post.requestToPost(FakeRequests.withParameters(parameters));
+    Map<String, String> values = PostFacets.getValues(post);
+
+    Assert.assertEquals("pizza", values.get(PostFacets.FOOD));
+    Assert.assertEquals("11-25", values.get(PostFacets.FEEDS));
+    Assert.assertEquals("afternoon", values.get(PostFacets.TIME));
+  }
+
+  @Test
+  public void countsFollowAddedAndRemovedPosts() {
+    Map<String, Map<String, Integer>> counts = facets.getCounts(nowTime);
+    for (String facet : PostFacets.FACETS) {
+      Assert.assertEquals(facet, count(facet), new HashMap<String, Integer>(counts.get(facet)));
+      List<Integer> values = new ArrayList<Integer>(counts.get(facet).values());
+      List<Integer> sorted = new ArrayList<Integer>(values);
+      sorted.sort(Collections.reverseOrder());
+      Assert.assertEquals(facet, sorted, values);
+    }
+
+    String food = PostFacets.getValues(posts.get(0)).get(PostFacets.FOOD);
+    facets.remove(posts.get(0).getPostId());
+    facets.remove(posts.get(0).getPostId());
+
+    int expected = count(PostFacets.FOOD).get(food) - 1;
+    Assert.assertEquals(expected, (int) facets.getCounts(nowTime).get(PostFacets.FOOD).getOrDefault(food, 0));
+  }
+
+  @Test
+  public void endedPostsAreNotCounted() {
+    Map<String, String> parameters = PostDatasets.postParameters(1).get(0);
+    parameters.put("endHour", "12");
+    parameters.put("endMinute", "1");
+    parameters.put("endAMorPM", "am");
+    Post ended = new Post();
+    ended.requestToPost(FakeRequests.withParameters(parameters));
+    ended.setPostId("ended");
+    facets.add(ended);
+    Calendar noon = (Calendar) nowTime.clone();
+    noon.set(Calendar.HOUR_OF_DAY, 12);
+    noon.set(Calendar.MINUTE, 0);
+
+    Assert.assertEquals(count(PostFacets.FEEDS),
+      new HashMap<String, Integer>(facets.getCounts(noon).get(PostFacets.FEEDS)));
+
+    // Every post has ended by the next day.
+    noon.add(Calendar.DATE, 1);
+    for (String facet : PostFacets.FACETS) {
+      Assert.assertTrue(facet, facets.getCounts(noon).get(facet).isEmpty());
+    }
+  }
+
+  @Test
+  public void filterReturnsPostsUnderEverySelectedValueInTimeOrder() {
+    Map<String, String> selected = new LinkedHashMap<String, String>(PostFacets.getValues(posts.get(0)));
+    selected.remove(PostFacets.TIME);
+
+    List<Post> results = facets.filter(selected, nowTime, POSTS);
+
+    int expected = 0;
+    for (Post post : posts) {
+      if (PostFacets.getValues(post).entrySet().containsAll(selected.entrySet())) {
+        expected++;
+      }
+    }
+    Assert.assertEquals(expected, results.size());
+    for (int i = 1; i < results.size(); i++) {
+      Assert.assertTrue(results.get(i - 1).getTimeSort() <= results.get(i).getTimeSort());
+    }
+    Assert.assertTrue(facets.filter(Collections.singletonMap(PostFacets.FOOD, "gravel"), nowTime,
+      POSTS).isEmpty());
+    Assert.assertEquals(5, facets.filter(Collections.emptyMap(), nowTime, 5).size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unknownFacetsAreRejected() {
+    facets.filter(Collections.singletonMap("color", "red"), nowTime, POSTS);
+  }
+}
@@ -0,0 +1,110 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.sps.benchmarks.PostDatasets;
+import com.google.sps.data.Post;
+import com.google.sps.data.PostSearchIndex;
+import com.google.sps.data.PostTokenizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests tokenizing posts and searching them through the inverted index. */
+@RunWith(JUnit4.class)
+public final class PostSearchIndexTest {
+  private static final int POSTS = 200;
+
+  private final PostSearchIndex index = new PostSearchIndex();
+  private final Calendar nowTime = Calendar.getInstance(TimeZone.getTimeZone("America/Los_Angeles"));
+  private List<Post> posts;
+
+  @Before
+  public void setUp() {
+    posts = PostDatasets.posts(POSTS);
+    for (int i = 0; i < posts.size(); i++) {
+      posts.get(i).setPostId(Integer.toString(i));
+      index.add(posts.get(i));
+    }
+  }
+
+  // Find the posts matching a query by reading every post.
+  private List<Post> scan(String query) {
+    List<String> terms = PostTokenizer.tokenize(query);
+    String prefix = terms.get(terms.size() - 1);
+    List<Post> matches = new ArrayList<Post>();
+    for (Post post : posts) {
+      List<String> postTerms = new ArrayList<String>(PostTokenizer.getTerms(post));
+      boolean prefixMatches = postTerms.stream().anyMatch(term -> term.startsWith(prefix));
+      if (prefixMatches && postTerms.containsAll(terms.subList(0, terms.size() - 1))) {
+        matches.add(post);
+      }
+    }
+    matches.sort((a, b) -> Double.compare(b.getRank(), a.getRank()));
+    return matches;
+  }
+
+  @Test
+  public void tokenizerLowercasesAndSkipsStopWords() {
+    Assert.assertEquals(Arrays.asList("vegan", "pizza", "dbh", "6011"),
+      PostTokenizer.tokenize("The VEGAN pizza is at DBH-6011!"));
+    Assert.assertTrue(PostTokenizer.tokenize(" , and the ").isEmpty());
+  }
+
+  @Test
+  public void searchMatchesEveryTermInRankOrder() {
+    for (String query : Arrays.asList("pizza", "Vegan PIZZA", "fresh coffee goss", "club 4")) {
+      List<Post> expected = scan(query);
+      List<Post> results = index.search(query, nowTime, POSTS);
+
+      Assert.assertFalse(query, expected.isEmpty());
+      Assert.assertEquals(query, expected.size(), results.size());
+      for (int i = 0; i < results.size(); i++) {
+        Assert.assertEquals(query, expected.get(i).getRank(), results.get(i).getRank(), 0);
+      }
+    }
+  }
+
+  @Test
+  public void lastTermMatchesAsPrefix() {
+    List<Post> results = index.search("veg", nowTime, POSTS);
+
+    Assert.assertEquals(scan("veg").size(), results.size());
+    Assert.assertTrue(index.search("pizza xyz", nowTime, POSTS).isEmpty());
+    Assert.assertTrue(index.search("the", nowTime, POSTS).isEmpty());
+    Assert.assertEquals(5, index.search("p", nowTime, 5).size());
+  }
+
+  @Test
+  public void removedPostsAreNotFound() {
+    List<Post> before = index.search("pizza", nowTime, POSTS);
+    index.remove(before.get(0).getPostId());
+
+    List<Post> after = index.search("pizza", nowTime, POSTS);
+
+    Assert.assertEquals(before.size() - 1, after.size());
+    Assert.assertFalse(after.contains(before.get(0)));
+    Assert.assertEquals(POSTS - 1, index.size());
+  }
+}
@@ -1,6 +1,9 @@
 package com.google.sps;
 
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 import com.google.sps.data.Post;
+import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 import org.junit.Assert;
 import org.junit.runners.JUnit4;
@@ -657,4 +660,33 @@ public final class PostTest {
 
     Assert.assertEquals(1, testPost1.compareTo(testPost2));
   }
+
+  @Test
+  public void onlyQueriedPropertiesAreIndexed() {
+    Post post = requestToPost("122931", "Bread Club", "12", "31", "4", "30", "pm", "5", "30", "pm",
+      "Benson Memorial Center", "37.3476132", "-121.9394005", "100", "Bread",
+      "Bread Club is officially giving away free bread!");
+    // Creating entities needs an App Engine environment.
+    LocalServiceTestHelper helper = new LocalServiceTestHelper();
+    helper.setUp();
+    try {
+      checkIndexing(post.postToEntity("Post"));
+    } finally {
+      helper.tearDown();
+    }
+  }
+
+  private void checkIndexing(Entity entity) {
+    for (String name : entity.getProperties().keySet()) {
+      Assert.assertEquals(name, Post.INDEXED_PROPERTIES.contains(name), !entity.isUnindexedProperty(name));
+    }
+
+    // An entity stored before the policy, with every property indexed, is changed by it.
+    Entity allIndexed = entity.clone();
+    for (Map.Entry<String, Object> property : allIndexed.getProperties().entrySet()) {
+      allIndexed.setIndexedProperty(property.getKey(), property.getValue());
+    }
+    Assert.assertFalse(Post.applyIndexingPolicy(entity));
+    Assert.assertTrue(Post.applyIndexingPolicy(allIndexed));
+  }
 }
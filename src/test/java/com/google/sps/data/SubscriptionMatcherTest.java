@@ -0,0 +1,206 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.benchmarks.FakeRequests;
+import com.google.sps.benchmarks.PostDatasets;
+import com.google.sps.data.DatastoreUserRepository;
+import com.google.sps.data.Interests;
+import com.google.sps.data.Post;
+import com.google.sps.data.SubscriptionMatcher;
+import com.google.sps.data.UserRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests matching posts to subscribers' interests through the index and the grid. */
+@RunWith(JUnit4.class)
+public final class SubscriptionMatcherTest {
+  private static final int SUBSCRIBERS = 300;
+  private static final int POSTS = 100;
+  private static final String COLLEGE_ID = PostDatasets.COLLEGE_ID;
+  // Posts and subscribers are spread around this place, a few miles across.
+  private static final double LAT = 33.6405;
+  private static final double LNG = -117.8443;
+
+  private static final List<String> FOODS = Arrays.asList("pizza", "Bagels", "ice cream", "tacos");
+  private static final List<String> KEYWORDS = Arrays.asList("vegan", "club 4", "halal", "goss");
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+  private final Random random = new Random(42);
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  private List<String> pick(List<String> values) {
+    List<String> picked = new ArrayList<String>();
+    for (String value : values) {
+      if (random.nextInt(4) == 0) {
+        picked.add(value);
+      }
+    }
+    return picked;
+  }
+
+  // Subscribers with every mix of food types, keywords and distances, some wanting anything.
+  private Map<String, Interests> subscriptions() {
+    Map<String, Interests> subscriptions = new LinkedHashMap<String, Interests>();
+    for (int i = 0; i < SUBSCRIBERS; i++) {
+      double maxDistance = random.nextBoolean() ? 0 : 0.1 + random.nextInt(30) / 10.0;
+      subscriptions.put("user" + i + "@google.com", new Interests(pick(FOODS), pick(KEYWORDS),
+        LAT + random.nextGaussian() * 0.03, LNG + random.nextGaussian() * 0.03, maxDistance));
+    }
+    return subscriptions;
+  }
+
+  // Posts of the dataset spread around the same place.
+  private List<Post> posts() {
+    List<Map<String, String>> parameters = PostDatasets.postParameters(POSTS);
+    List<Post> posts = new ArrayList<Post>();
+    for (Map<String, String> post : parameters) {
+      post.put("lat", Double.toString(LAT + random.nextGaussian() * 0.03));
+      post.put("lng", Double.toString(LNG + random.nextGaussian() * 0.03));
+      if (random.nextInt(5) == 0) {
+        post.put("typeOfFood", "Ice Cream");
+      }
+      Post newPost = new Post();
+      newPost.requestToPost(FakeRequests.withParameters(post));
+      posts.add(newPost);
+    }
+    return posts;
+  }
+
+  // Find the subscribers of a post by checking every subscription.
+  private static List<String> scan(Map<String, Interests> subscriptions, Post post) {
+    List<String> matches = new ArrayList<String>();
+    for (Map.Entry<String, Interests> subscription : subscriptions.entrySet()) {
+      if (subscription.getValue().matches(post)) {
+        matches.add(subscription.getKey());
+      }
+    }
+    Collections.sort(matches);
+    return matches;
+  }
+
+  @Test
+  public void matchesTheSameSubscribersAsAScan() {
+    Map<String, Interests> subscriptions = subscriptions();
+    SubscriptionMatcher matcher = new SubscriptionMatcher();
+    for (Map.Entry<String, Interests> subscription : subscriptions.entrySet()) {
+      matcher.add(subscription.getKey(), subscription.getValue());
+    }
+
+    int matched = 0;
+    for (Post post : posts()) {
+      List<String> expected = scan(subscriptions, post);
+      Assert.assertEquals(expected, matcher.match(post));
+      matched += expected.size();
+    }
+    // The interests neither match every post nor none of them.
+    Assert.assertTrue(matched > 0);
+    Assert.assertTrue(matched < SUBSCRIBERS * POSTS);
+  }
+
+  @Test
+  public void replacedAndRemovedSubscriptionsStopMatching() {
+    Post post = posts().get(0);
+    SubscriptionMatcher matcher = new SubscriptionMatcher();
+    matcher.add("a@google.com", new Interests(Arrays.asList(post.getTypeOfFood()),
+      Collections.<String>emptyList(), post.getLat(), post.getLng(), 1));
+    matcher.add("b@google.com", Interests.ANYTHING);
+    Assert.assertEquals(Arrays.asList("a@google.com", "b@google.com"), matcher.match(post));
+
+    // Far away from the post now.
+    matcher.add("a@google.com", new Interests(Arrays.asList(post.getTypeOfFood()),
+      Collections.<String>emptyList(), post.getLat() + 1, post.getLng(), 1));
+    matcher.remove("b@google.com");
+
+    Assert.assertTrue(matcher.match(post).isEmpty());
+    Assert.assertEquals(1, matcher.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void distancesAreCapped() {
+    new Interests(Collections.<String>emptyList(), Collections.<String>emptyList(), LAT, LNG,
+      Interests.MAX_DISTANCE_MILES + 1);
+  }
+
+  @Test
+  public void datastoreMatcherFollowsChangedInterests() {
+    UserRepository users = new DatastoreUserRepository(DatastoreServiceFactory.getDatastoreService(),
+      DatastoreServiceFactory.getAsyncDatastoreService());
+    Post post = posts().get(0);
+    users.subscribe("a@google.com", "a", COLLEGE_ID);
+    users.subscribe("b@google.com", "b", COLLEGE_ID, new Interests(Arrays.asList("gravel"),
+      Collections.<String>emptyList(), 0, 0, 0));
+    Assert.assertEquals(Arrays.asList("a@google.com"), users.getMatchingSubscribers(COLLEGE_ID, post));
+
+    // Another instance changes the interests; the version on the college tells this one.
+    UserRepository otherInstance = new DatastoreUserRepository(
+      DatastoreServiceFactory.getDatastoreService(), DatastoreServiceFactory.getAsyncDatastoreService());
+    otherInstance.subscribe("b@google.com", "b", COLLEGE_ID, new Interests(
+      Arrays.asList(post.getTypeOfFood()), Collections.<String>emptyList(), 0, 0, 0));
+    otherInstance.unsubscribe("a@google.com");
+
+    Assert.assertEquals(Arrays.asList("b@google.com"), users.getMatchingSubscribers(COLLEGE_ID, post));
+  }
+
+  @Test
+  public void datastoreMatcherSeesSubscribersTheQueryMissed() {
+    // Writes are left out of queries until their entity is read again.
+    helper.tearDown();
+    LocalServiceTestHelper staleHelper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setDefaultHighRepJobPolicyUnappliedJobPercentage(100));
+    staleHelper.setUp();
+    try {
+      UserRepository users = new DatastoreUserRepository(
+        DatastoreServiceFactory.getDatastoreService(), DatastoreServiceFactory.getAsyncDatastoreService());
+      users.subscribe("a@google.com", "a", COLLEGE_ID);
+      users.subscribe("b@google.com", "b", COLLEGE_ID);
+      users.subscribe("c@google.com", "c", COLLEGE_ID);
+      users.subscribe("c@google.com", "c", "110635");
+
+      List<String> matches = users.getMatchingSubscribers(COLLEGE_ID, posts().get(0));
+      Collections.sort(matches);
+      Assert.assertEquals(Arrays.asList("a@google.com", "b@google.com"), matches);
+    } finally {
+      staleHelper.tearDown();
+      helper.setUp();
+    }
+  }
+}
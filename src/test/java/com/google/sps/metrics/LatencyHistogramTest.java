@@ -0,0 +1,65 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import com.google.sps.metrics.LatencyHistogram;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests estimating latency percentiles from buckets. */
+@RunWith(JUnit4.class)
+public final class LatencyHistogramTest {
+
+  @Test
+  public void emptyHistogramHasNoLatency() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    Assert.assertEquals(0, histogram.getCount());
+    Assert.assertEquals(0, histogram.getPercentileMillis(50));
+  }
+
+  @Test
+  public void percentilesUseBucketBounds() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 90; i++) {
+      histogram.record(3);
+    }
+    for (int i = 0; i < 9; i++) {
+      histogram.record(80);
+    }
+    histogram.record(700);
+
+    Assert.assertEquals(100, histogram.getCount());
+    Assert.assertEquals(5, histogram.getPercentileMillis(50));
+    Assert.assertEquals(100, histogram.getPercentileMillis(95));
+    Assert.assertEquals(100, histogram.getPercentileMillis(99));
+    Assert.assertEquals(1000, histogram.getPercentileMillis(100));
+    Assert.assertEquals(700, histogram.getMaxMillis());
+    Assert.assertEquals(9, (long) histogram.getBuckets().get("le100"));
+  }
+
+  @Test
+  public void slowestRequestsUseTheMaximum() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(1);
+    histogram.record(30000);
+
+    Assert.assertEquals(30000, histogram.getPercentileMillis(99));
+    Assert.assertEquals(1, (long) histogram.getBuckets().get("inf"));
+  }
+}
@@ -0,0 +1,138 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.metrics.MeteredDatastoreService;
+import com.google.sps.metrics.MetricsFilter;
+import com.google.sps.metrics.RequestMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests timing requests and counting their Datastore calls. */
+@RunWith(JUnit4.class)
+public final class MetricsFilterTest {
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+  private final MetricsFilter filter = new MetricsFilter();
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    RequestMetrics.reset();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  private HttpServletRequest request(String method, String path) {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getMethod()).thenReturn(method);
+    when(request.getServletPath()).thenReturn(path);
+    return request;
+  }
+
+  private HttpServletResponse response(int status) {
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    when(response.getStatus()).thenReturn(status);
+    return response;
+  }
+
+  @Test
+  public void datastoreCallsAreCountedPerRequest() throws Exception {
+    DatastoreService datastore =
+      new MeteredDatastoreService(DatastoreServiceFactory.getDatastoreService());
+    FilterChain chain = (request, response) -> {
+      List<Entity> posts = new ArrayList<Entity>();
+      for (int i = 0; i < 3; i++) {
+        posts.add(new Entity("Post"));
+      }
+      datastore.put(posts);
+      for (Entity post : datastore.prepare(new Query("Post")).asIterable()) {}
+      datastore.prepare(new Query("Post")).asList(FetchOptions.Builder.withLimit(2)).size();
+    };
+
+    filter.doFilter(request("GET", "/postData"), response(200), chain);
+    filter.doFilter(request("GET", "/postData"), response(200), chain);
+
+    RequestMetrics.EndpointMetrics metrics = RequestMetrics.getEndpoints().get("GET /postData");
+    Assert.assertEquals(2, metrics.getLatency().getCount());
+    Assert.assertEquals(6, metrics.getDatastoreRpcs());
+    // 3 + 3 + 2 in the first request, 3 + 6 + 2 in the second.
+    Assert.assertEquals(19, metrics.getDatastoreEntities());
+    Assert.assertEquals(0, metrics.getErrors());
+  }
+
+  @Test
+  public void failedRequestsAreErrors() throws Exception {
+    FilterChain chain = (request, response) -> {
+      throw new IllegalStateException("datastore unavailable");
+    };
+
+    try {
+      filter.doFilter(request("POST", "/user"), response(200), chain);
+      Assert.fail();
+    } catch (IllegalStateException expected) {}
+    filter.doFilter(request("POST", "/user"), response(503), (request, response) -> {});
+
+    RequestMetrics.EndpointMetrics metrics = RequestMetrics.getEndpoints().get("POST /user");
+    Assert.assertEquals(2, metrics.getLatency().getCount());
+    Assert.assertEquals(2, metrics.getErrors());
+  }
+
+  @Test
+  public void callsOutsideRequestsAreNotCounted() throws Exception {
+    DatastoreService datastore =
+      new MeteredDatastoreService(DatastoreServiceFactory.getDatastoreService());
+    datastore.put(new Entity("Post"));
+
+    filter.doFilter(request("GET", "/dailyDigest"), response(200), (request, response) -> {});
+
+    Assert.assertEquals(0,
+      RequestMetrics.getEndpoints().get("GET /dailyDigest").getDatastoreRpcs());
+  }
+
+  @Test
+  public void unknownMethodsShareAnEndpoint() throws Exception {
+    filter.doFilter(request("BREW", "/postData"), response(405), (request, response) -> {});
+    filter.doFilter(request("PURGE", "/postData"), response(405), (request, response) -> {});
+
+    Assert.assertNull(RequestMetrics.getEndpoints().get("BREW /postData"));
+    Assert.assertEquals(2,
+      RequestMetrics.getEndpoints().get("OTHER /postData").getLatency().getCount());
+  }
+}
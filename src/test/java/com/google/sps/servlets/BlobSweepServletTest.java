@@ -0,0 +1,43 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.google.sps.servlets.BlobSweepServlet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests who may run the blob sweep. */
+@RunWith(JUnit4.class)
+public final class BlobSweepServletTest {
+
+  @Test
+  public void sweepsOutsideCronAreForbidden() throws Exception {
+    HttpServletResponse response = mock(HttpServletResponse.class);
+
+    new BlobSweepServlet().doGet(mock(HttpServletRequest.class), response);
+
+    verify(response).sendError(HttpServletResponse.SC_FORBIDDEN);
+    verify(response, never()).getWriter();
+  }
+}
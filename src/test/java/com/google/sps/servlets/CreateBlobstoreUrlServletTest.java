@@ -4,11 +4,15 @@ import com.google.sps.servlets.CreateBlobstoreUrlServlet;
 import com.google.appengine.api.blobstore.BlobstoreFailureException;
 import com.google.appengine.api.blobstore.BlobstoreService;
 import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
+import com.google.appengine.api.blobstore.UploadOptions;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import org.junit.Assert;
 import org.junit.runners.JUnit4;
 import org.junit.runner.RunWith;
 import org.junit.Test;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(JUnit4.class)
@@ -18,19 +22,19 @@ public final class CreateBlobstoreUrlServletTest {
   
   public BlobstoreService mockBlobstore(String uploadUrl) {
     BlobstoreService blobstoreService = mock(BlobstoreService.class);
-    when(blobstoreService.createUploadUrl(SUCCESS_SERVLET)).thenReturn(uploadUrl);
+    when(blobstoreService.createUploadUrl(SUCCESS_SERVLET, CreateBlobstoreUrlServlet.getUploadOptions())).thenReturn(uploadUrl);
     return blobstoreService;
   }
 
   public BlobstoreService mockBlobstoreArgumentError() {
     BlobstoreService blobstoreService = mock(BlobstoreService.class);
-    when(blobstoreService.createUploadUrl(SUCCESS_SERVLET)).thenThrow(IllegalArgumentException.class);
+    when(blobstoreService.createUploadUrl(SUCCESS_SERVLET, CreateBlobstoreUrlServlet.getUploadOptions())).thenThrow(IllegalArgumentException.class);
     return blobstoreService;
   }
 
   public BlobstoreService mockBlobstoreError() {
     BlobstoreService blobstoreService = mock(BlobstoreService.class);
-    when(blobstoreService.createUploadUrl(SUCCESS_SERVLET)).thenThrow(BlobstoreFailureException.class);
+    when(blobstoreService.createUploadUrl(SUCCESS_SERVLET, CreateBlobstoreUrlServlet.getUploadOptions())).thenThrow(BlobstoreFailureException.class);
     return blobstoreService;
   }
 
@@ -58,4 +62,25 @@ public final class CreateBlobstoreUrlServletTest {
 
     Assert.assertEquals(resultUrl, "");
   }
+
+  @Test
+  public void testUploadSizeIsLimited() {
+    BlobstoreService mockBlobstoreService = mockBlobstore("www.fakeuploadurl.com");
+    createBlobstoreUrlServlet.getUploadUrl(mockBlobstoreService);
+
+    UploadOptions expectedOptions = UploadOptions.Builder
+      .withMaxUploadSizeBytesPerBlob(CreateBlobstoreUrlServlet.MAX_UPLOAD_BYTES)
+      .maxUploadSizeBytes(CreateBlobstoreUrlServlet.MAX_UPLOAD_BYTES);
+    verify(mockBlobstoreService).createUploadUrl(SUCCESS_SERVLET, expectedOptions);
+  }
+
+  @Test
+  public void refillsOutsideTheTaskQueueAreForbidden() throws Exception {
+    HttpServletResponse response = mock(HttpServletResponse.class);
+
+    createBlobstoreUrlServlet.doPost(mock(HttpServletRequest.class), response);
+
+    verify(response).sendError(HttpServletResponse.SC_FORBIDDEN);
+    Assert.assertEquals(0, createBlobstoreUrlServlet.getUploadUrlPool().getRefills());
+  }
 }
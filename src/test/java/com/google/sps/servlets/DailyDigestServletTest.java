@@ -21,16 +21,11 @@ import static org.mockito.Mockito.mock;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.CompositeFilter;
-import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
-import com.google.appengine.api.datastore.Query.Filter;
-import com.google.appengine.api.datastore.Query.FilterPredicate;
-import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.DatastorePostRepository;
 import com.google.sps.data.Post;
+import com.google.sps.data.PostRepository;
 
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -47,7 +42,7 @@ import org.junit.runners.JUnit4;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
-/** Tests ranking posts for the Daily Digest. */
+/** Tests ranking today's posts for the Daily Digest. */
 @RunWith(JUnit4.class)
 public class DailyDigestServletTest {
   private static final String ORGANIZATION_NAME = "TEST ORGANIZATION NAME";
@@ -69,7 +64,6 @@ public class DailyDigestServletTest {
   private static DailyDigestServlet dailyDigestServlet;
   private static DatastoreService datastore;
 
-  @Mock private static PreparedQuery mockPreparedQuery;
   @Mock private static HttpServletRequest mockRequest;
 
   @Before
@@ -85,6 +79,14 @@ public class DailyDigestServletTest {
     helper.tearDown();
   }
 
+  /* Rank the college's posts of today, as read by the repository the digest uses. */
+  private ArrayList<Post> rankTodaysPosts() {
+    PostRepository posts = new DatastorePostRepository(datastore,
+      DatastoreServiceFactory.getAsyncDatastoreService());
+    return DailyDigestServlet.rankPosts(
+      posts.getTodaysPosts(Collections.singletonList(COLLEGE_ID)).get(COLLEGE_ID));
+  }
+
   /* Get a post created from requestToPost() by mocking a request. */
   private Post requestToPostHelper(String collegeId, String organizationName, int month, int day, 
       int startHour, int startMinute, String startAMorPM, int endHour, 
@@ -126,11 +128,7 @@ public class DailyDigestServletTest {
     datastore.put(todayLowRankTestPost.postToEntity("Post"));
     datastore.put(todayHighRankTestPost.postToEntity("Post"));
   
-    Query q = new Query("Post").setFilter(dailyDigestServlet.getFilters(COLLEGE_ID));
-    PreparedQuery pq = datastore.prepare(q);
-    when(mockPreparedQuery.asIterable()).thenReturn(pq.asIterable());
-
-    ArrayList<Post> rankedPosts = dailyDigestServlet.rankPosts(COLLEGE_ID);
+    ArrayList<Post> rankedPosts = rankTodaysPosts();
     
     Assert.assertEquals(2, rankedPosts.size());
     Assert.assertEquals(0.55, rankedPosts.get(0).getRank(), 0.05);
@@ -152,11 +150,7 @@ public class DailyDigestServletTest {
     datastore.put(futureTestPost.postToEntity("Post"));
     datastore.put(futureTestPost.postToEntity("Post"));
 
-    Query q = new Query("Post").setFilter(dailyDigestServlet.getFilters(COLLEGE_ID));
-    PreparedQuery pq = datastore.prepare(q);
-    when(mockPreparedQuery.asIterable()).thenReturn(pq.asIterable());
-
-    ArrayList<Post> rankedPosts = dailyDigestServlet.rankPosts(COLLEGE_ID);
+    ArrayList<Post> rankedPosts = rankTodaysPosts();
 
     Assert.assertEquals(0, rankedPosts.size());
   }
@@ -186,11 +180,7 @@ public class DailyDigestServletTest {
     datastore.put(testPost3.postToEntity("Post"));
     datastore.put(testPost4.postToEntity("Post"));
 
-    Query q = new Query("Post").setFilter(dailyDigestServlet.getFilters(COLLEGE_ID));
-    PreparedQuery pq = datastore.prepare(q);
-    when(mockPreparedQuery.asIterable()).thenReturn(pq.asIterable());
-
-    ArrayList<Post> rankedPosts = dailyDigestServlet.rankPosts(COLLEGE_ID);
+    ArrayList<Post> rankedPosts = rankTodaysPosts();
 
     Assert.assertEquals(3, rankedPosts.size());
     Assert.assertEquals(0.5, rankedPosts.get(0).getRank(), 0.05);
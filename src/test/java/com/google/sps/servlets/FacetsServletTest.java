@@ -0,0 +1,144 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.sps.benchmarks.PostDatasets;
+import com.google.sps.data.DatastorePostRepository;
+import com.google.sps.data.Post;
+import com.google.sps.data.PostFacets;
+import com.google.sps.data.PostRepository;
+import com.google.sps.data.Repositories;
+import com.google.sps.servlets.FacetsServlet;
+import com.google.sps.servlets.PostDataServlet;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests counting posts stored in Datastore by facet, and fetching the posts under one. */
+@RunWith(JUnit4.class)
+public final class FacetsServletTest {
+  private static final int POSTS = 20;
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+  private final FacetsServlet facetsServlet = new FacetsServlet();
+  private final PostDataServlet postDataServlet = new PostDataServlet();
+
+  private PostRepository previousPosts;
+
+  // Each test gets a repository of its own, since indexes outlive the local Datastore.
+  @Before
+  public void setUp() {
+    helper.setUp();
+    previousPosts = Repositories.posts();
+    Repositories.setPosts(new DatastorePostRepository(DatastoreServiceFactory.getDatastoreService(),
+      DatastoreServiceFactory.getAsyncDatastoreService()));
+  }
+
+  @After
+  public void tearDown() {
+    Repositories.setPosts(previousPosts);
+    helper.tearDown();
+  }
+
+  private HttpServletRequest request(String parameter, String value) {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getParameter("collegeId")).thenReturn(PostDatasets.COLLEGE_ID);
+    when(request.getParameter(parameter)).thenReturn(value);
+    return request;
+  }
+
+  // Return what a servlet wrote, or null if nothing was written.
+  private JsonElement get(HttpServletRequest request, HttpServletResponse response,
+      boolean facets) throws Exception {
+    StringWriter body = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(body, true));
+    if (facets) {
+      facetsServlet.doGet(request, response);
+    } else {
+      postDataServlet.doGet(request, response);
+    }
+    return body.toString().isEmpty() ? null : new JsonParser().parse(body.toString());
+  }
+
+  private JsonObject getFoodCounts() throws Exception {
+    return get(request("collegeId", PostDatasets.COLLEGE_ID), mock(HttpServletResponse.class), true)
+      .getAsJsonObject().get(PostFacets.FOOD).getAsJsonObject();
+  }
+
+  @Test
+  public void countsAndFilteredFeedFollowNewPosts() throws Exception {
+    List<Post> posts = PostDatasets.posts(POSTS + 1);
+    for (Post post : posts.subList(0, POSTS)) {
+      Repositories.posts().save(PostDatasets.COLLEGE_ID, post);
+    }
+    String food = PostFacets.getValues(posts.get(0)).get(PostFacets.FOOD);
+
+    JsonObject counts = getFoodCounts();
+    int total = 0;
+    for (String value : counts.keySet()) {
+      total += counts.get(value).getAsInt();
+    }
+    Assert.assertEquals(POSTS, total);
+    int matches = counts.get(food).getAsInt();
+
+    // Food types are matched regardless of case.
+    JsonArray feed = get(request(PostFacets.FOOD, food.toUpperCase()),
+      mock(HttpServletResponse.class), false).getAsJsonArray();
+    Assert.assertEquals(matches, feed.size());
+    for (JsonElement post : feed) {
+      Assert.assertEquals(food, post.getAsJsonObject().get("typeOfFood").getAsString().toLowerCase());
+    }
+
+    Repositories.posts().save(PostDatasets.COLLEGE_ID, posts.get(POSTS));
+    String addedFood = PostFacets.getValues(posts.get(POSTS)).get(PostFacets.FOOD);
+    Assert.assertEquals(addedFood.equals(food) ? matches + 1 : matches,
+      getFoodCounts().get(food).getAsInt());
+  }
+
+  @Test
+  public void facetsOnlyFilterTheTimeOrder() throws Exception {
+    HttpServletRequest request = request(PostFacets.FOOD, "pizza");
+    when(request.getParameter("sort")).thenReturn("rank");
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    Assert.assertNull(get(request, response, false));
+    verify(response).setStatus(400);
+
+    response = mock(HttpServletResponse.class);
+    Assert.assertNull(get(mock(HttpServletRequest.class), response, true));
+    verify(response).setStatus(400);
+  }
+}
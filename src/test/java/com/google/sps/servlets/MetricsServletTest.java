@@ -0,0 +1,91 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalUserServiceTestConfig;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.sps.metrics.RequestMetrics;
+import com.google.sps.servlets.MetricsServlet;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests showing request metrics to admins. */
+@RunWith(JUnit4.class)
+public final class MetricsServletTest {
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalUserServiceTestConfig())
+      .setEnvEmail("admin@example.com")
+      .setEnvAuthDomain("example.com")
+      .setEnvIsLoggedIn(true);
+  private final MetricsServlet servlet = new MetricsServlet();
+
+  @Before
+  public void setUp() {
+    RequestMetrics.reset();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void adminsSeeEndpointMetrics() throws Exception {
+    helper.setEnvIsAdmin(true).setUp();
+    RequestMetrics.RequestStats stats = RequestMetrics.start();
+    RequestMetrics.recordDatastoreRpc(10);
+    RequestMetrics.recordDatastoreRpc(1);
+    RequestMetrics.stop();
+    RequestMetrics.record("GET /postData", 42, 200, stats);
+
+    StringWriter body = new StringWriter();
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    when(response.getWriter()).thenReturn(new PrintWriter(body, true));
+    servlet.doGet(mock(HttpServletRequest.class), response);
+
+    JsonObject metrics =
+      new JsonParser().parse(body.toString()).getAsJsonObject().getAsJsonObject("GET /postData");
+    Assert.assertEquals(1, metrics.get("requests").getAsLong());
+    Assert.assertEquals(50, metrics.get("p50Millis").getAsLong());
+    Assert.assertEquals(2, metrics.get("datastoreRpcs").getAsLong());
+    Assert.assertEquals(11, metrics.get("datastoreEntities").getAsLong());
+  }
+
+  @Test
+  public void otherUsersAreForbidden() throws Exception {
+    helper.setEnvIsAdmin(false).setUp();
+    HttpServletResponse response = mock(HttpServletResponse.class);
+
+    servlet.doGet(mock(HttpServletRequest.class), response);
+
+    verify(response).sendError(HttpServletResponse.SC_FORBIDDEN);
+  }
+}
@@ -0,0 +1,123 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+import com.google.gson.JsonParser;
+import com.google.sps.benchmarks.PostDatasets;
+import com.google.sps.servlets.PostDataServlet;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Stress tests a single PostDataServlet handling GET and POST requests in parallel. */
+@RunWith(JUnit4.class)
+public final class PostDataServletConcurrencyTest {
+  private static final int THREADS = 8;
+  private static final int POSTS_PER_THREAD = 25;
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+  private final PostDataServlet servlet = new PostDataServlet();
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  // Mock the form submission of a post.
+  private HttpServletRequest postRequest(Map<String, String> parameters) {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+      when(request.getParameter(parameter.getKey())).thenReturn(parameter.getValue());
+    }
+    return request;
+  }
+
+  // Get the college's feed and return the number of posts in it.
+  private int getFeedSize() throws Exception {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getParameter("collegeId")).thenReturn(PostDatasets.COLLEGE_ID);
+    StringWriter body = new StringWriter();
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    when(response.getWriter()).thenReturn(new PrintWriter(body));
+
+    servlet.doGet(request, response);
+    return new JsonParser().parse(body.toString()).getAsJsonArray().size();
+  }
+
+  @Test
+  public void parallelPostsAndReadsAreAllServed() throws Exception {
+    List<Map<String, String>> posts = PostDatasets.postParameters(THREADS * POSTS_PER_THREAD);
+
+    // App Engine services are reached through the environment of the calling thread, which
+    // the request threads of a real instance would each have.
+    ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+    for (int t = 0; t < THREADS; t++) {
+      List<Map<String, String>> threadPosts =
+        posts.subList(t * POSTS_PER_THREAD, (t + 1) * POSTS_PER_THREAD);
+      results.add(executor.submit((Callable<Integer>) () -> {
+        ApiProxy.setEnvironmentForCurrentThread(environment);
+        start.await();
+        int largestFeed = 0;
+        for (Map<String, String> post : threadPosts) {
+          servlet.doPost(postRequest(post), mock(HttpServletResponse.class));
+          largestFeed = Math.max(largestFeed, getFeedSize());
+        }
+        return largestFeed;
+      }));
+    }
+
+    start.countDown();
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES));
+    for (Future<Integer> result : results) {
+      // Rethrows anything that failed on a request thread.
+      Assert.assertTrue(result.get() >= POSTS_PER_THREAD);
+    }
+    Assert.assertEquals(THREADS * POSTS_PER_THREAD, getFeedSize());
+  }
+}
@@ -0,0 +1,297 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.blobstore.BlobInfoFactory;
+import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.blobstore.BlobstoreService;
+import com.google.appengine.api.blobstore.dev.BlobStorageFactory;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalBlobstoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.sps.benchmarks.FakeRequests;
+import com.google.sps.benchmarks.PostDatasets;
+import com.google.sps.data.BlobLifecycle;
+import com.google.sps.data.DatastorePostRepository;
+import com.google.sps.data.Post;
+import com.google.sps.data.PostRepository;
+import com.google.sps.data.Repositories;
+import com.google.sps.servlets.PostDataServlet;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests the orders, limits and changes of the feed. */
+@RunWith(JUnit4.class)
+public final class PostDataServletTest {
+  private static final int POSTS = 30;
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig(),
+      new LocalBlobstoreServiceTestConfig().setNoStorage(true));
+  private final PostDataServlet servlet = new PostDataServlet();
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  private HttpServletRequest feedRequest(String sort, String limit) {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getParameter("collegeId")).thenReturn(PostDatasets.COLLEGE_ID);
+    when(request.getParameter("sort")).thenReturn(sort);
+    when(request.getParameter("limit")).thenReturn(limit);
+    return request;
+  }
+
+  // Get the feed and return the posts in it, or null if nothing was written.
+  private JsonArray getFeed(HttpServletRequest request, HttpServletResponse response)
+      throws Exception {
+    StringWriter body = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(body, true));
+    servlet.doGet(request, response);
+    return body.toString().isEmpty() ? null : new JsonParser().parse(body.toString()).getAsJsonArray();
+  }
+
+  // Get the changes to the feed since a version, or null if nothing was written.
+  private JsonObject getChanges(String since, HttpServletResponse response) throws Exception {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getParameter("collegeId")).thenReturn(PostDatasets.COLLEGE_ID);
+    when(request.getParameter("since")).thenReturn(since);
+    StringWriter body = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(body, true));
+    servlet.doGet(request, response);
+    return body.toString().isEmpty() ? null : new JsonParser().parse(body.toString()).getAsJsonObject();
+  }
+
+  @Test
+  public void feedIsInTimeOrderByDefault() throws Exception {
+    datastore.put(PostDatasets.entities(POSTS));
+
+    JsonArray feed = getFeed(feedRequest(null, null), mock(HttpServletResponse.class));
+
+    Assert.assertEquals(POSTS, feed.size());
+    for (int i = 1; i < feed.size(); i++) {
+      Assert.assertTrue(feed.get(i - 1).getAsJsonObject().get("timeSort").getAsInt()
+        <= feed.get(i).getAsJsonObject().get("timeSort").getAsInt());
+    }
+  }
+
+  @Test
+  public void rankOrderReturnsTheTopPosts() throws Exception {
+    List<Double> ranks = new ArrayList<Double>();
+    for (Post post : PostDatasets.posts(POSTS)) {
+      ranks.add(post.getRank());
+    }
+    ranks.sort(Collections.reverseOrder());
+    datastore.put(PostDatasets.entities(POSTS));
+
+    JsonArray feed = getFeed(feedRequest("rank", "5"), mock(HttpServletResponse.class));
+
+    Assert.assertEquals(5, feed.size());
+    for (int i = 0; i < feed.size(); i++) {
+      Assert.assertEquals(ranks.get(i), feed.get(i).getAsJsonObject().get("rank").getAsDouble(), 0);
+    }
+  }
+
+  @Test
+  public void endingSoonSkipsEndedPosts() {
+    List<Entity> entities = PostDatasets.entities(4);
+    List<Integer> endTimes = Arrays.asList(500, 1439, 650, 700);
+    for (int i = 0; i < entities.size(); i++) {
+      entities.get(i).setProperty("endTimeSort", endTimes.get(i));
+    }
+    datastore.put(entities);
+
+    List<Post> posts = Post.queryToPosts(datastore.prepare(DatastorePostRepository.getFeedQuery(
+      PostDatasets.COLLEGE_ID, PostRepository.SORT_ENDING_SOON, 600)), datastore, 2);
+
+    Assert.assertEquals(2, posts.size());
+    Assert.assertEquals(650, posts.get(0).getEndTimeSort());
+    Assert.assertEquals(700, posts.get(1).getEndTimeSort());
+  }
+
+  @Test
+  public void expiredPostsAreDeletedWhileTheFeedIsRead() {
+    List<Entity> entities = PostDatasets.entities(5);
+    for (int i = 0; i < 2; i++) {
+      entities.get(i).setProperty("year", 2019L);
+    }
+    datastore.put(entities);
+
+    List<Post> posts = Post.queryToPosts(datastore.prepare(DatastorePostRepository.getFeedQuery(
+      PostDatasets.COLLEGE_ID, PostRepository.SORT_TIME, 0)), datastore);
+
+    Assert.assertEquals(3, posts.size());
+    Assert.assertEquals(3,
+      datastore.prepare(new Query("Post")).countEntities(FetchOptions.Builder.withDefaults()));
+  }
+
+  @Test
+  public void changesSinceAVersionHoldOnlyNewAndExpiredPosts() throws Exception {
+    List<Post> posts = PostDatasets.posts(POSTS + 1);
+    for (Post post : posts.subList(0, POSTS)) {
+      Repositories.posts().save(PostDatasets.COLLEGE_ID, post);
+    }
+    JsonObject first = getChanges("0", mock(HttpServletResponse.class));
+    Assert.assertTrue(first.get("reset").getAsBoolean());
+    Assert.assertEquals(POSTS, first.get("version").getAsLong());
+    Assert.assertEquals(POSTS, first.get("posts").getAsJsonArray().size());
+
+    // One post is added and another one has ended by the time the feed is read again.
+    Post added = posts.get(POSTS);
+    Repositories.posts().save(PostDatasets.COLLEGE_ID, added);
+    for (Entity entity : datastore.prepare(new Query("Post")).asIterable()) {
+      if (entity.getKey().toString().equals(posts.get(0).getPostId())) {
+        entity.setProperty("year", 2019L);
+        datastore.put(entity);
+      }
+    }
+    getFeed(feedRequest(null, null), mock(HttpServletResponse.class));
+
+    JsonObject delta = getChanges(first.get("version").getAsString(), mock(HttpServletResponse.class));
+    Assert.assertFalse(delta.get("reset").getAsBoolean());
+    Assert.assertEquals(POSTS + 2, delta.get("version").getAsLong());
+    JsonArray addedPosts = delta.get("posts").getAsJsonArray();
+    Assert.assertEquals(1, addedPosts.size());
+    Assert.assertEquals(added.getPostId(),
+      addedPosts.get(0).getAsJsonObject().get("postId").getAsString());
+    Assert.assertEquals(posts.get(0).getPostId(),
+      delta.get("deleted").getAsJsonArray().get(0).getAsString());
+
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    Assert.assertNull(getChanges("yesterday", response));
+    verify(response).setStatus(400);
+  }
+
+  @Test
+  public void resetHoldsPostsTheFeedQueryMissed() throws Exception {
+    // Writes are left out of queries until their entity is read again.
+    helper.tearDown();
+    LocalServiceTestHelper staleHelper = new LocalServiceTestHelper(
+      new LocalDatastoreServiceTestConfig().setDefaultHighRepJobPolicyUnappliedJobPercentage(100));
+    staleHelper.setUp();
+    try {
+      for (Post post : PostDatasets.posts(POSTS)) {
+        Repositories.posts().save(PostDatasets.COLLEGE_ID, post);
+      }
+
+      JsonObject reset = getChanges("0", mock(HttpServletResponse.class));
+
+      Assert.assertTrue(reset.get("reset").getAsBoolean());
+      Assert.assertEquals(POSTS, reset.get("version").getAsLong());
+      Assert.assertEquals(POSTS, reset.get("posts").getAsJsonArray().size());
+    } finally {
+      staleHelper.tearDown();
+      helper.setUp();
+    }
+  }
+
+  @Test
+  public void badOrdersAndLimitsAreRejected() throws Exception {
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    Assert.assertNull(getFeed(feedRequest("oldest", null), response));
+    verify(response).setStatus(400);
+
+    response = mock(HttpServletResponse.class);
+    Assert.assertNull(getFeed(feedRequest("rank", "0"), response));
+    verify(response).setStatus(400);
+
+    response = mock(HttpServletResponse.class);
+    Assert.assertNull(getFeed(feedRequest("rank", "ten"), response));
+    verify(response).setStatus(400);
+  }
+
+  @Test
+  public void uploadIsSweptWhenThePostIsNotStored() throws Exception {
+    // Upload a JPEG with the post's form.
+    BlobKey upload = new BlobKey("uploadBlobKey");
+    try (OutputStream blob = BlobStorageFactory.getBlobStorage().storeBlob(upload)) {
+      blob.write(new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0});
+    }
+    Entity blobInfo = new Entity(KeyFactory.createKey(BlobInfoFactory.KIND, upload.getKeyString()));
+    blobInfo.setProperty(BlobInfoFactory.CONTENT_TYPE, "image/jpeg");
+    blobInfo.setProperty(BlobInfoFactory.CREATION, new Date());
+    blobInfo.setProperty(BlobInfoFactory.FILENAME, "food.jpeg");
+    blobInfo.setProperty(BlobInfoFactory.SIZE, 4L);
+    blobInfo.setProperty(BlobInfoFactory.MD5_HASH, "");
+    datastore.put(blobInfo);
+
+    Map<String, String> parameters = FakeRequests.newPostParameters(PostDatasets.COLLEGE_ID);
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+      when(request.getParameter(parameter.getKey())).thenReturn(parameter.getValue());
+    }
+    when(request.getAttribute("com.google.appengine.api.blobstore.upload.blobkeys")).thenReturn(
+      Collections.singletonMap("foodImage", Collections.singletonList(upload.getKeyString())));
+
+    PostRepository previousPosts = Repositories.posts();
+    PostRepository failingPosts = mock(PostRepository.class);
+    when(failingPosts.save(any(), any())).thenThrow(new ConcurrentModificationException());
+    Repositories.setPosts(failingPosts);
+    try {
+      servlet.doPost(request, mock(HttpServletResponse.class));
+      Assert.fail("The post was stored");
+    } catch (ConcurrentModificationException e) {
+      // The post's image was uploaded before the post failed to store.
+    } finally {
+      Repositories.setPosts(previousPosts);
+    }
+
+    BlobstoreService blobstoreService = mock(BlobstoreService.class);
+    BlobLifecycle.SweepResult result = BlobLifecycle.sweep(datastore, blobstoreService, -1000, 100);
+
+    Assert.assertEquals(1, result.getDeletedBlobs());
+    verify(blobstoreService).delete(upload);
+  }
+}
@@ -0,0 +1,108 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.benchmarks.PostDatasets;
+import com.google.sps.data.Post;
+import com.google.sps.servlets.PostIndexMigrationServlet;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests rewriting stored posts with the Post indexing policy. */
+@RunWith(JUnit4.class)
+public final class PostIndexMigrationServletTest {
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  // Store posts the way they were stored before the indexing policy, with every property indexed.
+  private void putFullyIndexedPosts(int count) {
+    List<Entity> entities = PostDatasets.entities(count);
+    for (Entity entity : entities) {
+      for (Map.Entry<String, Object> property : entity.getProperties().entrySet()) {
+        entity.setIndexedProperty(property.getKey(), property.getValue());
+      }
+    }
+    datastore.put(entities);
+  }
+
+  private int countPostsAt(String location) {
+    Query query = new Query("Post").setKeysOnly()
+      .setFilter(new FilterPredicate("location", FilterOperator.EQUAL, location));
+    return datastore.prepare(query).asList(FetchOptions.Builder.withDefaults()).size();
+  }
+
+  @Test
+  public void postsAreRewrittenInBatches() {
+    putFullyIndexedPosts(25);
+    Assert.assertTrue(countPostsAt("Goss Stadium") > 0);
+
+    PostIndexMigrationServlet.BatchResult first =
+      PostIndexMigrationServlet.migrateBatch(datastore, null, 10);
+    PostIndexMigrationServlet.BatchResult second =
+      PostIndexMigrationServlet.migrateBatch(datastore, first.getCursor(), 10);
+    PostIndexMigrationServlet.BatchResult last =
+      PostIndexMigrationServlet.migrateBatch(datastore, second.getCursor(), 10);
+
+    Assert.assertEquals(10, first.getRewritten());
+    Assert.assertEquals(10, second.getRewritten());
+    Assert.assertEquals(5, last.getRead());
+    Assert.assertNull(last.getCursor());
+    // Unindexed properties can no longer be queried.
+    Assert.assertEquals(0, countPostsAt("Goss Stadium"));
+    for (Entity post : datastore.prepare(new Query("Post")).asIterable()) {
+      Assert.assertFalse(Post.applyIndexingPolicy(post));
+    }
+  }
+
+  @Test
+  public void migratedPostsAreNotRewrittenAgain() {
+    datastore.put(PostDatasets.entities(5));
+
+    PostIndexMigrationServlet.BatchResult result =
+      PostIndexMigrationServlet.migrateBatch(datastore, null, 10);
+
+    Assert.assertEquals(5, result.getRead());
+    Assert.assertEquals(0, result.getRewritten());
+  }
+}
@@ -0,0 +1,141 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import com.google.sps.benchmarks.PostDatasets;
+import com.google.sps.data.DatastorePostRepository;
+import com.google.sps.data.Post;
+import com.google.sps.data.PostRepository;
+import com.google.sps.data.Repositories;
+import com.google.sps.servlets.SearchServlet;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests searching posts stored in Datastore. */
+@RunWith(JUnit4.class)
+public final class SearchServletTest {
+  private static final int POSTS = 20;
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+  private final SearchServlet servlet = new SearchServlet();
+  private DatastoreService datastore;
+
+  private PostRepository previousPosts;
+
+  // Each test gets a repository of its own, since indexes outlive the local Datastore.
+  @Before
+  public void setUp() {
+    helper.setUp();
+    previousPosts = Repositories.posts();
+    Repositories.setPosts(new DatastorePostRepository(DatastoreServiceFactory.getDatastoreService(),
+      DatastoreServiceFactory.getAsyncDatastoreService()));
+    datastore = DatastoreServiceFactory.getDatastoreService();
+  }
+
+  @After
+  public void tearDown() {
+    Repositories.setPosts(previousPosts);
+    helper.tearDown();
+  }
+
+  // Search the college's posts and return the posts found, or null if nothing was written.
+  private JsonArray search(String query, HttpServletResponse response) throws Exception {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getParameter("collegeId")).thenReturn(PostDatasets.COLLEGE_ID);
+    when(request.getParameter("q")).thenReturn(query);
+    StringWriter body = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(body, true));
+    servlet.doGet(request, response);
+    return body.toString().isEmpty() ? null : new JsonParser().parse(body.toString()).getAsJsonArray();
+  }
+
+  private int countMatches(List<Post> posts, String food) {
+    int matches = 0;
+    for (Post post : posts) {
+      if (post.getTypeOfFood().equalsIgnoreCase(food)) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+
+  @Test
+  public void indexFollowsNewAndExpiredPosts() throws Exception {
+    List<Post> posts = PostDatasets.posts(POSTS + 1);
+    for (Post post : posts.subList(0, POSTS)) {
+      Repositories.posts().save(PostDatasets.COLLEGE_ID, post);
+    }
+    String food = posts.get(0).getTypeOfFood();
+    int matches = countMatches(posts.subList(0, POSTS), food);
+
+    JsonArray found = search(food.toLowerCase(), mock(HttpServletResponse.class));
+    Assert.assertEquals(Math.min(matches, PostDataServlet.DEFAULT_LIMIT), found.size());
+    for (int i = 1; i < found.size(); i++) {
+      Assert.assertTrue(found.get(i - 1).getAsJsonObject().get("rank").getAsDouble()
+        >= found.get(i).getAsJsonObject().get("rank").getAsDouble());
+    }
+
+    // Another post is added and the first one ends before the next search.
+    Post added = posts.get(POSTS);
+    Repositories.posts().save(PostDatasets.COLLEGE_ID, added);
+    for (Entity entity : datastore.prepare(new Query("Post")).asIterable()) {
+      if (entity.getKey().toString().equals(posts.get(0).getPostId())) {
+        entity.setProperty("year", 2019L);
+        datastore.put(entity);
+      }
+    }
+    Repositories.posts().getFeed(PostDatasets.COLLEGE_ID, PostRepository.SORT_TIME, 0,
+      Integer.MAX_VALUE);
+
+    found = search(food, mock(HttpServletResponse.class));
+    int expected = matches - 1 + (added.getTypeOfFood().equalsIgnoreCase(food) ? 1 : 0);
+    Assert.assertEquals(expected, found.size());
+    for (int i = 0; i < found.size(); i++) {
+      Assert.assertNotEquals(posts.get(0).getPostId(),
+        found.get(i).getAsJsonObject().get("postId").getAsString());
+    }
+  }
+
+  @Test
+  public void queryIsRequired() throws Exception {
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    Assert.assertNull(search(null, response));
+    verify(response).setStatus(400);
+  }
+}
@@ -4,14 +4,24 @@ import com.google.appengine.api.blobstore.BlobKey;
 import com.google.appengine.api.blobstore.BlobstoreFailureException;
 import com.google.appengine.api.blobstore.BlobstoreService;
 import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
+import com.google.appengine.api.blobstore.ByteRange;
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.ImageVariants;
 import com.google.sps.servlets.ServeServlet;
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Before;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.junit.runners.BlockJUnit4ClassRunner;
 import org.junit.Test;
-import org.mockito.Mock;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -28,8 +38,47 @@ import static org.mockito.Mockito.when;
 @RunWith(value = BlockJUnit4ClassRunner.class)
 public final class ServeServletTest {
   ServeServlet serveServlet = new ServeServlet();
-  @Mock HttpServletResponse mockResponse;
+  HttpServletResponse mockResponse = mock(HttpServletResponse.class);
   static final String FAKE_BLOB_KEY = "fakeBlobKey";
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  // Store a card-sized variant of the fake blob with the given bytes.
+  public void storeCardVariant(byte[] data) {
+    Entity variant = new Entity(ImageVariants.getKey(FAKE_BLOB_KEY, "card"));
+    variant.setProperty("data", new Blob(data));
+    ServeServlet.datastore.put(variant);
+  }
+
+  // Capture everything written to the mock response.
+  public ByteArrayOutputStream captureBody() throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    when(mockResponse.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        body.write(b);
+      }
+
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setWriteListener(WriteListener writeListener) {}
+    });
+    return body;
+  }
   
   // Mock an HTTP Servlet Request with the given string as a parameter.
   public HttpServletRequest mockRequest(String blobKey) {
@@ -98,4 +147,119 @@ public final class ServeServletTest {
 
     serveServlet.serveImage(mockRequest, mockResponse, mockBlobstoreService);
   }
+
+  @Test
+  public void testCacheHeaders() throws IOException {
+    HttpServletRequest mockRequest = mockRequest(FAKE_BLOB_KEY);
+    BlobstoreService mockBlobstoreService = mockBlobstoreServe();
+
+    serveServlet.serveImage(mockRequest, mockResponse, mockBlobstoreService);
+    verify(mockResponse).setHeader("Cache-Control", ServeServlet.CACHE_CONTROL);
+    verify(mockResponse).setHeader("ETag", "\"" + FAKE_BLOB_KEY + "\"");
+  }
+
+  @Test
+  public void testNotModified() throws IOException {
+    HttpServletRequest mockRequest = mockRequest(FAKE_BLOB_KEY);
+    when(mockRequest.getHeader("If-None-Match")).thenReturn("\"" + FAKE_BLOB_KEY + "\"");
+    BlobstoreService mockBlobstoreService = mockBlobstoreServe();
+
+    serveServlet.serveImage(mockRequest, mockResponse, mockBlobstoreService);
+    verify(mockResponse).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    verify(mockBlobstoreService, never()).serve(any(BlobKey.class), eq(mockResponse));
+  }
+
+  @Test
+  public void testChangedETagIsServed() throws IOException {
+    HttpServletRequest mockRequest = mockRequest(FAKE_BLOB_KEY);
+    when(mockRequest.getHeader("If-None-Match")).thenReturn("\"otherBlobKey\"");
+    BlobstoreService mockBlobstoreService = mockBlobstoreServe();
+
+    serveServlet.serveImage(mockRequest, mockResponse, mockBlobstoreService);
+    verify(mockResponse, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    verify(mockBlobstoreService).serve(any(BlobKey.class), eq(mockResponse));
+  }
+
+  @Test
+  public void testModifiedSinceIsServed() throws IOException {
+    HttpServletRequest mockRequest = mockRequest(FAKE_BLOB_KEY);
+    when(mockRequest.getHeader("If-Modified-Since")).thenReturn("Mon, 24 Aug 2020 00:00:00 GMT");
+    BlobstoreService mockBlobstoreService = mockBlobstoreServe();
+
+    serveServlet.serveImage(mockRequest, mockResponse, mockBlobstoreService);
+    verify(mockResponse, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    verify(mockBlobstoreService).serve(any(BlobKey.class), eq(mockResponse));
+  }
+
+  @Test
+  public void testMissingVariantIsNotCachedAsTheVariant() throws IOException {
+    HttpServletRequest mockRequest = mockRequest(FAKE_BLOB_KEY);
+    when(mockRequest.getParameter("size")).thenReturn("card");
+    BlobstoreService mockBlobstoreService = mockBlobstoreServe();
+
+    serveServlet.serveImage(mockRequest, mockResponse, mockBlobstoreService);
+    verify(mockBlobstoreService).serve(any(BlobKey.class), eq(mockResponse));
+    verify(mockResponse).setHeader("Cache-Control", ServeServlet.FALLBACK_CACHE_CONTROL);
+    verify(mockResponse).setHeader("ETag", "\"" + FAKE_BLOB_KEY + "\"");
+    verify(mockResponse, never()).setHeader("Cache-Control", ServeServlet.CACHE_CONTROL);
+  }
+
+  @Test
+  public void testStoredVariantIsCached() throws IOException {
+    storeCardVariant(new byte[] {0, 1, 2});
+    HttpServletRequest mockRequest = mockRequest(FAKE_BLOB_KEY);
+    when(mockRequest.getParameter("size")).thenReturn("card");
+    captureBody();
+
+    serveServlet.serveImage(mockRequest, mockResponse, mockBlobstoreServe());
+    verify(mockResponse).setHeader("Cache-Control", ServeServlet.CACHE_CONTROL);
+    verify(mockResponse).setHeader("ETag", "\"" + FAKE_BLOB_KEY + "-card\"");
+  }
+
+  @Test
+  public void testRangeServe() throws IOException {
+    HttpServletRequest mockRequest = mockRequest(FAKE_BLOB_KEY);
+    when(mockRequest.getHeader("Range")).thenReturn("bytes=0-99");
+    BlobstoreService mockBlobstoreService = mockBlobstoreServe();
+
+    serveServlet.serveImage(mockRequest, mockResponse, mockBlobstoreService);
+    verify(mockBlobstoreService).serve(any(BlobKey.class), eq(new ByteRange(0, 99)), eq(mockResponse));
+    verify(mockResponse).setHeader("Accept-Ranges", "bytes");
+  }
+
+  @Test
+  public void testInvalidRangeServesWholeImage() throws IOException {
+    HttpServletRequest mockRequest = mockRequest(FAKE_BLOB_KEY);
+    when(mockRequest.getHeader("Range")).thenReturn("bytes=0-9,20-29");
+    BlobstoreService mockBlobstoreService = mockBlobstoreServe();
+
+    serveServlet.serveImage(mockRequest, mockResponse, mockBlobstoreService);
+    verify(mockBlobstoreService).serve(any(BlobKey.class), eq(mockResponse));
+  }
+
+  @Test
+  public void testVariantRangeServe() throws IOException {
+    storeCardVariant(new byte[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9});
+    HttpServletRequest mockRequest = mockRequest(FAKE_BLOB_KEY);
+    when(mockRequest.getParameter("size")).thenReturn("card");
+    when(mockRequest.getHeader("Range")).thenReturn("bytes=-3");
+    ByteArrayOutputStream body = captureBody();
+
+    serveServlet.serveImage(mockRequest, mockResponse, mockBlobstoreServe());
+    verify(mockResponse).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+    verify(mockResponse).setHeader("Content-Range", "bytes 7-9/10");
+    Assert.assertArrayEquals(new byte[] {7, 8, 9}, body.toByteArray());
+  }
+
+  @Test
+  public void testUnsatisfiableVariantRange() throws IOException {
+    storeCardVariant(new byte[] {0, 1, 2, 3});
+    HttpServletRequest mockRequest = mockRequest(FAKE_BLOB_KEY);
+    when(mockRequest.getParameter("size")).thenReturn("card");
+    when(mockRequest.getHeader("Range")).thenReturn("bytes=10-20");
+
+    serveServlet.serveImage(mockRequest, mockResponse, mockBlobstoreServe());
+    verify(mockResponse).sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+    verify(mockResponse).setHeader("Content-Range", "bytes */4");
+  }
 }
@@ -0,0 +1,183 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.IdentifiableValue;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
+import com.google.sps.servlets.UploadUrlPool;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests handing out pre-created upload URLs. */
+@RunWith(JUnit4.class)
+public final class UploadUrlPoolTest {
+  private static final int CAPACITY = 3;
+
+  // Clock that only moves when the test advances it.
+  private static final class FakeClock extends Clock {
+    private long millis = 0;
+
+    void advance(long delta) {
+      millis += delta;
+    }
+
+    @Override
+    public long millis() {
+      return millis;
+    }
+
+    @Override
+    public Instant instant() {
+      return Instant.ofEpochMilli(millis);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+  }
+
+  private final AtomicInteger created = new AtomicInteger();
+  private final Supplier<String> createUrl = () -> "https://upload/" + created.incrementAndGet();
+  private final FakeClock clock = new FakeClock();
+  private final MemcacheService memcache = fakeMemcache();
+
+  // Memcache holding a single value, which is only replaced if nobody changed it since it
+  // was read.
+  private static MemcacheService fakeMemcache() {
+    AtomicReference<IdentifiableValue> stored = new AtomicReference<IdentifiableValue>();
+    MemcacheService memcache = mock(MemcacheService.class);
+    when(memcache.get(any())).thenAnswer(
+      invocation -> stored.get() == null ? null : stored.get().getValue());
+    when(memcache.getIdentifiable(any())).thenAnswer(invocation -> stored.get());
+    when(memcache.putIfUntouched(any(), any(IdentifiableValue.class), any())).thenAnswer(
+      invocation -> {
+        Object value = invocation.getArgument(2);
+        IdentifiableValue newValue = () -> value;
+        return stored.compareAndSet(invocation.getArgument(1), newValue);
+      });
+    when(memcache.put(any(), any(), isNull(), eq(SetPolicy.ADD_ONLY_IF_NOT_PRESENT))).thenAnswer(
+      invocation -> {
+        Object value = invocation.getArgument(1);
+        IdentifiableValue newValue = () -> value;
+        return stored.compareAndSet(null, newValue);
+      });
+    return memcache;
+  }
+
+  // Refills run on the calling thread so the tests can check the pool right away.
+  private UploadUrlPool newPool(Supplier<String> createUrl) {
+    return new UploadUrlPool(createUrl, CAPACITY, Runnable::run, clock, memcache);
+  }
+
+  @Test
+  public void firstTakeFillsThePool() {
+    UploadUrlPool pool = newPool(createUrl);
+
+    Assert.assertEquals("https://upload/1", pool.take());
+    Assert.assertEquals(1, pool.getMisses());
+    Assert.assertEquals(CAPACITY, pool.size());
+    Assert.assertEquals(1, pool.getRefills());
+  }
+
+  @Test
+  public void urlsAreHandedOutOnce() {
+    UploadUrlPool pool = newPool(createUrl);
+
+    Set<String> urls = new HashSet<String>();
+    for (int i = 0; i < 10; i++) {
+      urls.add(pool.take());
+    }
+
+    Assert.assertEquals(10, urls.size());
+    Assert.assertEquals(9, pool.getHits());
+    Assert.assertEquals(CAPACITY, pool.size());
+  }
+
+  @Test
+  public void oldUrlsAreDiscarded() {
+    UploadUrlPool pool = newPool(createUrl);
+    pool.take();
+    clock.advance(UploadUrlPool.MAX_AGE_MILLIS);
+
+    Assert.assertEquals("https://upload/" + (CAPACITY + 2), pool.take());
+    Assert.assertEquals(CAPACITY, pool.getExpired());
+    Assert.assertEquals(2, pool.getMisses());
+  }
+
+  @Test
+  public void failedUrlsAreNotPooled() {
+    UploadUrlPool pool = newPool(() -> "");
+
+    Assert.assertEquals("", pool.take());
+    Assert.assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void pendingRefillIsAskedForAgainAfterTheTimeout() {
+    // Refills that are started but whose task never runs.
+    AtomicInteger started = new AtomicInteger();
+    UploadUrlPool pool = new UploadUrlPool(createUrl, CAPACITY,
+      command -> started.incrementAndGet(), clock, memcache);
+
+    pool.take();
+    pool.take();
+    Assert.assertEquals(1, started.get());
+
+    clock.advance(UploadUrlPool.REFILL_TIMEOUT_MILLIS);
+    pool.take();
+    Assert.assertEquals(2, started.get());
+    Assert.assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void refillOnAnotherInstanceFillsTheSharedPool() {
+    // This instance's refills run as tasks served by another instance.
+    UploadUrlPool pool = new UploadUrlPool(createUrl, CAPACITY, command -> { }, clock, memcache);
+    UploadUrlPool otherInstance = newPool(createUrl);
+
+    Assert.assertEquals("https://upload/1", pool.take());
+    otherInstance.refill();
+
+    Assert.assertEquals("https://upload/2", pool.take());
+    Assert.assertEquals(1, pool.getHits());
+    Assert.assertEquals(CAPACITY - 1, otherInstance.size());
+  }
+}
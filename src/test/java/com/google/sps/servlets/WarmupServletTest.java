@@ -0,0 +1,77 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.servlets.WarmupServlet;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests initializing a new instance before its first request. */
+@RunWith(JUnit4.class)
+public final class WarmupServletTest {
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void everyComponentIsWarmedUp() {
+    Map<String, Long> timings = WarmupServlet.warmUp(WarmupServlet.getComponents());
+
+    // Gmail is only warmed up in production.
+    Assert.assertEquals(Arrays.asList("datastore", "gson", "inputPatterns", "emailTemplates"),
+      new ArrayList<String>(timings.keySet()));
+    for (long millis : timings.values()) {
+      Assert.assertTrue(millis >= 0);
+    }
+  }
+
+  @Test
+  public void failedComponentDoesNotStopWarmup() {
+    List<String> initialized = new ArrayList<String>();
+    Map<String, WarmupServlet.Component> components = new LinkedHashMap<String, WarmupServlet.Component>();
+    components.put("broken", () -> {
+      throw new IllegalStateException("no credentials");
+    });
+    components.put("working", () -> initialized.add("working"));
+
+    Map<String, Long> timings = WarmupServlet.warmUp(components);
+
+    Assert.assertEquals(-1L, (long) timings.get("broken"));
+    Assert.assertTrue(timings.get("working") >= 0);
+    Assert.assertEquals(Arrays.asList("working"), initialized);
+  }
+}